@@ -2,11 +2,22 @@ package com.openclassroom.safteynetalertsrefactor;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Clock;
 
 @SpringBootApplication
+@EnableScheduling
 public class SafteynetalertsrefactorApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(SafteynetalertsrefactorApplication.class, args);
     }
+
+    /* Clock the current date is read from; tests construct Today with their own. */
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
 }
\ No newline at end of file
@@ -4,8 +4,11 @@ import com.openclassroom.safteynetalertsrefactor.dto.ChildResidentDto;
 import com.openclassroom.safteynetalertsrefactor.dto.HouseholdDto;
 import com.openclassroom.safteynetalertsrefactor.dto.ResidentDto;
 import com.openclassroom.safteynetalertsrefactor.dto.FirstResponderDto;
+import com.openclassroom.safteynetalertsrefactor.repository.CityEmails;
 import com.openclassroom.safteynetalertsrefactor.service.FirstResponderService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -43,10 +46,24 @@ public class FirstResponderController {
         return service.getFireInfo(address);
     }
 
-    /* Retrieve community emails for a given city */
+    /* Retrieve residents taking a medication and/or allergic to a substance, optionally covered by one fire station */
+    @GetMapping("/medicalAlert")
+    public List<ResidentDto> getMedicalAlert(@RequestParam(value = "stationNumber", required = false) Integer stationNumber,
+                                             @RequestParam(value = "medication", required = false) String medication,
+                                             @RequestParam(value = "allergy", required = false) String allergy) {
+        return service.getMedicalAlert(stationNumber, medication, allergy);
+    }
+
+    /* Retrieve community emails for a given city.
+     * The list version is sent as ETag; a request with a matching If-None-Match gets 304 Not Modified */
     @GetMapping("/communityEmail")
-    public List<String> getCommunityEmail(@RequestParam String city) {
-        return service.getCommunityEmail(city);
+    public ResponseEntity<List<String>> getCommunityEmail(@RequestParam String city, WebRequest request) {
+        CityEmails emails = service.getCommunityEmail(city);
+        String eTag = "\"" + emails.version() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(emails.emails());
     }
 
     /* Retrieve person information by last name */
@@ -55,9 +72,12 @@ public class FirstResponderController {
         return service.getResidentsByLastName(lastName);
     }
 
-    /* Retrieve flood information for given fire stations */
+    /* Retrieve flood information for given fire stations, optionally only the households with children
+     * and/or with a resident having a medical record */
     @GetMapping("/flood/stations")
-    public List<HouseholdDto> getFloodStations(@RequestParam("stations") List<String> stations) {
-        return service.getFloodInfo(stations);
+    public List<HouseholdDto> getFloodStations(@RequestParam("stations") List<String> stations,
+                                               @RequestParam(value = "withChildren", defaultValue = "false") boolean withChildren,
+                                               @RequestParam(value = "withMedicalRecord", defaultValue = "false") boolean withMedicalRecord) {
+        return service.getFloodInfo(stations, withChildren, withMedicalRecord);
     }
 }
\ No newline at end of file
@@ -1,16 +1,23 @@
 package com.openclassroom.safteynetalertsrefactor.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 
 import java.time.LocalDate;
-import java.time.Period;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.OptionalInt;
 
+/* Medical record of a resident. The medication and allergy lists handed out are read-only. The medical record
+ * repository swaps their terms for the shared instances of its own vocabulary when it stores a record, or moves
+ * them as codes of that vocabulary to an off-heap arena, so a record that is only deserialized shares nothing.
+ */
 @Getter
 @Setter
 @NoArgsConstructor
-@AllArgsConstructor
 
 public class MedicalRecord {
     private String firstName;
@@ -19,12 +26,147 @@ public class MedicalRecord {
     private List<String> medications;
     private List<String> allergies;
 
+    // Arena holding the lists moved off-heap, null while both live on the heap
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    private OffHeapListArena arena;
+    // Vocabulary the off-heap codes refer to, set together with the arena
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    private ValueDictionary<String> vocabulary;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    private long medicationsRef = ON_HEAP;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    private long allergiesRef = ON_HEAP;
+
+    // Birthdate parsed once whenever it is set, as an epoch day or one of the markers below
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    private int birthEpochDay = NO_BIRTHDATE;
+
+    private static final int NO_BIRTHDATE = Integer.MIN_VALUE;
+    private static final int INVALID_BIRTHDATE = Integer.MIN_VALUE + 1;
+    // List reference of a list kept in its field rather than in the arena
+    private static final long ON_HEAP = -1;
+
     private static final DateTimeFormatter FORMATTER =
             DateTimeFormatter.ofPattern("MM/dd/yyyy");
 
-    public int calculateAge() {
-        if (birthdate == null || birthdate.isEmpty()) return 0;
-        LocalDate dob = LocalDate.parse(birthdate, FORMATTER);
-        return Period.between(dob, LocalDate.now()).getYears();
+    public MedicalRecord(String firstName, String lastName, String birthdate, List<String> medications, List<String> allergies) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        setMedications(medications);
+        setAllergies(allergies);
+        setBirthdate(birthdate);
+    }
+
+    public List<String> getMedications() {
+        return medicationsRef == ON_HEAP ? medications : decode(vocabulary, arena.read(medicationsRef));
+    }
+
+    public void setMedications(List<String> medications) {
+        this.medications = readOnlyCopy(medications);
+        this.medicationsRef = ON_HEAP;
+    }
+
+    public List<String> getAllergies() {
+        return allergiesRef == ON_HEAP ? allergies : decode(vocabulary, arena.read(allergiesRef));
+    }
+
+    public void setAllergies(List<String> allergies) {
+        this.allergies = readOnlyCopy(allergies);
+        this.allergiesRef = ON_HEAP;
+    }
+
+    private static List<String> readOnlyCopy(List<String> terms) {
+        return terms == null ? null : Collections.unmodifiableList(Arrays.asList(terms.toArray(new String[0])));
+    }
+
+    private static int[] encode(ValueDictionary<String> vocabulary, List<String> terms) {
+        int[] codes = new int[terms.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = vocabulary.encode(terms.get(i));
+        }
+        return codes;
+    }
+
+    private static List<String> decode(ValueDictionary<String> vocabulary, int[] codes) {
+        String[] terms = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            terms[i] = vocabulary.decode(codes[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(terms));
+    }
+
+    /* Moves the medications and allergies, as codes of the given vocabulary, into an off-heap arena; they are
+     * decoded on each read. Null lists stay on the heap. */
+    public void moveListsTo(OffHeapListArena target, ValueDictionary<String> terms) {
+        List<String> currentMedications = getMedications();
+        List<String> currentAllergies = getAllergies();
+        arena = target;
+        vocabulary = terms;
+        if (currentMedications != null) {
+            medicationsRef = target.store(encode(terms, currentMedications));
+            medications = null;
+        }
+        if (currentAllergies != null) {
+            allergiesRef = target.store(encode(terms, currentAllergies));
+            allergies = null;
+        }
+    }
+
+    /* Counts the off-heap lists of a record that was replaced or removed as garbage of their arena.
+     * The record itself is left unchanged and stays readable. */
+    public void releaseOffHeapLists() {
+        if (medicationsRef != ON_HEAP) {
+            arena.release(medicationsRef);
+        }
+        if (allergiesRef != ON_HEAP) {
+            arena.release(allergiesRef);
+        }
+    }
+
+    public void setBirthdate(String birthdate) {
+        this.birthdate = birthdate;
+        if (birthdate == null || birthdate.isEmpty()) {
+            birthEpochDay = NO_BIRTHDATE;
+            return;
+        }
+        try {
+            birthEpochDay = (int) LocalDate.parse(birthdate, FORMATTER).toEpochDay();
+        } catch (DateTimeParseException e) {
+            // reported when the age is asked for
+            birthEpochDay = INVALID_BIRTHDATE;
+        }
+    }
+
+    /* Epoch day on which the person turns the given age, or empty without a valid birthdate. */
+    public OptionalInt epochDayOfAge(int years) {
+        if (birthEpochDay == NO_BIRTHDATE || birthEpochDay == INVALID_BIRTHDATE) {
+            return OptionalInt.empty();
+        }
+        LocalDate birth = LocalDate.ofEpochDay(birthEpochDay);
+        LocalDate anniversary = birth.plusYears(years);
+        // a February 29 birthday is only reached on March 1 of a common year, as calculateAge counts it
+        if (anniversary.getDayOfMonth() != birth.getDayOfMonth()) {
+            anniversary = anniversary.plusDays(1);
+        }
+        return OptionalInt.of((int) anniversary.toEpochDay());
+    }
+
+    /* Age in whole years on the given current date; 0 without a birthdate. */
+    public int calculateAge(Today today) {
+        if (birthEpochDay == NO_BIRTHDATE) return 0;
+        if (birthEpochDay == INVALID_BIRTHDATE) {
+            throw new DateTimeParseException("Birthdate '" + birthdate + "' is not in MM/dd/yyyy format", birthdate, 0);
+        }
+        return today.yearsSince(birthEpochDay);
     }
-}
\ No newline at end of file
+}
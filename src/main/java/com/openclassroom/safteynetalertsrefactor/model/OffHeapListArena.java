@@ -0,0 +1,82 @@
+package com.openclassroom.safteynetalertsrefactor.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/* Append-only store of int code lists in direct (off-heap) byte buffers.
+ * A list is written once as [element count](code)* and identified by a reference packing its chunk and
+ * offset; it is read back into a new array on every read. Nothing is ever overwritten: replaced lists are
+ * only counted as garbage, and the owner compacts by copying the live lists into a new arena. The old
+ * chunks stay readable for as long as something references them and their native memory is released by
+ * the garbage collector, so a reader is never left with freed memory.
+ * Writes must come from one thread at a time; reads may run concurrently with them.
+ */
+public final class OffHeapListArena {
+
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int writeOffset = CHUNK_SIZE;
+    private long usedBytes;
+    private long garbageBytes;
+
+    /* Writes a list of codes and returns its reference. */
+    public long store(int[] codes) {
+        int length = Integer.BYTES * (codes.length + 1);
+        ByteBuffer[] current = chunks;
+        int chunk = current.length - 1;
+        if (chunk < 0 || writeOffset + length > current[chunk].capacity()) {
+            // lists too large for a regular chunk get a chunk of their own
+            current = Arrays.copyOf(current, current.length + 1);
+            chunk = current.length - 1;
+            current[chunk] = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, length));
+            writeOffset = 0;
+        }
+        ByteBuffer buffer = current[chunk];
+        int offset = writeOffset;
+        buffer.putInt(offset, codes.length);
+        for (int i = 0; i < codes.length; i++) {
+            buffer.putInt(offset + Integer.BYTES * (i + 1), codes[i]);
+        }
+        writeOffset = offset + length;
+        usedBytes += length;
+        chunks = current;
+        return ((long) chunk << 32) | offset;
+    }
+
+    /* Reads the codes behind a reference into a new array. */
+    public int[] read(long reference) {
+        ByteBuffer buffer = chunks[(int) (reference >>> 32)];
+        int offset = (int) reference;
+        int[] codes = new int[buffer.getInt(offset)];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = buffer.getInt(offset + Integer.BYTES * (i + 1));
+        }
+        return codes;
+    }
+
+    /* Counts a list that is no longer referenced as garbage; its bytes stay readable. */
+    public void release(long reference) {
+        int count = chunks[(int) (reference >>> 32)].getInt((int) reference);
+        garbageBytes += Integer.BYTES * (count + 1L);
+    }
+
+    /* Bytes written so far, live or not. */
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    /* Bytes of the lists released so far. */
+    public long garbageBytes() {
+        return garbageBytes;
+    }
+
+    /* Native memory held by the chunks. */
+    public long capacityBytes() {
+        long capacity = 0;
+        for (ByteBuffer chunk : chunks) {
+            capacity += chunk.capacity();
+        }
+        return capacity;
+    }
+}
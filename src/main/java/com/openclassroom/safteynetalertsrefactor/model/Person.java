@@ -1,13 +1,20 @@
 package com.openclassroom.safteynetalertsrefactor.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 
+/* A resident. Last name, address, city, zip and phone repeat across residents: the person repository swaps
+ * them for the shared instances of its own dictionaries when it stores a person, so a person that is only
+ * deserialized, such as a rejected request body, holds nothing shared.
+ * The person repository also gives each indexed person the dense id of its name, which links it to the
+ * medical record of the same name without hashing the names again.
+ */
+@NoArgsConstructor
 @Getter
 @Setter
-@NoArgsConstructor
-@AllArgsConstructor
 
 public class Person {
+
     private String firstName;
     private String lastName;
     private String address;
@@ -15,4 +22,17 @@ public class Person {
     private String zip;
     private String phone;
     private String email;
+    // Dense id of (firstName, lastName) set by the person repository when indexing; 0 until then
+    @JsonIgnore
+    private int nameId;
+
+    public Person(String firstName, String lastName, String address, String city, String zip, String phone, String email) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.address = address;
+        this.city = city;
+        this.zip = zip;
+        this.phone = phone;
+        this.email = email;
+    }
 }
@@ -0,0 +1,80 @@
+package com.openclassroom.safteynetalertsrefactor.model;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+
+/* Current local date of the injected clock, cached for age computations.
+ * The date is computed once and kept until the next local midnight, so reading it on the hot path
+ * costs one clock read and no allocation. Dates are handled as epoch days, converted to year and
+ * month/day with plain integer arithmetic.
+ */
+@Component
+public final class Today {
+
+    private final Clock clock;
+    private volatile Snapshot current;
+
+    private record Snapshot(int epochDay, int year, int monthDay, long midnightMillis, long nextMidnightMillis) {
+    }
+
+    public Today(Clock clock) {
+        this.clock = clock;
+    }
+
+    /* Epoch day of the current local date. */
+    public int epochDay() {
+        return snapshot().epochDay;
+    }
+
+    /* Whole years between the birth epoch day and today, as Period.between(birth, today).getYears(). */
+    public int yearsSince(int birthEpochDay) {
+        Snapshot today = snapshot();
+        long civil = civil(birthEpochDay);
+        int birthYear = (int) (civil / 10_000);
+        int birthMonthDay = (int) (civil % 10_000);
+        int years = today.year - birthYear;
+        if (years > 0 && today.monthDay < birthMonthDay) {
+            years--;
+        } else if (years < 0 && today.monthDay > birthMonthDay) {
+            years++;
+        }
+        return years;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot snapshot = current;
+        long now = clock.millis();
+        // also refreshed when the clock is set back before the cached day
+        if (snapshot == null || now >= snapshot.nextMidnightMillis || now < snapshot.midnightMillis) {
+            snapshot = refresh();
+        }
+        return snapshot;
+    }
+
+    private synchronized Snapshot refresh() {
+        LocalDate date = LocalDate.now(clock);
+        long midnight = ZonedDateTime.of(date.atStartOfDay(), clock.getZone()).toInstant().toEpochMilli();
+        long nextMidnight = ZonedDateTime.of(date.plusDays(1).atStartOfDay(), clock.getZone()).toInstant().toEpochMilli();
+        Snapshot snapshot = new Snapshot((int) date.toEpochDay(), date.getYear(),
+                date.getMonthValue() * 100 + date.getDayOfMonth(), midnight, nextMidnight);
+        current = snapshot;
+        return snapshot;
+    }
+
+    // Proleptic Gregorian year * 10000 + month * 100 + day of an epoch day, without allocating
+    static long civil(int epochDay) {
+        long z = epochDay + 719_468L;
+        long era = Math.floorDiv(z, 146_097L);
+        long dayOfEra = z - era * 146_097L;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10_000 + month * 100 + day;
+    }
+}
@@ -0,0 +1,65 @@
+package com.openclassroom.safteynetalertsrefactor.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* Dictionary encoding of a column of repeating values, such as strings or name pairs.
+ * Each distinct value is stored once and stands for an int code; code 0 is reserved for null, so a
+ * zero-initialized field decodes to null. Decoding is a plain array read without locking: a code is only
+ * handed out after its slot is written, and it reaches other threads through the object holding it.
+ * Entries are never removed, which suits columns such as cities, zips, addresses or medication terms whose
+ * set of values stays small next to the number of rows using them, or persons' names used as dense ids.
+ */
+public final class ValueDictionary<T> {
+
+    private final Map<T, Integer> codes = new ConcurrentHashMap<>();
+    private volatile Object[] values = new Object[16];
+    private int size = 1;
+
+    /* Returns the code of a value, adding the value on first use. */
+    public int encode(T value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    /* Returns the code of a value already added, or 0 without adding it. */
+    public int find(T value) {
+        Integer code = value == null ? null : codes.get(value);
+        return code == null ? 0 : code;
+    }
+
+    /* Returns the dictionary's own instance of a value, adding the value on first use. */
+    public T intern(T value) {
+        return decode(encode(value));
+    }
+
+    /* Returns the value of a code handed out by encode. */
+    @SuppressWarnings("unchecked")
+    public T decode(int code) {
+        return (T) values[code];
+    }
+
+    /* Number of distinct non-null values held. */
+    public synchronized int size() {
+        return size - 1;
+    }
+
+    private synchronized int add(T value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        Object[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        values = current;
+        codes.put(value, size);
+        return size++;
+    }
+}
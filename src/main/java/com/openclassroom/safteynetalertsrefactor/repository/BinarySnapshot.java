@@ -0,0 +1,104 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/* Binary (Jackson Smile) copy of the data document, written next to the JSON file for fast cold starts.
+ * The first field is a header recording the size and modification time of the JSON file it was
+ * built from; the snapshot is only used while that JSON file is unchanged.
+ */
+public class BinarySnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(BinarySnapshot.class);
+    static final String HEADER = "_snapshot";
+    static final int FORMAT_VERSION = 1;
+
+    /* Identifies the JSON file a snapshot was built from. */
+    record Header(int version, long sourceSize, long sourceModified) {
+    }
+
+    private final Path path;
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    private final StreamingCollectionLoader loader = new StreamingCollectionLoader(smileMapper);
+
+    public BinarySnapshot(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /* Writes the collections of a data document built from the given JSON file. */
+    public void write(Path source, JsonNode root) {
+        Map<String, Object> collections = new LinkedHashMap<>();
+        root.properties().forEach(field -> collections.put(field.getKey(), field.getValue()));
+        write(source, collections);
+    }
+
+    /* Writes already bound collections built from the given JSON file. */
+    public void write(Path source, Map<String, ?> collections) {
+        try {
+            Map<String, Object> document = new LinkedHashMap<>();
+            document.put(HEADER, headerOf(source));
+            document.putAll(collections);
+            AtomicFileWriter.write(path, out -> smileMapper.writeValue(out, document));
+            log.debug("Wrote binary snapshot {}", path);
+        } catch (IOException e) {
+            // the JSON file stays the source of truth, so a missing binary copy only costs start-up time
+            log.warn("Could not write binary snapshot {}", path, e);
+        }
+    }
+
+    /* Loads the wanted collections, or empty when the snapshot is missing, unreadable or stale. */
+    public Optional<Map<String, List<?>>> load(Path source, Map<String, Class<?>> wanted) {
+        if (!Files.exists(path) || !Files.exists(source)) {
+            return Optional.empty();
+        }
+        try (InputStream in = Files.newInputStream(path);
+             JsonParser parser = smileMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT
+                    || parser.nextToken() != JsonToken.FIELD_NAME
+                    || !HEADER.equals(parser.currentName())) {
+                log.warn("Binary snapshot {} has no header, ignoring it", path);
+                return Optional.empty();
+            }
+            parser.nextToken();
+            Header header = smileMapper.readValue(parser, Header.class);
+            if (!header.equals(headerOf(source))) {
+                log.info("Binary snapshot {} is stale, loading {} instead", path, source);
+                return Optional.empty();
+            }
+            return Optional.of(loader.readFields(parser, wanted));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Binary snapshot {} is unreadable, loading {} instead", path, source, e);
+            return Optional.empty();
+        }
+    }
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete binary snapshot {}", path, e);
+        }
+    }
+
+    private static Header headerOf(Path source) throws IOException {
+        return new Header(FORMAT_VERSION, Files.size(source), Files.getLastModifiedTime(source).toMillis());
+    }
+}
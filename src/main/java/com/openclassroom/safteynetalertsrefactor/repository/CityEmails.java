@@ -0,0 +1,9 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import java.util.List;
+
+/* Deduplicated, immutable email list of one city and the version stamp of that list.
+ * The version changes whenever the list changes, so a caller holding the same version can skip it.
+ */
+public record CityEmails(List<String> emails, long version) {
+}
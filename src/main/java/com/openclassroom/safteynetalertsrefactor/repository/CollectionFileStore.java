@@ -0,0 +1,141 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/* Stores each collection as a JSON array in its own file, <directory>/<collection>.json.
+ * A file is replaced atomically through AtomicFileWriter, so writing one collection never touches
+ * the others and a crash leaves either the old or the new version in place.
+ * Top-level fields of the document that are not collections, such as the journal sequence, are kept
+ * together in <directory>/document.fields and written after the collection files.
+ */
+public class CollectionFileStore {
+
+    private static final Logger log = LoggerFactory.getLogger(CollectionFileStore.class);
+    private static final String EXTENSION = ".json";
+    private static final String FIELDS_FILE = "document.fields";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final StreamingCollectionLoader loader;
+
+    public CollectionFileStore(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.loader = new StreamingCollectionLoader(objectMapper);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path fileFor(String collection) {
+        return directory.resolve(collection + EXTENSION);
+    }
+
+    /* True when no collection file has been written yet. */
+    public boolean isEmpty() {
+        return collectionNames().isEmpty();
+    }
+
+    /* Reads one collection, or an empty list when it has no file. */
+    public List<Object> read(String collection, Class<?> elementType) {
+        Path file = fileFor(collection);
+        if (!Files.exists(file)) {
+            return new ArrayList<>();
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return loader.loadArray(in, elementType);
+        } catch (IOException e) {
+            log.error("Error reading collection file: {}", file, e);
+            throw new RuntimeException("Failed to read collection file", e);
+        }
+    }
+
+    /* Replaces the file of one collection with the given items (a List or an array JsonNode). */
+    public void write(String collection, Object items) {
+        Path file = fileFor(collection);
+        try {
+            AtomicFileWriter.write(file, out -> objectMapper.writerWithDefaultPrettyPrinter().writeValue(out, items));
+        } catch (IOException e) {
+            log.error("Error writing collection file: {}", file, e);
+            throw new RuntimeException("Failed to write collection file", e);
+        }
+        log.debug("Wrote collection file {}", file);
+    }
+
+    /* Splits a single data.json style document into one file per top-level array, plus the fields file. */
+    public void importDocument(JsonNode root) {
+        ObjectNode fields = objectMapper.createObjectNode();
+        for (Map.Entry<String, JsonNode> field : root.properties()) {
+            if (field.getValue().isArray()) {
+                write(field.getKey(), field.getValue());
+            } else {
+                fields.set(field.getKey(), field.getValue());
+            }
+        }
+        Path file = directory.resolve(FIELDS_FILE);
+        try {
+            if (!fields.isEmpty()) {
+                AtomicFileWriter.write(file, out -> objectMapper.writeValue(out, fields));
+            } else {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.error("Error writing document fields: {}", file, e);
+            throw new RuntimeException("Failed to write document fields", e);
+        }
+    }
+
+    /* Assembles every collection file back into a single data.json style document. */
+    public ObjectNode exportDocument() {
+        ObjectNode root = objectMapper.createObjectNode();
+        for (String collection : collectionNames()) {
+            Path file = fileFor(collection);
+            try (InputStream in = Files.newInputStream(file)) {
+                root.set(collection, objectMapper.readTree(in));
+            } catch (IOException e) {
+                log.error("Error reading collection file: {}", file, e);
+                throw new RuntimeException("Failed to read collection file", e);
+            }
+        }
+        Path fields = directory.resolve(FIELDS_FILE);
+        if (Files.exists(fields)) {
+            try (InputStream in = Files.newInputStream(fields)) {
+                objectMapper.readTree(in).properties().forEach(field -> root.set(field.getKey(), field.getValue()));
+            } catch (IOException e) {
+                log.error("Error reading document fields: {}", fields, e);
+                throw new RuntimeException("Failed to read document fields", e);
+            }
+        }
+        return root;
+    }
+
+    private List<String> collectionNames() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(EXTENSION))
+                    .map(name -> name.substring(0, name.length() - EXTENSION.length()))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            log.error("Error listing collection directory: {}", directory, e);
+            return List.of();
+        }
+    }
+}
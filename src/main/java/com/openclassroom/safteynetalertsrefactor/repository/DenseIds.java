@@ -0,0 +1,39 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.openclassroom.safteynetalertsrefactor.model.ValueDictionary;
+import org.springframework.stereotype.Component;
+
+/* Dense int ids of the names and normalized addresses stored by the repositories, shared by the repositories
+ * and indexes built on them so they can link persons to medical records, and combine address sets as bitsets,
+ * through arrays instead of hashing the strings again.
+ * Ids are only handed out by the repositories when they store an element; lookups of names or addresses from
+ * requests go through the find methods, which never add one. An id is never reused while this instance lives,
+ * since bitsets and arrays built from it may still hold it; 0 stands for no name or address.
+ */
+@Component
+public class DenseIds {
+
+    private final ValueDictionary<NameKey> names = new ValueDictionary<>();
+    private final ValueDictionary<String> addresses = new ValueDictionary<>();
+
+    /* Id of a name, handed out on first use; never 0. */
+    public int nameId(String firstName, String lastName) {
+        return names.encode(new NameKey(firstName, lastName));
+    }
+
+    /* Id of a name already handed out by nameId, or 0 when the name was never stored. */
+    public int findNameId(String firstName, String lastName) {
+        return names.find(new NameKey(firstName, lastName));
+    }
+
+    /* Id of an address in normalized form (see PersonRepository.normalizeAddress), handed out on first use;
+     * 0 for no address. */
+    public int addressId(String address) {
+        return addresses.encode(PersonRepository.normalizeAddress(address));
+    }
+
+    /* Id of an address already handed out by addressId, or 0 without handing one out. */
+    public int findAddressId(String address) {
+        return addresses.find(PersonRepository.normalizeAddress(address));
+    }
+}
@@ -0,0 +1,38 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/* Values indexed by dense int ids in a growable array, so a lookup is an array read instead of a hash probe.
+ * Not thread-safe: the repositories only touch it under their lock. */
+final class DenseTable<T> {
+
+    private Object[] values = new Object[64];
+
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        return id > 0 && id < values.length ? (T) values[id] : null;
+    }
+
+    void put(int id, T value) {
+        if (id >= values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, id + 1));
+        }
+        values[id] = value;
+    }
+
+    T computeIfAbsent(int id, IntFunction<T> factory) {
+        T value = get(id);
+        if (value == null) {
+            value = factory.apply(id);
+            put(id, value);
+        }
+        return value;
+    }
+
+    void remove(int id) {
+        if (id < values.length) {
+            values[id] = null;
+        }
+    }
+}
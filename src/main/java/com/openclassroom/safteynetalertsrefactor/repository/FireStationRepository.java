@@ -6,33 +6,56 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Slf4j
 @Repository
 
 /* Repository class for managing FireStation data.
  * It provides methods to load, add, update, delete, and persist fire station records.
+ * Two indexes are kept in sync with the list: station number -> covered addresses, and
+ * address -> its mappings in list order, so coverage and address lookups do not scan the list.
+ * Every mapped address gets its dense id (see DenseIds.addressId) when it is stored.
+ * findAll() returns the current immutable snapshot of the list, swapped through a volatile field on writes.
+ * A read-write lock lets lookups run in parallel while keeping them out of the middle of a change.
  */
 public class FireStationRepository {
     private static final String station = "firestations";
-    private final JSONFileReaderRepository JSONFileReaderRepository;
+    private final StorageEngine storageEngine;
+    private final DenseIds ids;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     private final List<FireStation> firestations = new ArrayList<>();
+    // Read-only copy of the list handed to readers, replaced after every change
+    private volatile List<FireStation> snapshot = List.of();
+    private final Map<Integer, Set<String>> addressesByStation = new HashMap<>();
+    private final Map<String, List<FireStation>> byAddress = new HashMap<>();
 
-    public FireStationRepository(JSONFileReaderRepository JSONFileReaderRepository) {
-        this.JSONFileReaderRepository = JSONFileReaderRepository;
+    public FireStationRepository(StorageEngine storageEngine, DenseIds ids) {
+        this.storageEngine = storageEngine;
+        this.ids = ids;
         log.info("FireStationRepository created for resource: {}", station);
     }
 
     @PostConstruct
-        /* Initializes the repository by loading fire station data from a JSON resource. */
-    void init() {
+        /* Initializes the repository by loading fire station data from the storage engine. */
+    public void init() {
         log.info("Initializing FireStationRepository from resource: {}", station);
-        List<FireStation> loaded = JSONFileReaderRepository.readList(station, FireStation.class);
+        List<FireStation> loaded = storageEngine.readList(station, FireStation.class);
         if (loaded != null) {
             firestations.addAll(loaded);
+            publish();
+            for (FireStation fs : loaded) {
+                index(fs, false);
+            }
             log.info("Loaded {} fire stations", loaded.size());
         } else {
             log.warn("No fire stations loaded from resource: {}", station);
@@ -41,82 +64,211 @@ public class FireStationRepository {
 
     /* Retrieves all fire station records. */
     public List<FireStation> findAll() {
-        log.debug("findAll called, returning {} records", firestations.size());
-        return new ArrayList<>(firestations);
+        List<FireStation> all = snapshot;
+        log.debug("findAll called, returning {} records", all.size());
+        return all;
     }
 
     /* Adds a new fire station record and persists the change. */
     public void add(FireStation newFireStation) {
-        log.info("Adding fire station for address: {} -> station {}", newFireStation.getAddress(), newFireStation.getStation());
-        firestations.add(0, newFireStation);
-        persist();
+        lock.writeLock().lock();
+        try {
+            log.info("Adding fire station for address: {} -> station {}", newFireStation.getAddress(), newFireStation.getStation());
+            firestations.add(0, newFireStation);
+            publish();
+            index(newFireStation, true);
+            storageEngine.addElement(station, newFireStation, firestations);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /* Finds a fire station by its address. */
     public Optional<FireStation> findByAddress(String address) {
-        log.debug("Searching for fire station at address: {}", address);
-        for (FireStation fs : firestations) {
-            if (fs.getAddress().equals(address)) {
+        lock.readLock().lock();
+        try {
+            log.debug("Searching for fire station at address: {}", address);
+            List<FireStation> mappings = byAddress.get(address);
+            if (mappings != null) {
+                FireStation fs = mappings.get(0);
                 log.debug("Found fire station at address: {} -> station {}", address, fs.getStation());
                 return Optional.of(fs);
             }
+            log.debug("No fire station found at address: {}", address);
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Returns the addresses covered by a station number, in the order they were indexed. */
+    public Set<String> findAddressesByStation(int stationNumber) {
+        lock.readLock().lock();
+        try {
+            Set<String> addresses = addressesByStation.get(stationNumber);
+            log.debug("Station {} covers {} address(es)", stationNumber, addresses == null ? 0 : addresses.size());
+            return addresses == null ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(addresses));
+        } finally {
+            lock.readLock().unlock();
         }
-        log.debug("No fire station found at address: {}", address);
-        return Optional.empty();
     }
 
-    /* Updates the station number for a fire station at the given address. */
+    /* Updates the station number for a fire station at the given address.
+     * A new FireStation replaces the mapping, so readers holding the previous one never see it change. */
     public boolean updateFireStation(String address, int stationNumber) {
-        log.info("Updating fire station at address: {} to station {}", address, stationNumber);
-        Optional<FireStation> fireStationToUpdate = findByAddress(address);
-        if (fireStationToUpdate.isEmpty()) {
-            log.warn("Cannot update - fire station not found at address: {}", address);
-            return false;
+        lock.writeLock().lock();
+        try {
+            log.info("Updating fire station at address: {} to station {}", address, stationNumber);
+            Optional<FireStation> fireStationToUpdate = findByAddress(address);
+            if (fireStationToUpdate.isEmpty()) {
+                log.warn("Cannot update - fire station not found at address: {}", address);
+                return false;
+            }
+            FireStation previous = fireStationToUpdate.get();
+            FireStation current = new FireStation(previous.getAddress(), stationNumber);
+            replaceIn(firestations, previous, current);
+            publish();
+            replaceIn(byAddress.get(previous.getAddress()), previous, current);
+            unindexStation(address, previous.getStation());
+            indexStation(address, stationNumber);
+            storageEngine.updateElement(station, previous, current, firestations);
+            log.info("Updated fire station at address: {} to station {}", address, stationNumber);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        fireStationToUpdate.get().setStation(stationNumber);
-        persist();
-        log.info("Updated fire station at address: {} to station {}", address, stationNumber);
-        return true;
     }
 
     /* Deletes a fire station by its address. */
     public boolean deleteByAddress(String address) {
-        log.info("Deleting fire station at address: {}", address);
-        Optional<FireStation> fireStationToDelete = findByAddress(address);
-        if (fireStationToDelete.isEmpty()) {
-            log.warn("Cannot delete - fire station not found at address: {}", address);
-            return false;
+        lock.writeLock().lock();
+        try {
+            log.info("Deleting fire station at address: {}", address);
+            Optional<FireStation> fireStationToDelete = findByAddress(address);
+            if (fireStationToDelete.isEmpty()) {
+                log.warn("Cannot delete - fire station not found at address: {}", address);
+                return false;
+            }
+            firestations.remove(fireStationToDelete.get());
+            publish();
+            unindex(fireStationToDelete.get());
+            storageEngine.removeElements(station, List.of(fireStationToDelete.get()), firestations);
+            log.info("Deleted fire station at address: {}", address);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        firestations.remove(fireStationToDelete.get());
-        persist();
-        log.info("Deleted fire station at address: {}", address);
-        return true;
     }
 
     /* Deletes all fire stations associated with the given station number. */
     public boolean deleteByStationNumber(int stationNumber) {
-        log.info("Deleting fire stations with station number: {}", stationNumber);
-        boolean found = false;
-        List<FireStation> toRemove = new ArrayList<>();
-        for (FireStation fs : firestations) {
-            if (fs.getStation() == stationNumber) {
-                toRemove.add(fs);
-                found = true;
+        lock.writeLock().lock();
+        try {
+            log.info("Deleting fire stations with station number: {}", stationNumber);
+            Set<String> addresses = addressesByStation.get(stationNumber);
+            if (addresses == null || addresses.isEmpty()) {
+                log.debug("No fire stations found for station {}", stationNumber);
+                return false;
             }
-        }
-        firestations.removeAll(toRemove);
-        if (found) {
-            persist();
+            List<FireStation> toRemove = new ArrayList<>();
+            for (String address : List.copyOf(addresses)) {
+                for (FireStation fs : byAddress.get(address)) {
+                    if (fs.getStation() == stationNumber) {
+                        toRemove.add(fs);
+                    }
+                }
+            }
+            // one pass over the list with an identity set instead of removeAll's scan per removed element
+            Set<FireStation> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            removed.addAll(toRemove);
+            firestations.removeIf(removed::contains);
+            publish();
+            for (FireStation fs : toRemove) {
+                unindex(fs);
+            }
+            storageEngine.removeElements(station, toRemove, firestations);
             log.info("Deleted {} fire station(s) for station {}", toRemove.size(), stationNumber);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Adds a mapping to both indexes; atHead when it was inserted at the head of the list
+    private void index(FireStation fs, boolean atHead) {
+        indexStation(fs.getAddress(), fs.getStation());
+        List<FireStation> mappings = byAddress.get(fs.getAddress());
+        if (mappings == null) {
+            mappings = new ArrayList<>(1);
+            byAddress.put(fs.getAddress(), mappings);
+            // a stored address gets its dense id, so households can be told apart by id
+            ids.addressId(fs.getAddress());
+        }
+        if (atHead) {
+            mappings.add(0, fs);
         } else {
-            log.debug("No fire stations found for station {}", stationNumber);
+            mappings.add(fs);
+        }
+    }
+
+    // Removes a mapping from both indexes
+    private void unindex(FireStation fs) {
+        List<FireStation> mappings = byAddress.get(fs.getAddress());
+        if (mappings != null) {
+            mappings.removeIf(m -> m == fs);
+            if (mappings.isEmpty()) {
+                byAddress.remove(fs.getAddress());
+            }
+        }
+        unindexStation(fs.getAddress(), fs.getStation());
+    }
+
+    // Adds an address to a station's coverage
+    private void indexStation(String address, int stationNumber) {
+        addressesByStation.computeIfAbsent(stationNumber, k -> new LinkedHashSet<>()).add(address);
+    }
+
+    // Drops the address from a station's coverage unless another mapping still links them
+    private void unindexStation(String address, int stationNumber) {
+        List<FireStation> mappings = byAddress.getOrDefault(address, List.of());
+        for (FireStation fs : mappings) {
+            if (fs.getStation() == stationNumber) {
+                return;
+            }
+        }
+        Set<String> addresses = addressesByStation.get(stationNumber);
+        if (addresses != null) {
+            addresses.remove(address);
+            if (addresses.isEmpty()) {
+                addressesByStation.remove(stationNumber);
+            }
         }
-        return found;
     }
 
-    /* Persists the current list of fire stations to the JSON resource. */
+    private static void replaceIn(List<FireStation> list, FireStation previous, FireStation current) {
+        if (list == null) {
+            return;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == previous) {
+                list.set(i, current);
+                return;
+            }
+        }
+    }
+
+    private void publish() {
+        snapshot = Collections.unmodifiableList(new ArrayList<>(firestations));
+    }
+
+    /* Persists the current list of fire stations to the storage engine. */
     public void persist() {
-        log.debug("Persisting {} fire station(s) to resource: {}", firestations.size(), station);
-        JSONFileReaderRepository.writeList(station, firestations);
+        lock.writeLock().lock();
+        try {
+            log.debug("Persisting {} fire station(s) to resource: {}", firestations.size(), station);
+            storageEngine.writeList(station, firestations);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 }
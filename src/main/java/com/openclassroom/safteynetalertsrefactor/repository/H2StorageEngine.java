@@ -0,0 +1,309 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@ConditionalOnProperty(name = "app.data.engine", havingValue = "h2")
+/* Storage engine keeping every collection in an embedded H2 database, by default a file next to the JSON data.
+ * Each element is one row holding its JSON form, its list position and the key fields of its collection
+ * (first and last name, or address and station) in indexed columns. Single-element changes are therefore indexed
+ * single-row statements instead of rewrites of the whole data set, and only the touched rows hit the disk.
+ * When several rows share a key, a change touches the first of them in list order, as the repositories do.
+ * An empty database is seeded once from the classpath data document.
+ * This engine only makes the data durable: the repositories still load every collection at startup and answer
+ * lookups such as findByName and findByAddress from their in-memory indexes, which the dense ids, household
+ * bitsets and identity-based updates build on. The data set therefore still has to fit in the heap; the key
+ * index serves the single-row writes, not queries.
+ */
+public class H2StorageEngine implements StorageEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(H2StorageEngine.class);
+
+    private static final String SCHEMA = """
+            CREATE TABLE IF NOT EXISTS documents (
+                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                collection_name VARCHAR(64) NOT NULL,
+                pos BIGINT NOT NULL,
+                key1 VARCHAR(255) NOT NULL,
+                key2 VARCHAR(255) NOT NULL,
+                doc CLOB NOT NULL
+            )""";
+    private static final String KEY_INDEX = "CREATE INDEX IF NOT EXISTS documents_key ON documents(collection_name, key1, key2)";
+    private static final String POS_INDEX = "CREATE INDEX IF NOT EXISTS documents_pos ON documents(collection_name, pos)";
+    private static final String INSERT = "INSERT INTO documents(collection_name, pos, key1, key2, doc) VALUES (?, ?, ?, ?, ?)";
+    // Id of the first row in list order holding a key
+    private static final String FIRST_WITH_KEY = "SELECT id FROM documents WHERE collection_name = ? AND key1 = ? AND key2 = ? "
+            + "ORDER BY pos, id FETCH FIRST ROW ONLY";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String url;
+    private final String classpathResource;
+    private Connection connection;
+
+    public H2StorageEngine(
+            @Value("${app.data.h2.url:jdbc:h2:file:./test/safetynet}") String url,
+            @Value("${app.data.classpath-resource:data.json}") String classpathResource
+    ) {
+        this.url = url;
+        this.classpathResource = classpathResource;
+    }
+
+    @PostConstruct
+    public synchronized void init() {
+        try {
+            connection = DriverManager.getConnection(url);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(SCHEMA);
+                statement.execute(KEY_INDEX);
+                statement.execute(POS_INDEX);
+            }
+            if (isEmpty()) {
+                seedFromClasspath();
+            } else {
+                rekeyRows();
+            }
+        } catch (SQLException e) {
+            log.error("Error opening H2 database: {}", url, e);
+            throw new RuntimeException("Failed to open H2 database", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Error closing H2 database: {}", url, e);
+        }
+        connection = null;
+    }
+
+    @Override
+    public synchronized <T> List<T> readList(String collection, Class<T> elementType) {
+        List<T> items = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT doc FROM documents WHERE collection_name = ? ORDER BY pos, id")) {
+            select.setString(1, collection);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    items.add(objectMapper.readValue(rows.getString(1), elementType));
+                }
+            }
+        } catch (SQLException | IOException e) {
+            log.error("Error reading collection {} from H2", collection, e);
+            throw new RuntimeException("Failed to read collection from H2", e);
+        }
+        log.debug("Read {} {} from H2", items.size(), collection);
+        return items;
+    }
+
+    @Override
+    public synchronized <T> void writeList(String collection, List<T> items) {
+        inTransaction(() -> writeListRows(collection, items));
+    }
+
+    @Override
+    public synchronized <T> void addElement(String collection, T element, List<T> items) {
+        inTransaction(() -> {
+            long head;
+            try (PreparedStatement min = connection.prepareStatement(
+                    "SELECT COALESCE(MIN(pos), 0) FROM documents WHERE collection_name = ?")) {
+                min.setString(1, collection);
+                try (ResultSet rows = min.executeQuery()) {
+                    rows.next();
+                    head = rows.getLong(1) - 1;
+                }
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                bindRow(insert, collection, head, objectMapper.valueToTree(element));
+                insert.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public synchronized <T> void updateElement(String collection, T previous, T element, List<T> items) {
+        JsonNode node = objectMapper.valueToTree(element);
+        List<String> previousKey = keyOf(collection, objectMapper.valueToTree(previous));
+        List<String> key = keyOf(collection, node);
+        inTransaction(() -> {
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE documents SET doc = ?, key1 = ?, key2 = ? WHERE id = (" + FIRST_WITH_KEY + ")")) {
+                update.setString(1, objectMapper.writeValueAsString(node));
+                update.setString(2, key.get(0));
+                update.setString(3, key.get(1));
+                update.setString(4, collection);
+                update.setString(5, previousKey.get(0));
+                update.setString(6, previousKey.get(1));
+                if (update.executeUpdate() == 0) {
+                    // not stored yet: keep the element where the repository holds it
+                    writeListRows(collection, items);
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized <T> void removeElements(String collection, List<T> removed, List<T> items) {
+        inTransaction(() -> {
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM documents WHERE id = (" + FIRST_WITH_KEY + ")")) {
+                for (T element : removed) {
+                    List<String> key = keyOf(collection, objectMapper.valueToTree(element));
+                    delete.setString(1, collection);
+                    delete.setString(2, key.get(0));
+                    delete.setString(3, key.get(1));
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+        });
+    }
+
+    private boolean isEmpty() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM documents")) {
+            rows.next();
+            return rows.getLong(1) == 0;
+        }
+    }
+
+    /* Recomputes the key columns of rows whose second key is empty, as every fire station row was while
+     * mappings were keyed on the address alone. Rows already keyed correctly are left untouched. */
+    private void rekeyRows() {
+        inTransaction(() -> {
+            int rekeyed = 0;
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT id, collection_name, key1, doc FROM documents WHERE key2 = ''");
+                 PreparedStatement update = connection.prepareStatement(
+                         "UPDATE documents SET key1 = ?, key2 = ? WHERE id = ?");
+                 ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    List<String> key = keyOf(rows.getString(2), objectMapper.readTree(rows.getString(4)));
+                    if (!key.get(1).isEmpty() || !key.get(0).equals(rows.getString(3))) {
+                        update.setString(1, key.get(0));
+                        update.setString(2, key.get(1));
+                        update.setLong(3, rows.getLong(1));
+                        update.addBatch();
+                        rekeyed++;
+                    }
+                }
+                update.executeBatch();
+            }
+            if (rekeyed > 0) {
+                log.info("Rekeyed {} row(s) of H2 database {}", rekeyed, url);
+            }
+        });
+    }
+
+    private void seedFromClasspath() {
+        ClassPathResource resource = new ClassPathResource(classpathResource);
+        if (!resource.exists()) {
+            log.warn("Seed resource {} not found, starting with an empty H2 database", classpathResource);
+            return;
+        }
+        try (InputStream in = resource.getInputStream()) {
+            JsonNode root = objectMapper.readTree(in);
+            inTransaction(() -> {
+                for (Map.Entry<String, JsonNode> field : root.properties()) {
+                    if (field.getValue().isArray()) {
+                        insertAll(field.getKey(), field.getValue());
+                    }
+                }
+            });
+            log.info("Seeded H2 database {} from {}", url, classpathResource);
+        } catch (IOException e) {
+            log.error("Error reading seed resource: {}", classpathResource, e);
+            throw new RuntimeException("Failed to seed H2 database", e);
+        }
+    }
+
+    private <T> void writeListRows(String collection, List<T> items) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM documents WHERE collection_name = ?")) {
+            delete.setString(1, collection);
+            delete.executeUpdate();
+        }
+        insertAll(collection, objectMapper.valueToTree(items));
+    }
+
+    private void insertAll(String collection, JsonNode array) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            long pos = 0;
+            for (JsonNode element : array) {
+                bindRow(insert, collection, pos++, element);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private void bindRow(PreparedStatement insert, String collection, long pos, JsonNode element) throws SQLException {
+        List<String> key = keyOf(collection, element);
+        insert.setString(1, collection);
+        insert.setLong(2, pos);
+        insert.setString(3, key.get(0));
+        insert.setString(4, key.get(1));
+        try {
+            insert.setString(5, objectMapper.writeValueAsString(element));
+        } catch (IOException e) {
+            throw new SQLException("Cannot serialize element of " + collection, e);
+        }
+    }
+
+    // Values of the collection's key fields, padded to the two indexed key columns
+    private static List<String> keyOf(String collection, JsonNode element) {
+        List<String> key = new ArrayList<>(List.of("", ""));
+        List<String> fields = MutationJournal.KEY_FIELDS.getOrDefault(collection, List.of());
+        for (int i = 0; i < fields.size() && i < key.size(); i++) {
+            key.set(i, element.path(fields.get(i)).asText(""));
+        }
+        return key;
+    }
+
+    @FunctionalInterface
+    private interface Work {
+        void run() throws SQLException, IOException;
+    }
+
+    private void inTransaction(Work work) {
+        try {
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | IOException e) {
+            log.error("Error writing to H2 database: {}", url, e);
+            throw new RuntimeException("Failed to write to H2 database", e);
+        }
+    }
+}
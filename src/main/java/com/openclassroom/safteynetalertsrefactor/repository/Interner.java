@@ -0,0 +1,48 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* Reference-counted pool of shared instances for the repeating values of a repository's stored elements.
+ * A value is added when a stored element starts using it and dropped when the last one stops, so the pool
+ * only ever holds values of stored elements. Not thread-safe: the owning repository calls it under its write lock.
+ */
+final class Interner<T> {
+
+    private static final class Entry<T> {
+        final T value;
+        int uses;
+
+        Entry(T value) {
+            this.value = value;
+        }
+    }
+
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    /* Returns the shared instance of a value and counts one more use of it; null stays null. */
+    T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        Entry<T> entry = entries.computeIfAbsent(value, Entry::new);
+        entry.uses++;
+        return entry.value;
+    }
+
+    /* Counts one use less of a value, dropping it with its last use. */
+    void release(T value) {
+        if (value == null) {
+            return;
+        }
+        Entry<T> entry = entries.get(value);
+        if (entry != null && --entry.uses == 0) {
+            entries.remove(value);
+        }
+    }
+
+    /* Number of distinct values in use. */
+    int size() {
+        return entries.size();
+    }
+}
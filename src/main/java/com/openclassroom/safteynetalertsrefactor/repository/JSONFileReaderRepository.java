@@ -3,9 +3,16 @@ package com.openclassroom.safteynetalertsrefactor.repository;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.openclassroom.safteynetalertsrefactor.model.FireStation;
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.io.IOException;
@@ -13,36 +20,222 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Repository
+@ConditionalOnProperty(name = "app.data.engine", havingValue = "json", matchIfMissing = true)
 /* Repository class for reading and writing JSON data from/to files.
  * It supports reading from a classpath resource and an external file, as well as
  * reading/writing lists of objects to/from JSON arrays.
+ * In JOURNAL persistence mode single-element changes are appended to a mutation journal
+ * and only folded into the snapshot file during compaction.
+ * In WRITE_BEHIND persistence mode changed collections are only marked dirty and a background
+ * scheduler writes all of them in a single document write.
+ * At startup the data file is streamed once and every known collection is bound in that pass;
+ * each repository then takes its own list from the preloaded result.
+ * With the PER_COLLECTION storage layout each collection lives in its own file under
+ * app.data.collections-dir, and the single document is only used for import and export.
+ * When app.data.binary-snapshot.enabled is set, a Smile copy of the document is kept next to the
+ * JSON file and preferred at startup while it matches the JSON file.
+ * When app.data.parallel-load.enabled is set, the data file is memory-mapped and its arrays are
+ * bound in parallel chunks on the common fork/join pool instead of in one streaming pass.
  */
-public class JSONFileReaderRepository {
+public class JSONFileReaderRepository implements StorageEngine {
 
     private static final Logger log = LoggerFactory.getLogger(JSONFileReaderRepository.class);
 
+    static final int DEFAULT_COMPACTION_THRESHOLD = 500;
+    static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    static final int DEFAULT_MAX_DIRTY = 100;
+
+    // Element type of every collection stored in the data document
+    private static final Map<String, Class<?>> COLLECTION_TYPES = Map.of(
+            "persons", Person.class,
+            "firestations", FireStation.class,
+            "medicalrecords", MedicalRecord.class
+    );
+
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StreamingCollectionLoader collectionLoader = new StreamingCollectionLoader(objectMapper);
     private final String classpathResource;
     private final Path writePath;
+    private final PersistenceMode persistenceMode;
+    private final StorageLayout storageLayout;
+    private final CollectionFileStore collectionStore;
+    // Optional Smile copy of the single document, null when disabled
+    private final BinarySnapshot binarySnapshot;
+    // Memory-mapped chunked loader used instead of streaming when enabled, null otherwise
+    private final ParallelChunkedLoader parallelLoader;
+    private final MutationJournal journal;
+    private final int compactionThreshold;
+    private final long flushIntervalMs;
+    private final int maxDirty;
+    // Document imported over the stored data on startup, null when app.data.import-path is not set
+    private final Path importPath;
+
+    // Collections changed since the last write-behind flush, with an immutable copy of the list to serialize
+    private final Map<String, List<?>> dirtyCollections = new LinkedHashMap<>();
+    private int pendingChanges;
+    private boolean flushRequested;
+    private ScheduledExecutorService flushScheduler;
+    // Group commit state, guarded by commitLock rather than this so I/O never blocks queuing callers
+    private final Object commitLock = new Object();
+    private final Map<String, JsonNode> pendingCommits = new LinkedHashMap<>();
+    private long requestedCommits;
+    private long completedCommits;
+    private long commitWrites;
+    private boolean commitInFlight;
+    // Snapshot writes of the calling thread's open batch, committed together by endBatch; null outside a batch
+    private final ThreadLocal<Map<String, JsonNode>> batchedCommits = new ThreadLocal<>();
+    // Set by the first readList: the repositories hold the collections from then on, so importDocument is refused
+    private boolean collectionsRead;
+    // Collections bound by the last single-pass load and not yet handed to a repository
+    private Map<String, List<?>> preloaded;
+
+    public JSONFileReaderRepository(String classpathResource, String writePathStr) {
+        this(classpathResource, writePathStr, PersistenceMode.SNAPSHOT.name(), DEFAULT_COMPACTION_THRESHOLD,
+                DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_MAX_DIRTY, StorageLayout.SINGLE_DOCUMENT.name(), "", false, false);
+    }
 
+    public JSONFileReaderRepository(String classpathResource, String writePathStr, String persistenceMode,
+                                    int compactionThreshold, long flushIntervalMs, int maxDirty, String storageLayout,
+                                    String collectionsDir, boolean binarySnapshotEnabled, boolean parallelLoadEnabled) {
+        this(classpathResource, writePathStr, persistenceMode, compactionThreshold, flushIntervalMs, maxDirty,
+                storageLayout, collectionsDir, binarySnapshotEnabled, parallelLoadEnabled, "");
+    }
+
+    @Autowired
     public JSONFileReaderRepository(
             @Value("${app.data.classpath-resource:data.json}") String classpathResource,
-            @Value("${app.data.write-path:test/updated.json}") String writePathStr
-
+            @Value("${app.data.write-path:test/updated.json}") String writePathStr,
+            @Value("${app.data.persistence-mode:snapshot}") String persistenceMode,
+            @Value("${app.data.journal.compaction-threshold:500}") int compactionThreshold,
+            @Value("${app.data.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+            @Value("${app.data.write-behind.max-dirty:100}") int maxDirty,
+            @Value("${app.data.layout:single-document}") String storageLayout,
+            @Value("${app.data.collections-dir:}") String collectionsDir,
+            @Value("${app.data.binary-snapshot.enabled:false}") boolean binarySnapshotEnabled,
+            @Value("${app.data.parallel-load.enabled:false}") boolean parallelLoadEnabled,
+            @Value("${app.data.import-path:}") String importPath
     ) {
         this.classpathResource = classpathResource;
         this.writePath = Path.of(writePathStr);
+        this.persistenceMode = PersistenceMode.from(persistenceMode);
+        this.storageLayout = StorageLayout.from(storageLayout);
+        // collection files default to a "collections" directory next to the single document
+        Path parent = writePath.toAbsolutePath().getParent();
+        this.collectionStore = new CollectionFileStore(
+                collectionsDir == null || collectionsDir.isBlank() ? parent.resolve("collections") : Path.of(collectionsDir),
+                objectMapper);
+        this.binarySnapshot = binarySnapshotEnabled ? new BinarySnapshot(Path.of(writePathStr + ".smile")) : null;
+        this.parallelLoader = parallelLoadEnabled ? new ParallelChunkedLoader(objectMapper) : null;
+        this.journal = new MutationJournal(Path.of(writePathStr + ".journal"), objectMapper);
+        this.compactionThreshold = Math.max(1, compactionThreshold);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.maxDirty = Math.max(1, maxDirty);
+        this.importPath = importPath == null || importPath.isBlank() ? null : Path.of(importPath);
+    }
+
+    @PostConstruct
+    void init() {
+        if (importPath != null) {
+            // before any repository loads; the imported document replaces the journal as well
+            log.warn("Importing {} over the stored data, as on every start while app.data.import-path is set", importPath);
+            importDocument(importPath);
+        } else {
+            recoverJournal();
+        }
+        if (persistenceMode == PersistenceMode.WRITE_BEHIND) {
+            startFlushScheduler();
+        }
     }
 
-    // Read JsonNode from external file if exists, otherwise from classpath
-    public JsonNode readJson() {
+    /* Stops the write-behind scheduler and writes anything still pending. */
+    @PreDestroy
+    public void shutdown() {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = flushScheduler;
+            flushScheduler = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /* Folds a journal left over from a previous run into the snapshot before the repositories load.
+     * In JOURNAL mode the journal then numbers its records after the sequence the snapshot holds. */
+    void recoverJournal() {
+        if (!journal.isEmpty()) {
+            log.info("Replaying {} journal record(s) from {}", journal.size(), journal.getPath());
+            compact();
+        } else if (persistenceMode == PersistenceMode.JOURNAL) {
+            journal.resumeAfter(readSnapshot().path(MutationJournal.SEQUENCE_FIELD).asLong(0));
+        }
+    }
+
+    public PersistenceMode getPersistenceMode() {
+        return persistenceMode;
+    }
+
+    public StorageLayout getStorageLayout() {
+        return storageLayout;
+    }
+
+    // Read JsonNode from external file if exists, otherwise from classpath, with pending journal records
+    // and unflushed write-behind collections applied
+    public synchronized JsonNode readJson() {
+        JsonNode root = readSnapshot();
+        if (journal.isEmpty() && dirtyCollections.isEmpty()) {
+            return root;
+        }
+        ObjectNode objectNode = root.isObject() ? (ObjectNode) root : objectMapper.createObjectNode();
+        journal.replay(objectNode);
+        dirtyCollections.forEach((name, items) -> objectNode.set(name, objectMapper.valueToTree(items)));
+        return objectNode;
+    }
+
+    private JsonNode readSnapshot() {
+        if (storageLayout == StorageLayout.PER_COLLECTION) {
+            ensureCollectionsImported();
+            return collectionStore.exportDocument();
+        }
+        return readSingleDocument();
+    }
+
+    private JsonNode readSingleDocument() {
         return readFromExternalFile().orElseGet(this::readFromClasspath);
     }
 
+    // First start with the per-collection layout: split the existing single document into collection files
+    private void ensureCollectionsImported() {
+        if (collectionStore.isEmpty()) {
+            log.info("Importing single document into collection files under {}", collectionStore.getDirectory());
+            collectionStore.importDocument(readSingleDocument());
+        }
+    }
+
+    // Open the external file if it exists, otherwise the classpath resource, or null when neither exists
+    private InputStream openSnapshot() throws IOException {
+        if (Files.exists(writePath)) {
+            return Files.newInputStream(writePath);
+        }
+        return getClass().getClassLoader().getResourceAsStream(classpathResource);
+    }
+
 
     private Optional<JsonNode> readFromExternalFile() {
         if (Files.exists(writePath)) {
@@ -69,22 +262,100 @@ public class JSONFileReaderRepository {
         }
     }
 
-    // Write JsonNode to external file
-    public void writeJson(JsonNode root) {
+    // Write JsonNode to external file, or to one file per collection with the per-collection layout
+    public synchronized void writeJson(JsonNode root) {
+        preloaded = null;
+        if (storageLayout == StorageLayout.PER_COLLECTION) {
+            collectionStore.importDocument(root);
+            return;
+        }
         try {
-            Path parent = writePath.toAbsolutePath().getParent();
-            if (parent != null && !Files.exists(parent)) {
-                Files.createDirectories(parent);
-            }
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(writePath.toFile(), root);
+            AtomicFileWriter.write(writePath, out -> objectMapper.writerWithDefaultPrettyPrinter().writeValue(out, root));
         } catch (IOException e) {
             log.error("Error writing JSON to file: {}", writePath, e);
             throw new RuntimeException("Failed to write JSON file", e);
         }
+        if (binarySnapshot != null) {
+            binarySnapshot.write(writePath, root);
+        }
     }
 
     // Read a list of objects from a JSON array and convert them to a List<T>
-    public <T> List<T> readList(String arrayName, Class<T> elementType) {
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T> List<T> readList(String arrayName, Class<T> elementType) {
+        collectionsRead = true;
+        if (!journal.isEmpty() || !dirtyCollections.isEmpty()) {
+            return readListFromTree(arrayName, elementType);
+        }
+        if (storageLayout == StorageLayout.PER_COLLECTION) {
+            ensureCollectionsImported();
+            return (List<T>) collectionStore.read(arrayName, elementType);
+        }
+        if (preloaded == null || !preloaded.containsKey(arrayName)) {
+            Optional<Map<String, List<?>>> loaded = loadAllCollections(arrayName, elementType);
+            if (loaded.isEmpty()) {
+                return readListFromTree(arrayName, elementType);
+            }
+            preloaded = loaded.get();
+        }
+        List<?> items = preloaded.remove(arrayName);
+        if (preloaded.isEmpty()) {
+            preloaded = null;
+        }
+        if (items == null) {
+            return new ArrayList<>();
+        }
+        if (!items.isEmpty() && !elementType.isInstance(items.get(0))) {
+            return readListFromTree(arrayName, elementType);
+        }
+        return (List<T>) items;
+    }
+
+    /* Reads the data file once, binding every known collection plus the requested one. */
+    private Optional<Map<String, List<?>>> loadAllCollections(String arrayName, Class<?> elementType) {
+        Map<String, Class<?>> wanted = new HashMap<>(COLLECTION_TYPES);
+        wanted.put(arrayName, elementType);
+        long start = System.nanoTime();
+        if (binarySnapshot != null) {
+            Optional<Map<String, List<?>>> fromBinary = binarySnapshot.load(writePath, wanted);
+            if (fromBinary.isPresent()) {
+                log.info("Loaded collections {} from binary snapshot in {} ms", fromBinary.get().keySet(), (System.nanoTime() - start) / 1_000_000);
+                return fromBinary;
+            }
+        }
+        try {
+            Map<String, List<?>> loaded = loadFromJson(wanted);
+            if (loaded == null) {
+                return Optional.empty();
+            }
+            log.info("Loaded collections {} in {} ms", loaded.keySet(), (System.nanoTime() - start) / 1_000_000);
+            if (binarySnapshot != null && Files.exists(writePath)) {
+                // refresh the missing or stale binary copy so the next start can use it
+                binarySnapshot.write(writePath, loaded);
+            }
+            return Optional.of(loaded);
+        } catch (IOException e) {
+            log.error("Error streaming JSON data file, falling back to tree parsing", e);
+            return Optional.empty();
+        }
+    }
+
+    // Memory-mapped parallel binding when enabled and the data file exists, one streaming pass otherwise
+    private Map<String, List<?>> loadFromJson(Map<String, Class<?>> wanted) throws IOException {
+        if (parallelLoader != null && Files.exists(writePath)) {
+            try {
+                return parallelLoader.load(writePath, wanted);
+            } catch (IOException e) {
+                log.warn("Parallel load of {} failed, streaming it instead", writePath, e);
+            }
+        }
+        try (InputStream in = openSnapshot()) {
+            return in == null ? null : collectionLoader.load(in, wanted);
+        }
+    }
+
+    private <T> List<T> readListFromTree(String arrayName, Class<T> elementType) {
         JsonNode arrayNode = readJson().path(arrayName);
         if (!arrayNode.isArray() || arrayNode.isEmpty()) {
             return new ArrayList<>();
@@ -96,10 +367,278 @@ public class JSONFileReaderRepository {
     }
 
     //Convert a List<T> to a JSON array and write it to the JSON file
+    @Override
     public <T> void writeList(String arrayName, List<T> items) {
+        switch (persistenceMode) {
+            case JOURNAL -> appendToJournal(arrayName, MutationJournal.SET, objectMapper.valueToTree(items));
+            // copied on the caller's thread, which holds its repository's write lock, so the
+            // scheduler never serializes a list the repository is still changing
+            case WRITE_BEHIND -> markDirty(arrayName, List.copyOf(items));
+            default -> {
+                Map<String, JsonNode> batched = batchedCommits.get();
+                if (batched != null) {
+                    batched.put(arrayName, objectMapper.valueToTree(items));
+                } else {
+                    groupCommit(Map.of(arrayName, objectMapper.valueToTree(items)));
+                }
+            }
+        }
+    }
+
+    /* With the snapshot mode, the collections written during the batch are kept back and committed in one
+     * document write by endBatch. Journal records and write-behind changes are handled as outside a batch. */
+    @Override
+    public void beginBatch() {
+        if (persistenceMode == PersistenceMode.SNAPSHOT) {
+            batchedCommits.set(new LinkedHashMap<>());
+        }
+    }
+
+    /* Commits the collections written during the batch. A write-behind engine is not flushed: its changes
+     * follow the flush interval and dirty threshold as outside a batch. */
+    @Override
+    public void endBatch() {
+        Map<String, JsonNode> batched = batchedCommits.get();
+        batchedCommits.remove();
+        if (batched != null && !batched.isEmpty()) {
+            groupCommit(batched);
+        }
+    }
+
+    /* Records that an element was inserted at the head of the list; items is the full list after the change. */
+    @Override
+    public <T> void addElement(String arrayName, T element, List<T> items) {
+        if (persistenceMode == PersistenceMode.JOURNAL) {
+            appendToJournal(arrayName, MutationJournal.ADD, objectMapper.valueToTree(element));
+        } else {
+            writeList(arrayName, items);
+        }
+    }
+
+    /* Records that an element of the list was replaced; the journal record carries both forms. */
+    @Override
+    public <T> void updateElement(String arrayName, T previous, T element, List<T> items) {
+        if (persistenceMode == PersistenceMode.JOURNAL) {
+            appendToJournal(arrayName, MutationJournal.UPDATE, objectMapper.valueToTree(element), objectMapper.valueToTree(previous));
+        } else {
+            writeList(arrayName, items);
+        }
+    }
+
+    /* Records that elements were removed from the list. */
+    @Override
+    public <T> void removeElements(String arrayName, List<T> removed, List<T> items) {
+        if (persistenceMode == PersistenceMode.JOURNAL) {
+            appendToJournal(arrayName, MutationJournal.REMOVE, objectMapper.valueToTree(removed));
+        } else {
+            writeList(arrayName, items);
+        }
+    }
+
+    /* Makes collections durable through a group commit: callers that arrive while another write is
+     * in flight queue their collections and the next write carries all of them, so N concurrent
+     * persist calls cost about two file writes instead of N. Returns once the caller's data is on disk.
+     */
+    private void groupCommit(Map<String, JsonNode> collections) {
+        long ticket;
+        synchronized (commitLock) {
+            pendingCommits.putAll(collections);
+            ticket = ++requestedCommits;
+        }
+        while (true) {
+            Map<String, JsonNode> batch;
+            long batchEnd;
+            synchronized (commitLock) {
+                while (commitInFlight && completedCommits < ticket) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted while waiting for group commit", e);
+                    }
+                }
+                if (completedCommits >= ticket) {
+                    return;
+                }
+                commitInFlight = true;
+                batch = new LinkedHashMap<>(pendingCommits);
+                pendingCommits.clear();
+                batchEnd = requestedCommits;
+            }
+            boolean written = false;
+            try {
+                writeBatch(batch);
+                written = true;
+            } finally {
+                synchronized (commitLock) {
+                    commitInFlight = false;
+                    if (written) {
+                        completedCommits = batchEnd;
+                        commitWrites++;
+                    } else {
+                        // hand the batch back so the next leader retries anything not superseded meanwhile
+                        batch.forEach(pendingCommits::putIfAbsent);
+                    }
+                    commitLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private synchronized void writeBatch(Map<String, JsonNode> batch) {
+        if (storageLayout == StorageLayout.PER_COLLECTION) {
+            ensureCollectionsImported();
+            batch.forEach(collectionStore::write);
+        } else {
+            JsonNode root = readJson();
+            ObjectNode objectNode = root.isObject() ? (ObjectNode) root : objectMapper.createObjectNode();
+            batch.forEach(objectNode::set);
+            writeJson(objectNode);
+        }
+        log.debug("Group commit wrote {} collection(s): {}", batch.size(), batch.keySet());
+    }
+
+    /* Number of file writes performed by group commits, exposed for tests and benchmarks. */
+    public long getCommitWrites() {
+        synchronized (commitLock) {
+            return commitWrites;
+        }
+    }
+
+    /* Rewrites the snapshot with all journal records applied, and the sequence of the last one, then empties
+     * the journal. A crash before the truncate leaves records the snapshot already holds; replay skips them. */
+    public synchronized void compact() {
         JsonNode root = readJson();
-        ObjectNode objectNode = root.isObject() ? (ObjectNode) root : objectMapper.createObjectNode();
-        objectNode.set(arrayName, objectMapper.valueToTree(items));
-        writeJson(objectNode);
+        if (root.isObject()) {
+            long sequence = Math.max(root.path(MutationJournal.SEQUENCE_FIELD).asLong(0), journal.lastSequence());
+            ((ObjectNode) root).put(MutationJournal.SEQUENCE_FIELD, sequence);
+            journal.resumeAfter(sequence);
+        }
+        writeJson(root);
+        journal.truncate();
+        log.info("Compacted journal into snapshot {}", writePath);
+    }
+
+    /* Writes a copy of the current data in the single data.json document format, replacing the target
+     * atomically so an interrupted export never leaves a truncated document behind. */
+    public synchronized void exportDocument(Path target) {
+        JsonNode root = readJson();
+        try {
+            AtomicFileWriter.write(target, out -> objectMapper.writerWithDefaultPrettyPrinter().writeValue(out, root));
+        } catch (IOException e) {
+            log.error("Error exporting JSON document to: {}", target, e);
+            throw new RuntimeException("Failed to export JSON document", e);
+        }
+        log.info("Exported data to {}", target);
+    }
+
+    /* Replaces the stored data with the content of a single data.json style document.
+     * Only allowed before any collection is read: the repositories load their collections once at startup
+     * and would otherwise keep serving, and writing back, the data the import replaced. The application
+     * runs it from init() when app.data.import-path is set. */
+    public synchronized void importDocument(Path source) {
+        if (collectionsRead) {
+            throw new IllegalStateException("Cannot import " + source + " after the repositories loaded their collections");
+        }
+        JsonNode root;
+        try (InputStream in = Files.newInputStream(source)) {
+            root = objectMapper.readTree(in);
+        } catch (IOException e) {
+            log.error("Error importing JSON document from: {}", source, e);
+            throw new RuntimeException("Failed to import JSON document", e);
+        }
+        if (root.isObject()) {
+            // a sequence exported by another instance means nothing to this journal
+            ((ObjectNode) root).put(MutationJournal.SEQUENCE_FIELD, journal.lastSequence());
+        }
+        writeJson(root);
+        journal.truncate();
+        log.info("Imported data from {}", source);
+    }
+
+    /* Writes every dirty collection now, on the calling thread: one document write with the
+     * single-document layout, or only the dirty collection files with the per-collection layout. */
+    @Override
+    public synchronized void flush() {
+        if (dirtyCollections.isEmpty()) {
+            return;
+        }
+        if (storageLayout == StorageLayout.PER_COLLECTION) {
+            flushCollectionFiles();
+            return;
+        }
+        JsonNode root = readJson();
+        int changes = pendingChanges;
+        List<String> flushed = new ArrayList<>(dirtyCollections.keySet());
+        // a failed write keeps every collection dirty for the next flush
+        writeJson(root);
+        dirtyCollections.clear();
+        pendingChanges = 0;
+        flushRequested = false;
+        log.debug("Flushed {} change(s) to {} in one write: {}", changes, writePath, flushed);
+    }
+
+    private void flushCollectionFiles() {
+        ensureCollectionsImported();
+        int changes = pendingChanges;
+        List<String> flushed = new ArrayList<>();
+        for (Map.Entry<String, List<?>> entry : new ArrayList<>(dirtyCollections.entrySet())) {
+            collectionStore.write(entry.getKey(), objectMapper.valueToTree(entry.getValue()));
+            dirtyCollections.remove(entry.getKey());
+            flushed.add(entry.getKey());
+        }
+        if (dirtyCollections.isEmpty()) {
+            pendingChanges = 0;
+            flushRequested = false;
+        }
+        log.debug("Flushed {} change(s) to collection files {}", changes, flushed);
+    }
+
+    /* Number of changes waiting for the next write-behind flush. */
+    public synchronized int getPendingChanges() {
+        return pendingChanges;
+    }
+
+    private void startFlushScheduler() {
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "json-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Write-behind enabled: flushing every {} ms or after {} change(s)", flushIntervalMs, maxDirty);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Write-behind flush failed, changes stay pending", e);
+        }
+    }
+
+    private synchronized void markDirty(String arrayName, List<?> items) {
+        dirtyCollections.put(arrayName, items);
+        pendingChanges++;
+        if (pendingChanges >= maxDirty && !flushRequested) {
+            if (flushScheduler == null) {
+                flush();
+            } else {
+                flushRequested = true;
+                flushScheduler.execute(this::flushQuietly);
+            }
+        }
+    }
+
+    private void appendToJournal(String arrayName, String op, JsonNode value) {
+        appendToJournal(arrayName, op, value, null);
+    }
+
+    private synchronized void appendToJournal(String arrayName, String op, JsonNode value, JsonNode previous) {
+        int size = journal.append(arrayName, op, value, previous);
+        log.debug("Journaled '{}' on {} ({} record(s) pending)", op, arrayName, size);
+        if (size >= compactionThreshold) {
+            compact();
+        }
     }
 }
@@ -1,37 +1,92 @@
 package com.openclassroom.safteynetalertsrefactor.repository;
 
 import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.OffHeapListArena;
+import com.openclassroom.safteynetalertsrefactor.model.ValueDictionary;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Slf4j
 @Repository
 /* Repository class for managing MedicalRecord data.
  * It provides methods to load, add, update, delete, and persist medical records.
+ * Records are indexed in an array by the dense id of their (firstName, lastName), which the persons of that
+ * name carry, so the per-person lookups of the first responder queries are an array read. A version per
+ * case-folded last name moves on every change to one of its records, so joined views built from them can be cached.
+ * Readers of the full list get a shared read-only snapshot, rebuilt on writes rather than copied per read.
+ * Lookups take the read lock and changes the write lock; an update replaces the record with a new instance.
+ * The medication and allergy terms of stored records are the shared instances of a reference-counted pool owned
+ * by the repository, so a term is held once and leaves the pool with the last record listing it.
+ * With app.data.medical-records.off-heap set, the medications and allergies of every record are instead moved to
+ * an off-heap arena, as codes of a vocabulary owned with the arena, and only decoded when read, for instance when
+ * a DTO is built for serialization. Lists of replaced or removed records are garbage in the arena until it is
+ * compacted into a new one, which also starts a new vocabulary holding only the terms still listed.
  */
 public class MedicalRecordsRepository {
     private static final String records = "medicalrecords";
-    private final JSONFileReaderRepository JSONFileReaderRepository;
+    private static final long COMPACTION_MIN_GARBAGE = 64 * 1024;
+    private final StorageEngine storageEngine;
+    private final DenseIds ids;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     private final List<MedicalRecord> medicalRecords = new ArrayList<>();
+    // Read-only copy of the list handed to readers, replaced after every change
+    private volatile List<MedicalRecord> snapshot = List.of();
+    // Name id (see DenseIds.nameId) -> first record of that name in list order
+    private final DenseTable<MedicalRecord> byNameId = new DenseTable<>();
+    private final Map<String, Long> lastNameVersions = new HashMap<>();
+    private long lastVersion;
+    // Shared instances of the terms of the stored records, while they stay on the heap
+    private final Interner<String> sharedTerms = new Interner<>();
+    // Off-heap home of the medications and allergies, null when they stay on the heap
+    private OffHeapListArena arena;
+    // Codes of the terms held in the arena, replaced together with it
+    private ValueDictionary<String> arenaTerms;
 
-    public MedicalRecordsRepository(JSONFileReaderRepository JSONFileReaderRepository) {
-        this.JSONFileReaderRepository = JSONFileReaderRepository;
+    public MedicalRecordsRepository(StorageEngine storageEngine, DenseIds ids) {
+        this(storageEngine, false, ids);
+    }
+
+    @Autowired
+    public MedicalRecordsRepository(StorageEngine storageEngine,
+                                    @Value("${app.data.medical-records.off-heap:false}") boolean offHeap,
+                                    DenseIds ids) {
+        this.storageEngine = storageEngine;
+        this.ids = ids;
+        this.arena = offHeap ? new OffHeapListArena() : null;
+        this.arenaTerms = offHeap ? new ValueDictionary<>() : null;
         log.info("MedicalRecordsRepository created for resource: {}", records);
     }
 
     @PostConstruct
-    void init() {
+    public void init() {
         log.info("Initializing MedicalRecordsRepository from resource: {}", records);
-        List<MedicalRecord> loaded = JSONFileReaderRepository.readList(records, MedicalRecord.class);
+        List<MedicalRecord> loaded = storageEngine.readList(records, MedicalRecord.class);
         if (loaded != null) {
             medicalRecords.addAll(loaded);
+            publish();
+            for (MedicalRecord medicalRecord : loaded) {
+                int nameId = idOf(medicalRecord);
+                if (byNameId.get(nameId) == null) {
+                    byNameId.put(nameId, medicalRecord);
+                }
+                storeTerms(medicalRecord);
+            }
             log.info("Loaded {} medical records", loaded.size());
+            if (arena != null) {
+                log.info("Medications and allergies held off-heap in {} byte(s)", arena.capacityBytes());
+            }
         } else {
             log.warn("No medical records loaded from resource: {}", records);
         }
@@ -39,63 +94,239 @@ public class MedicalRecordsRepository {
 
     /* Retrieves all medical record records. */
     public List<MedicalRecord> findAll() {
-        log.debug("findAll called, returning {} records", medicalRecords.size());
-        return new ArrayList<>(medicalRecords);
+        List<MedicalRecord> all = snapshot;
+        log.debug("findAll called, returning {} records", all.size());
+        return all;
     }
 
     /* Adds a new medical record and persists the change. */
     public void add(MedicalRecord newMedicalRecords) {
-        log.info("Adding medical record for {} {}", newMedicalRecords.getFirstName(), newMedicalRecords.getLastName());
-        medicalRecords.add(0, newMedicalRecords);
-        persist();
+        lock.writeLock().lock();
+        try {
+            log.info("Adding medical record for {} {}", newMedicalRecords.getFirstName(), newMedicalRecords.getLastName());
+            storeTerms(newMedicalRecords);
+            medicalRecords.add(0, newMedicalRecords);
+            publish();
+            byNameId.put(idOf(newMedicalRecords), newMedicalRecords);
+            lastNameChanged(newMedicalRecords.getLastName());
+            storageEngine.addElement(records, newMedicalRecords, medicalRecords);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /* Finds a medical record by first and last name. */
     public Optional<MedicalRecord> findByName(String firstName, String lastName) {
-        log.debug("Searching for medical record: {} {}", firstName, lastName);
-        for (MedicalRecord medicalrecord : medicalRecords) {
-            if (medicalrecord.getFirstName().equals(firstName) && medicalrecord.getLastName().equals(lastName)) {
+        lock.readLock().lock();
+        try {
+            log.debug("Searching for medical record: {} {}", firstName, lastName);
+            MedicalRecord medicalrecord = byNameId.get(ids.findNameId(firstName, lastName));
+            if (medicalrecord != null) {
                 log.debug("Found medical record for {} {}", firstName, lastName);
                 return Optional.of(medicalrecord);
             }
+            log.debug("No medical record found for {} {}", firstName, lastName);
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Finds the medical record of a name id, as given to the persons of that name by their repository. */
+    public Optional<MedicalRecord> findByNameId(int nameId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(byNameId.get(nameId));
+        } finally {
+            lock.readLock().unlock();
         }
-        log.debug("No medical record found for {} {}", firstName, lastName);
-        return Optional.empty();
     }
 
     /* Updates an existing medical record identified by first and last name. */
     public boolean updateMedicalRecord(String firstName, String lastName, MedicalRecord updatedMedicalRecord) {
-        log.info("Updating medical record for {} {}", firstName, lastName);
-        Optional<MedicalRecord> medicalRecordToUpdate = findByName(firstName, lastName);
-        if (medicalRecordToUpdate.isEmpty()) {
-            log.warn("Cannot update - medical record not found for {} {}", firstName, lastName);
-            return false;
+        lock.writeLock().lock();
+        try {
+            log.info("Updating medical record for {} {}", firstName, lastName);
+            Optional<MedicalRecord> medicalRecordToUpdate = findByName(firstName, lastName);
+            if (medicalRecordToUpdate.isEmpty()) {
+                log.warn("Cannot update - medical record not found for {} {}", firstName, lastName);
+                return false;
+            }
+            MedicalRecord existingRecord = medicalRecordToUpdate.get();
+            MedicalRecord replacement = new MedicalRecord(existingRecord.getFirstName(), existingRecord.getLastName(),
+                    updatedMedicalRecord.getBirthdate(), updatedMedicalRecord.getMedications(), updatedMedicalRecord.getAllergies());
+            storeTerms(replacement);
+            releaseTerms(existingRecord);
+            medicalRecords.set(indexOf(existingRecord), replacement);
+            publish();
+            byNameId.put(idOf(replacement), replacement);
+            lastNameChanged(replacement.getLastName());
+            storageEngine.updateElement(records, existingRecord, replacement, medicalRecords);
+            compactIfWasteful();
+            log.info("Updated medical record for {} {}", firstName, lastName);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        MedicalRecord existingRecord = medicalRecordToUpdate.get();
-        existingRecord.setBirthdate(updatedMedicalRecord.getBirthdate());
-        existingRecord.setMedications(updatedMedicalRecord.getMedications());
-        existingRecord.setAllergies(updatedMedicalRecord.getAllergies());
-        persist();
-        log.info("Updated medical record for {} {}", firstName, lastName);
-        return true;
     }
 
     /* Deletes a medical record identified by first and last name. */
     public boolean deleteByName(String firstName, String lastName) {
-        log.info("Deleting medical record for {} {}", firstName, lastName);
-        Optional<MedicalRecord> medicalRecordToDelete = findByName(firstName, lastName);
-        if (medicalRecordToDelete.isEmpty()) {
-            log.warn("Cannot delete - medical record not found for {} {}", firstName, lastName);
-            return false;
+        lock.writeLock().lock();
+        try {
+            log.info("Deleting medical record for {} {}", firstName, lastName);
+            Optional<MedicalRecord> medicalRecordToDelete = findByName(firstName, lastName);
+            if (medicalRecordToDelete.isEmpty()) {
+                log.warn("Cannot delete - medical record not found for {} {}", firstName, lastName);
+                return false;
+            }
+            medicalRecords.remove(medicalRecordToDelete.get());
+            releaseTerms(medicalRecordToDelete.get());
+            publish();
+            reindex(idOf(medicalRecordToDelete.get()));
+            lastNameChanged(medicalRecordToDelete.get().getLastName());
+            storageEngine.removeElements(records, List.of(medicalRecordToDelete.get()), medicalRecords);
+            compactIfWasteful();
+            log.info("Deleted medical record for {} {}", firstName, lastName);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        medicalRecords.remove(medicalRecordToDelete.get());
-        persist();
-        log.info("Deleted medical record for {} {}", firstName, lastName);
-        return true;
+    }
+
+    /* Version stamp of the records sharing a case-folded last name; 0 when none was ever changed. */
+    public long lastNameVersion(String lastName) {
+        lock.readLock().lock();
+        try {
+            return lastNameVersions.getOrDefault(NameKey.fold(lastName), 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Native memory held by the off-heap arena, 0 when records stay on the heap. */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return arena == null ? 0 : arena.capacityBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Moves the terms of a record about to be stored to the arena, or swaps them for the shared instances
+    private void storeTerms(MedicalRecord medicalRecord) {
+        if (arena != null) {
+            medicalRecord.moveListsTo(arena, arenaTerms);
+            return;
+        }
+        medicalRecord.setMedications(intern(medicalRecord.getMedications()));
+        medicalRecord.setAllergies(intern(medicalRecord.getAllergies()));
+    }
+
+    // Releases the terms of a record that was replaced or removed; the record itself stays readable
+    private void releaseTerms(MedicalRecord medicalRecord) {
+        if (arena != null) {
+            medicalRecord.releaseOffHeapLists();
+            return;
+        }
+        release(medicalRecord.getMedications());
+        release(medicalRecord.getAllergies());
+    }
+
+    private List<String> intern(List<String> terms) {
+        if (terms == null) {
+            return null;
+        }
+        List<String> interned = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            interned.add(sharedTerms.intern(term));
+        }
+        return interned;
+    }
+
+    private void release(List<String> terms) {
+        if (terms != null) {
+            terms.forEach(sharedTerms::release);
+        }
+    }
+
+    /* Number of distinct medication and allergy terms shared on the heap by the stored records. */
+    int sharedTermCount() {
+        lock.readLock().lock();
+        try {
+            return sharedTerms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Copies the live records into a new arena once most of the current one is garbage. Readers still holding
+    // a previous instance keep reading the old arena, whose memory goes away with its last reference.
+    private void compactIfWasteful() {
+        if (arena == null || arena.garbageBytes() < COMPACTION_MIN_GARBAGE || arena.garbageBytes() * 2 < arena.usedBytes()) {
+            return;
+        }
+        long before = arena.capacityBytes();
+        arena = new OffHeapListArena();
+        arenaTerms = new ValueDictionary<>();
+        for (int i = 0; i < medicalRecords.size(); i++) {
+            MedicalRecord previous = medicalRecords.get(i);
+            MedicalRecord copy = new MedicalRecord(previous.getFirstName(), previous.getLastName(),
+                    previous.getBirthdate(), previous.getMedications(), previous.getAllergies());
+            copy.moveListsTo(arena, arenaTerms);
+            medicalRecords.set(i, copy);
+            int nameId = idOf(copy);
+            if (byNameId.get(nameId) == previous) {
+                byNameId.put(nameId, copy);
+            }
+        }
+        publish();
+        log.info("Compacted off-heap medical record lists from {} to {} byte(s)", before, arena.capacityBytes());
+    }
+
+    private void lastNameChanged(String lastName) {
+        String key = NameKey.fold(lastName);
+        if (key != null) {
+            lastNameVersions.put(key, ++lastVersion);
+        }
+    }
+
+    private int indexOf(MedicalRecord medicalRecord) {
+        for (int i = 0; i < medicalRecords.size(); i++) {
+            if (medicalRecords.get(i) == medicalRecord) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int idOf(MedicalRecord medicalRecord) {
+        return ids.nameId(medicalRecord.getFirstName(), medicalRecord.getLastName());
+    }
+
+    // Points the name id at the next record with the same name after a removal, or drops it
+    private void reindex(int nameId) {
+        byNameId.remove(nameId);
+        for (MedicalRecord medicalRecord : medicalRecords) {
+            if (idOf(medicalRecord) == nameId) {
+                byNameId.put(nameId, medicalRecord);
+                return;
+            }
+        }
+    }
+
+    private void publish() {
+        snapshot = Collections.unmodifiableList(new ArrayList<>(medicalRecords));
     }
 
     public void persist() {
-        log.debug("Persisting {} medical records to resource: {}", medicalRecords.size(), records);
-        JSONFileReaderRepository.writeList(records, medicalRecords);
+        lock.writeLock().lock();
+        try {
+            log.debug("Persisting {} medical records to resource: {}", medicalRecords.size(), records);
+            storageEngine.writeList(records, medicalRecords);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 }
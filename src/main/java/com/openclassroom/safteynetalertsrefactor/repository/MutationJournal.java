@@ -0,0 +1,268 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/* Append-only log of repository mutations.
+ * Each line is one compact JSON record {"seq": n, "c": collection, "op": add|update|remove|set, "v": value};
+ * update records also carry the replaced element as "old", since an update may change the fields identifying it.
+ * Replaying the records in order on top of the snapshot document rebuilds the current state.
+ * Sequence numbers only grow, and a snapshot written with records folded in stores the last one under
+ * SEQUENCE_FIELD: replay skips every record at or below it, so a crash between the snapshot write and
+ * the truncate does not apply the same records a second time.
+ */
+public class MutationJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(MutationJournal.class);
+
+    static final String ADD = "add";
+    static final String UPDATE = "update";
+    static final String REMOVE = "remove";
+    static final String SET = "set";
+
+    // Top-level field of the snapshot document holding the sequence number of the last record folded into it
+    static final String SEQUENCE_FIELD = "journalSequence";
+
+    // Fields identifying an element of each collection, used to match update/remove records.
+    // An address may be mapped to several stations, so a fire station mapping is the (address, station) pair.
+    static final Map<String, List<String>> KEY_FIELDS = Map.of(
+            "persons", List.of("firstName", "lastName"),
+            "medicalrecords", List.of("firstName", "lastName"),
+            "firestations", List.of("address", "station")
+    );
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private int records = -1;
+    private long lastSequence = -1;
+
+    public MutationJournal(Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /* Appends one record and returns the number of records now in the journal. */
+    public int append(String collection, String op, JsonNode value) {
+        return append(collection, op, value, null);
+    }
+
+    /* Appends one record, with the element it replaces for an update, and returns the number of records now in the journal. */
+    public synchronized int append(String collection, String op, JsonNode value, JsonNode previous) {
+        int current = size();
+        long sequence = lastSequence() + 1;
+        ObjectNode record = objectMapper.createObjectNode();
+        record.put("seq", sequence);
+        record.put("c", collection);
+        record.put("op", op);
+        record.set("v", value);
+        if (previous != null) {
+            record.set("old", previous);
+        }
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null && !Files.exists(parent)) {
+                Files.createDirectories(parent);
+            }
+            Files.writeString(path, objectMapper.writeValueAsString(record) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("Error appending to journal: {}", path, e);
+            throw new RuntimeException("Failed to append to journal", e);
+        }
+        records = current + 1;
+        lastSequence = sequence;
+        return records;
+    }
+
+    /* Sequence number of the last record appended, kept across truncate, or 0 before the first one. */
+    public synchronized long lastSequence() {
+        if (lastSequence < 0) {
+            lastSequence = readLastSequence();
+        }
+        return lastSequence;
+    }
+
+    /* Makes the next record number follow the given one, typically the sequence stored in the snapshot,
+     * so new records are never mistaken for records the snapshot already holds. */
+    public synchronized void resumeAfter(long sequence) {
+        lastSequence = Math.max(lastSequence(), sequence);
+    }
+
+    /* Number of records currently in the journal. */
+    public synchronized int size() {
+        if (records < 0) {
+            records = countRecords();
+        }
+        return records;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /* Applies every record the document does not hold yet, in order, and advances its SEQUENCE_FIELD. */
+    public synchronized void replay(ObjectNode root) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        long folded = root.path(SEQUENCE_FIELD).asLong(0);
+        long last = folded;
+        int applied = 0;
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode record;
+                try {
+                    record = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    // a torn last line means the process died mid-append: everything before it is valid
+                    log.warn("Stopping journal replay at unreadable record {} in {}", applied + skipped + 1, path);
+                    break;
+                }
+                // records written before sequence numbers were recorded carry none and are always applied
+                if (record.has("seq")) {
+                    long sequence = record.get("seq").asLong();
+                    if (sequence <= folded) {
+                        skipped++;
+                        continue;
+                    }
+                    last = Math.max(last, sequence);
+                }
+                apply(root, record);
+                applied++;
+            }
+        } catch (IOException e) {
+            log.error("Error reading journal: {}", path, e);
+            throw new RuntimeException("Failed to read journal", e);
+        }
+        if (last > folded) {
+            root.put(SEQUENCE_FIELD, last);
+        }
+        log.debug("Replayed {} journal record(s) from {}, skipped {} already in the snapshot", applied, path, skipped);
+    }
+
+    /* Removes all records, typically once they have been folded into a new snapshot. The sequence carries on. */
+    public synchronized void truncate() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.error("Error truncating journal: {}", path, e);
+            throw new RuntimeException("Failed to truncate journal", e);
+        }
+        lastSequence();
+        records = 0;
+    }
+
+    private int countRecords() {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return (int) reader.lines().filter(line -> !line.isBlank()).count();
+        } catch (IOException e) {
+            log.error("Error reading journal: {}", path, e);
+            return 0;
+        }
+    }
+
+    private long readLastSequence() {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long last = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    last = Math.max(last, objectMapper.readTree(line).path("seq").asLong(0));
+                } catch (IOException e) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error reading journal: {}", path, e);
+        }
+        return last;
+    }
+
+    private void apply(ObjectNode root, JsonNode record) {
+        String collection = record.path("c").asText();
+        String op = record.path("op").asText();
+        JsonNode value = record.path("v");
+        if (SET.equals(op)) {
+            root.set(collection, value);
+            return;
+        }
+        ArrayNode array = root.withArray(collection);
+        List<String> keyFields = KEY_FIELDS.getOrDefault(collection, List.of());
+        switch (op) {
+            case ADD -> array.insert(0, value);
+            case UPDATE -> {
+                // records written before "old" was recorded match on the new value, as they used to
+                JsonNode previous = record.hasNonNull("old") ? record.get("old") : value;
+                int index = indexOf(array, previous, keyFields);
+                if (index >= 0) {
+                    array.set(index, value);
+                } else {
+                    array.insert(0, value);
+                }
+            }
+            case REMOVE -> {
+                for (JsonNode removed : value) {
+                    int index = indexOf(array, removed, keyFields);
+                    if (index >= 0) {
+                        array.remove(index);
+                    }
+                }
+            }
+            default -> log.warn("Ignoring journal record with unknown op '{}'", op);
+        }
+    }
+
+    // Position of the first element matching the key fields, or of an equal element when no key fields are given
+    private static int indexOf(ArrayNode array, JsonNode value, List<String> keyFields) {
+        for (int i = 0; i < array.size(); i++) {
+            JsonNode element = array.get(i);
+            if (keyFields.isEmpty() ? element.equals(value) : sameKey(element, value, keyFields)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Scalar key values compare by text: the data file writes station numbers as strings, records as numbers
+    private static boolean sameKey(JsonNode a, JsonNode b, List<String> keyFields) {
+        for (String field : keyFields) {
+            JsonNode x = a.path(field);
+            JsonNode y = b.path(field);
+            if (x.isValueNode() && y.isValueNode() ? !x.asText().equals(y.asText()) : !x.equals(y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
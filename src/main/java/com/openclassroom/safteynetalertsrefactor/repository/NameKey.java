@@ -0,0 +1,13 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import java.util.Locale;
+
+/* Hash key identifying a person or a medical record by first and last name, compared exactly.
+ * Each name stored by a repository also gets a dense int id from DenseIds. */
+public record NameKey(String firstName, String lastName) {
+
+    /* Case-folded, trimmed form of a name part, used by the case-insensitive last-name indexes. */
+    public static String fold(String name) {
+        return name == null ? null : name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,220 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/* Loads the top-level arrays of a data file by memory-mapping it and binding chunks of elements in parallel.
+ * A single byte-level scan finds the comma separating each element of a wanted array (tracking strings,
+ * escapes and nesting depth only), the elements are grouped into chunks of roughly equal count, and each
+ * chunk is deserialized by a fork/join task. Results are merged back in file order.
+ */
+public class ParallelChunkedLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelChunkedLoader.class);
+    static final int DEFAULT_MIN_CHUNK_ELEMENTS = 1024;
+
+    private final ObjectMapper objectMapper;
+    private final ForkJoinPool pool;
+    private final int minChunkElements;
+
+    public ParallelChunkedLoader(ObjectMapper objectMapper) {
+        this(objectMapper, ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_ELEMENTS);
+    }
+
+    public ParallelChunkedLoader(ObjectMapper objectMapper, ForkJoinPool pool, int minChunkElements) {
+        this.objectMapper = objectMapper;
+        this.pool = pool;
+        this.minChunkElements = Math.max(1, minChunkElements);
+    }
+
+    /* Returns one list per wanted array found in the file, keyed by array name. */
+    public Map<String, List<?>> load(Path file, Map<String, Class<?>> wanted) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Data file too large to map in one region: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        List<ArraySpan> spans = scan(buffer, wanted.keySet());
+        Map<String, List<?>> loaded = new HashMap<>();
+        for (ArraySpan span : spans) {
+            ObjectReader reader = objectMapper.readerFor(wanted.get(span.name));
+            List<int[]> chunks = span.chunks(chunkSize(span.separators.size() + 1));
+            try {
+                loaded.put(span.name, pool.invoke(new ChunkTask(buffer, reader, chunks, 0, chunks.size())));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            log.debug("Bound array {} from {} chunks", span.name, chunks.size());
+        }
+        return loaded;
+    }
+
+    private int chunkSize(int elements) {
+        // a few chunks per worker keeps the pool busy when some chunks bind slower than others
+        int target = Math.max(1, pool.getParallelism() * 4);
+        return Math.max(minChunkElements, (elements + target - 1) / target);
+    }
+
+    /* Finds every wanted top-level array and the position of each comma between its elements. */
+    static List<ArraySpan> scan(MappedByteBuffer buffer, Set<String> wanted) throws IOException {
+        List<ArraySpan> spans = new ArrayList<>();
+        int limit = buffer.limit();
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        int keyStart = -1;
+        String lastKey = null;
+        ArraySpan current = null;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                    if (keyStart >= 0) {
+                        lastKey = decode(buffer, keyStart, i);
+                        keyStart = -1;
+                    }
+                }
+                continue;
+            }
+            switch (b) {
+                case '"' -> {
+                    inString = true;
+                    // strings directly inside the root object alternate between field names and values;
+                    // a value string is decoded too but never matches an array start
+                    if (depth == 1) {
+                        keyStart = i + 1;
+                    }
+                }
+                case '{', '[' -> {
+                    depth++;
+                    if (depth == 2 && b == '[' && lastKey != null && wanted.contains(lastKey)) {
+                        current = new ArraySpan(lastKey, i + 1);
+                    }
+                }
+                case '}', ']' -> {
+                    if (depth == 2 && current != null) {
+                        current.end = i;
+                        spans.add(current);
+                        current = null;
+                    }
+                    depth--;
+                }
+                case ',' -> {
+                    if (depth == 1) {
+                        lastKey = null;
+                    } else if (depth == 2 && current != null) {
+                        current.separators.add(i);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        if (depth != 0 || inString) {
+            throw new IOException("Data file is truncated or malformed");
+        }
+        return spans;
+    }
+
+    private static String decode(MappedByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /* Byte range of one top-level array's content, between its brackets. */
+    static final class ArraySpan {
+        final String name;
+        final int start;
+        int end;
+        final List<Integer> separators = new ArrayList<>();
+
+        ArraySpan(String name, int start) {
+            this.name = name;
+            this.start = start;
+        }
+
+        /* Splits the content into [from, to) ranges holding about chunkSize comma-separated elements each. */
+        List<int[]> chunks(int chunkSize) {
+            List<int[]> chunks = new ArrayList<>();
+            int from = start;
+            for (int i = chunkSize - 1; i < separators.size(); i += chunkSize) {
+                int comma = separators.get(i);
+                chunks.add(new int[]{from, comma});
+                from = comma + 1;
+            }
+            chunks.add(new int[]{from, end});
+            return chunks;
+        }
+    }
+
+    /* Binds a range of chunks, splitting it in halves until a single chunk is left. */
+    private static final class ChunkTask extends RecursiveTask<List<Object>> {
+        private final MappedByteBuffer buffer;
+        private final ObjectReader reader;
+        private final List<int[]> chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(MappedByteBuffer buffer, ObjectReader reader, List<int[]> chunks, int from, int to) {
+            this.buffer = buffer;
+            this.reader = reader;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Object> compute() {
+            if (to - from == 1) {
+                return bind(chunks.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(buffer, reader, chunks, from, middle);
+            left.fork();
+            List<Object> right = new ChunkTask(buffer, reader, chunks, middle, to).compute();
+            List<Object> merged = left.join();
+            merged.addAll(right);
+            return merged;
+        }
+
+        private List<Object> bind(int[] range) {
+            // wrap the comma-separated elements in brackets so the chunk parses as one JSON array
+            byte[] bytes = new byte[range[1] - range[0] + 2];
+            bytes[0] = '[';
+            buffer.get(range[0], bytes, 1, range[1] - range[0]);
+            bytes[bytes.length - 1] = ']';
+            try {
+                List<Object> items = new ArrayList<>();
+                reader.readValues(bytes).forEachRemaining(items::add);
+                return items;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
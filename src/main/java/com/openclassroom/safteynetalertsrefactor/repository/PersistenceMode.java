@@ -0,0 +1,20 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+/* Strategies used by JSONFileReaderRepository to make repository mutations durable.
+ * SNAPSHOT rewrites the whole data document on every change, JOURNAL appends one compact
+ * record per change to a log file next to the snapshot and folds it back during compaction,
+ * WRITE_BEHIND marks collections dirty and flushes them together from a background thread.
+ */
+public enum PersistenceMode {
+    SNAPSHOT,
+    JOURNAL,
+    WRITE_BEHIND;
+
+    /* Parses a configuration value such as "snapshot", "journal" or "write-behind". */
+    public static PersistenceMode from(String value) {
+        if (value == null || value.isBlank()) {
+            return SNAPSHOT;
+        }
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
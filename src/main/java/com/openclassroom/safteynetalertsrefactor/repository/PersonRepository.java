@@ -6,78 +6,448 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Slf4j
 @Repository
 /* Repository class for managing Person data.
  * It provides methods to load, add, find, delete, and persist person records.
+ * Each person gets the dense int id of its (firstName, lastName) on load and on insert, and an array indexed
+ * by it points at the first matching person in list order, so name lookups do not scan the list. Residents
+ * are also indexed in an array by the dense id of their normalized address (trimmed, case-folded, inner
+ * whitespace collapsed) so household queries only touch that household.
+ * The last name, address, city and zip of each stored person are the shared instances of a reference-counted
+ * pool owned by the repository, so repeated values are held once and leave the pool with their last person.
+ * Per case-folded city, reference-counted emails back a cached, deduplicated email list with a version stamp.
+ * Persons are also indexed by case-folded last name, with a version per last name that moves on every
+ * change to one of its persons so joined views of them can be cached.
+ * findAll() hands out an immutable snapshot published through a volatile reference after each write,
+ * so reads share one copy instead of allocating their own.
+ * Lookups hold the read lock and changes the write lock, so readers run in parallel but never observe an
+ * index in the middle of a change; an update swaps in a new Person instance instead of mutating the old one.
  */
 public class PersonRepository {
     private static final String p = "persons";
-    private final JSONFileReaderRepository JSONFileReaderRepository;
+    // Answer for a city no person ever lived in, shared by every such lookup
+    private static final CityEmails NO_EMAILS = new CityEmails(List.of(), 0L);
+    private final StorageEngine storageEngine;
+    private final DenseIds ids;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     private final List<Person> persons = new ArrayList<>();
+    // Shared instances of the last names, addresses, cities and zips of the stored persons
+    private final Interner<String> sharedValues = new Interner<>();
+    // Read-only copy of the list handed to readers, replaced after every change
+    private volatile List<Person> snapshot = List.of();
+    // Name id (see DenseIds.nameId) -> first person of that name in list order
+    private final DenseTable<Person> byNameId = new DenseTable<>();
+    // Address id (see DenseIds.addressId) -> residents in list order
+    private final DenseTable<List<Person>> byAddressId = new DenseTable<>();
+    // Address id each person is indexed under, so a replaced person can be moved out of its household
+    private final Map<Person, Integer> addressKeys = new IdentityHashMap<>();
+    private final Map<String, List<Person>> byLastName = new HashMap<>();
+    private final Map<String, Long> lastNameVersions = new HashMap<>();
+    // City key -> email -> number of persons of that city using it, in first-seen order
+    private final Map<String, Map<String, Integer>> emailsByCity = new HashMap<>();
+    // concurrent: filled by readers sharing the read lock
+    private final Map<String, CityEmails> cityEmailCache = new ConcurrentHashMap<>();
+    private final Map<String, Long> cityVersions = new HashMap<>();
+    // (city key, email) each person is counted under, so a replaced person can be uncounted
+    private final Map<Person, CityEmail> emailKeys = new IdentityHashMap<>();
+    // Source of the city and last-name version stamps; starts at the boot time so versions handed
+    // out before a restart are never reused after it
+    private long lastVersion = System.currentTimeMillis();
 
-    public PersonRepository(JSONFileReaderRepository JSONFileReaderRepository) {
-        this.JSONFileReaderRepository = JSONFileReaderRepository;
+    private record CityEmail(String city, String email) {
+    }
+
+    public PersonRepository(StorageEngine storageEngine, DenseIds ids) {
+        this.storageEngine = storageEngine;
+        this.ids = ids;
     }
 
     @PostConstruct
-    void init() {
-        log.info("Initializing PersonRepository, loading persons from JSON");
-        List<Person> loaded = JSONFileReaderRepository.readList(p, Person.class);
+    public void init() {
+        log.info("Initializing PersonRepository, loading persons from storage");
+        List<Person> loaded = storageEngine.readList(p, Person.class);
         if (loaded != null) {
             persons.addAll(loaded);
-            log.info("Loaded {} persons from JSON", loaded.size());
+            publish();
+            // putIfAbsent keeps the first of several persons sharing a name, as a scan would find it
+            for (Person person : loaded) {
+                intern(person);
+                person.setNameId(ids.nameId(person.getFirstName(), person.getLastName()));
+                if (byNameId.get(person.getNameId()) == null) {
+                    byNameId.put(person.getNameId(), person);
+                }
+                indexAddress(person, false);
+                indexEmail(person);
+                indexLastName(person, false);
+            }
+            log.info("Loaded {} persons from storage", loaded.size());
         } else {
-            log.warn("No persons loaded from JSON");
+            log.warn("No persons loaded from storage");
         }
     }
 
     /* Retrieves all person records. */
     public List<Person> findAll() {
-        log.debug("Returning all persons, count={}", persons.size());
-        return new ArrayList<>(persons);
+        List<Person> all = snapshot;
+        log.debug("Returning all persons, count={}", all.size());
+        return all;
     }
 
     /* Adds a new person and persists the change. */
     public void add(Person newPerson) {
-        log.info("Adding person: {} {}", newPerson.getFirstName(), newPerson.getLastName());
-        persons.add(0, newPerson);
-        JSONFileReaderRepository.writeList(p, persons);
-        log.debug("Person added, new count={}", persons.size());
+        lock.writeLock().lock();
+        try {
+            log.info("Adding person: {} {}", newPerson.getFirstName(), newPerson.getLastName());
+            intern(newPerson);
+            persons.add(0, newPerson);
+            publish();
+            newPerson.setNameId(ids.nameId(newPerson.getFirstName(), newPerson.getLastName()));
+            byNameId.put(newPerson.getNameId(), newPerson);
+            indexAddress(newPerson, true);
+            indexEmail(newPerson);
+            indexLastName(newPerson, true);
+            storageEngine.addElement(p, newPerson, persons);
+            log.debug("Person added, new count={}", persons.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /* Finds a person by first and last name. */
     public Optional<Person> findByName(String firstName, String lastName) {
-        for (Person p : persons) {
-            if (Objects.equals(p.getFirstName(), firstName) && Objects.equals(p.getLastName(), lastName)) {
+        lock.readLock().lock();
+        try {
+            Person found = byNameId.get(ids.findNameId(firstName, lastName));
+            if (found != null) {
                 log.debug("Found person {} {}", firstName, lastName);
-                return Optional.of(p);
+                return Optional.of(found);
             }
+            log.debug("Person {} {} not found", firstName, lastName);
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
         }
-        log.debug("Person {} {} not found", firstName, lastName);
-        return Optional.empty();
     }
 
     /* Deletes a person by first and last name and persists the change. */
     public boolean deletePerson(String firstName, String lastName) {
-        Optional<Person> personToDelete = findByName(firstName, lastName);
-        if (personToDelete.isEmpty()) {
-            log.warn("Attempted to delete person {} {} but not found", firstName, lastName);
-            return false;
+        return removePerson(firstName, lastName).isPresent();
+    }
+
+    /* Deletes a person by first and last name, persists the change and returns the removed person. */
+    public Optional<Person> removePerson(String firstName, String lastName) {
+        lock.writeLock().lock();
+        try {
+            Optional<Person> personToDelete = findByName(firstName, lastName);
+            if (personToDelete.isEmpty()) {
+                log.warn("Attempted to delete person {} {} but not found", firstName, lastName);
+                return Optional.empty();
+            }
+            log.info("Deleting person {} {}", firstName, lastName);
+            persons.remove(personToDelete.get());
+            publish();
+            release(personToDelete.get());
+            reindex(personToDelete.get().getNameId());
+            unindexAddress(personToDelete.get());
+            unindexEmail(personToDelete.get());
+            unindexLastName(personToDelete.get());
+            storageEngine.removeElements(p, List.of(personToDelete.get()), persons);
+            return personToDelete;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* Replaces the contact details of a person by a new instance and persists the change.
+     * The previous instance is left untouched, so readers holding it never see a half-applied update. */
+    public Optional<Replacement<Person>> updatePerson(String firstName, String lastName, Person changes) {
+        lock.writeLock().lock();
+        try {
+            Person previous = byNameId.get(ids.findNameId(firstName, lastName));
+            if (previous == null) {
+                log.warn("Attempted to update person {} {} but not found", firstName, lastName);
+                return Optional.empty();
+            }
+            log.debug("Replacing person {} {}", firstName, lastName);
+            Person current = new Person(previous.getFirstName(), previous.getLastName(), changes.getAddress(),
+                    changes.getCity(), changes.getZip(), changes.getPhone(), changes.getEmail());
+            current.setNameId(previous.getNameId());
+            // interned before the previous values are released, so values the update keeps stay shared
+            intern(current);
+            release(previous);
+            replaceIn(persons, previous, current);
+            publish();
+            byNameId.put(current.getNameId(), current);
+            Integer previousKey = addressKeys.get(previous);
+            if (previousKey != null && previousKey == ids.addressId(current.getAddress())) {
+                // same household: keep the resident's place in it
+                replaceIn(byAddressId.get(previousKey), previous, current);
+                addressKeys.remove(previous);
+                addressKeys.put(current, previousKey);
+            } else {
+                unindexAddress(previous);
+                indexAddress(current, false);
+            }
+            // count the new email before releasing the old one, so an unchanged email keeps its place and version
+            indexEmail(current);
+            unindexEmail(previous);
+            String lastNameKey = NameKey.fold(current.getLastName());
+            replaceIn(byLastName.get(lastNameKey), previous, current);
+            lastNameChanged(lastNameKey);
+            storageEngine.updateElement(p, previous, current, persons);
+            return Optional.of(new Replacement<>(previous, current));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* Finds the residents of an address, compared in normalized form, in list order. */
+    public List<Person> findByAddress(String address) {
+        return findByAddressId(ids.findAddressId(address));
+    }
+
+    /* Finds the residents of an address id, as handed out by DenseIds.addressId, in list order. */
+    public List<Person> findByAddressId(int addressId) {
+        lock.readLock().lock();
+        try {
+            List<Person> residents = byAddressId.get(addressId);
+            log.debug("Found {} resident(s) at address id {}", residents == null ? 0 : residents.size(), addressId);
+            return residents == null ? new ArrayList<>() : new ArrayList<>(residents);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Finds the persons whose last name matches case-insensitively, in list order. */
+    public List<Person> findByLastName(String lastName) {
+        lock.readLock().lock();
+        try {
+            List<Person> matches = byLastName.get(NameKey.fold(lastName));
+            log.debug("Found {} person(s) with last name '{}'", matches == null ? 0 : matches.size(), lastName);
+            return matches == null ? new ArrayList<>() : new ArrayList<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Version stamp of the persons sharing a case-folded last name; 0 when none was ever stored. */
+    public long lastNameVersion(String lastName) {
+        lock.readLock().lock();
+        try {
+            return lastNameVersions.getOrDefault(NameKey.fold(lastName), 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Returns the deduplicated emails of a city, compared case-insensitively, with the list's version stamp.
+     * The list is built once per change of the city and shared by every caller until the next change.
+     * Only cities with at least one email are cached. */
+    public CityEmails findEmailsByCity(String city) {
+        lock.readLock().lock();
+        try {
+            String key = normalizeCity(city);
+            Map<String, Integer> emails = key == null ? null : emailsByCity.get(key);
+            if (emails == null) {
+                // not cached, so looking up arbitrary city names cannot grow the cache
+                long version = key == null ? 0L : cityVersions.getOrDefault(key, 0L);
+                log.debug("No email for city '{}' at version {}", city, version);
+                return version == 0L ? NO_EMAILS : new CityEmails(List.of(), version);
+            }
+            CityEmails cached = cityEmailCache.get(key);
+            if (cached == null) {
+                cached = new CityEmails(List.copyOf(emails.keySet()), cityVersions.getOrDefault(key, 0L));
+                cityEmailCache.put(key, cached);
+            }
+            log.debug("Found {} email(s) for city '{}' at version {}", cached.emails().size(), city, cached.version());
+            return cached;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* Canonical form of an address used as index key; null stays null. */
+    public static String normalizeAddress(String address) {
+        if (address == null) {
+            return null;
+        }
+        return address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    // Swaps the repeating fields of a person about to be stored for the shared instances
+    private void intern(Person person) {
+        person.setLastName(sharedValues.intern(person.getLastName()));
+        person.setAddress(sharedValues.intern(person.getAddress()));
+        person.setCity(sharedValues.intern(person.getCity()));
+        person.setZip(sharedValues.intern(person.getZip()));
+        person.setPhone(sharedValues.intern(person.getPhone()));
+    }
+
+    private void release(Person person) {
+        sharedValues.release(person.getLastName());
+        sharedValues.release(person.getAddress());
+        sharedValues.release(person.getCity());
+        sharedValues.release(person.getZip());
+        sharedValues.release(person.getPhone());
+    }
+
+    /* Number of distinct last names, addresses, cities, zips and phones shared by the stored persons. */
+    int sharedValueCount() {
+        lock.readLock().lock();
+        try {
+            return sharedValues.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void indexAddress(Person person, boolean atHead) {
+        int key = ids.addressId(person.getAddress());
+        if (key == 0) {
+            return;
+        }
+        List<Person> residents = byAddressId.computeIfAbsent(key, k -> new ArrayList<>());
+        if (atHead) {
+            residents.add(0, person);
+        } else {
+            residents.add(person);
         }
-        log.info("Deleting person {} {}", firstName, lastName);
-        persons.remove(personToDelete.get());
-        persist();
-        return true;
+        addressKeys.put(person, key);
+    }
+
+    private void unindexAddress(Person person) {
+        Integer key = addressKeys.remove(person);
+        List<Person> residents = key == null ? null : byAddressId.get(key);
+        if (residents == null) {
+            return;
+        }
+        residents.removeIf(resident -> resident == person);
+        if (residents.isEmpty()) {
+            byAddressId.remove(key);
+        }
+    }
+
+    private void indexLastName(Person person, boolean atHead) {
+        String key = NameKey.fold(person.getLastName());
+        if (key == null) {
+            return;
+        }
+        List<Person> matches = byLastName.computeIfAbsent(key, k -> new ArrayList<>());
+        if (atHead) {
+            matches.add(0, person);
+        } else {
+            matches.add(person);
+        }
+        lastNameChanged(key);
+    }
+
+    private void unindexLastName(Person person) {
+        String key = NameKey.fold(person.getLastName());
+        List<Person> matches = key == null ? null : byLastName.get(key);
+        if (matches == null) {
+            return;
+        }
+        matches.removeIf(match -> match == person);
+        if (matches.isEmpty()) {
+            byLastName.remove(key);
+        }
+        lastNameChanged(key);
+    }
+
+    private void lastNameChanged(String key) {
+        if (key != null) {
+            lastNameVersions.put(key, ++lastVersion);
+        }
+    }
+
+    private static String normalizeCity(String city) {
+        return city == null ? null : city.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static CityEmail emailKeyOf(Person person) {
+        String city = normalizeCity(person.getCity());
+        return city == null || person.getEmail() == null ? null : new CityEmail(city, person.getEmail());
+    }
+
+    private void indexEmail(Person person) {
+        CityEmail key = emailKeyOf(person);
+        if (key == null) {
+            return;
+        }
+        emailKeys.put(person, key);
+        if (emailsByCity.computeIfAbsent(key.city(), k -> new LinkedHashMap<>()).merge(key.email(), 1, Integer::sum) == 1) {
+            emailsChanged(key.city());
+        }
+    }
+
+    private void unindexEmail(Person person) {
+        CityEmail key = emailKeys.remove(person);
+        Map<String, Integer> emails = key == null ? null : emailsByCity.get(key.city());
+        if (emails == null) {
+            return;
+        }
+        // the email only leaves the list when its last user in the city is gone
+        if (emails.merge(key.email(), -1, Integer::sum) == 0) {
+            emails.remove(key.email());
+            if (emails.isEmpty()) {
+                emailsByCity.remove(key.city());
+            }
+            emailsChanged(key.city());
+        }
+    }
+
+    private void emailsChanged(String city) {
+        cityEmailCache.remove(city);
+        cityVersions.put(city, ++lastVersion);
+    }
+
+    private static void replaceIn(List<Person> list, Person previous, Person current) {
+        if (list == null) {
+            return;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == previous) {
+                list.set(i, current);
+                return;
+            }
+        }
+    }
+
+    // Points the name id at the next person with the same name after a removal, or drops it
+    private void reindex(int nameId) {
+        byNameId.remove(nameId);
+        for (Person person : persons) {
+            if (person.getNameId() == nameId) {
+                byNameId.put(nameId, person);
+                return;
+            }
+        }
+    }
+
+    private void publish() {
+        snapshot = Collections.unmodifiableList(new ArrayList<>(persons));
     }
 
     public void persist() {
-        log.debug("Persisting {} persons to JSON", persons.size());
-        JSONFileReaderRepository.writeList(p, persons);
+        lock.writeLock().lock();
+        try {
+            log.debug("Persisting {} persons to storage", persons.size());
+            storageEngine.writeList(p, persons);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,5 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+/* An element a repository swapped for a new instance, so holders of the previous one never see it change. */
+public record Replacement<T>(T previous, T current) {
+}
@@ -0,0 +1,42 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import java.util.List;
+
+/* Storage SPI the repositories program against. A collection is a named list of elements of one type;
+ * the repositories hold the working copy and report every change so the engine can make it durable.
+ * JSONFileReaderRepository stores the collections in JSON files (app.data.engine=json, the default),
+ * H2StorageEngine stores them as indexed rows in an embedded H2 database file (app.data.engine=h2).
+ * With either engine the repositories keep the whole working set in memory and serve every lookup from it;
+ * an engine is read once per collection at startup and otherwise only receives changes.
+ */
+public interface StorageEngine {
+
+    /* Loads a whole collection, or an empty list when it does not exist yet. */
+    <T> List<T> readList(String collection, Class<T> elementType);
+
+    /* Replaces a whole collection with the given items. */
+    <T> void writeList(String collection, List<T> items);
+
+    /* Records that an element was inserted at the head of the list; items is the full list after the change. */
+    <T> void addElement(String collection, T element, List<T> items);
+
+    /* Records that previous, an element of the list, was replaced by element; items is the full list after the change.
+     * previous is the stored form the engine matches, since the change may touch the fields identifying it. */
+    <T> void updateElement(String collection, T previous, T element, List<T> items);
+
+    /* Records that elements were removed from the list. */
+    <T> void removeElements(String collection, List<T> removed, List<T> items);
+
+    /* Writes out any changes the engine buffered. Engines that make each change durable as it is reported do nothing. */
+    default void flush() {
+    }
+
+    /* Starts a batch of changes reported by the calling thread, which the engine may write together. */
+    default void beginBatch() {
+    }
+
+    /* Ends the batch of the calling thread: its changes are as durable as the engine makes single changes
+     * once this returns. Engines without batching do nothing. */
+    default void endBatch() {
+    }
+}
@@ -0,0 +1,18 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+/* How JSONFileReaderRepository lays the collections out on disk.
+ * SINGLE_DOCUMENT keeps every collection in one data.json style document at app.data.write-path,
+ * PER_COLLECTION keeps each collection in its own file so a write only touches the collection that changed.
+ */
+public enum StorageLayout {
+    SINGLE_DOCUMENT,
+    PER_COLLECTION;
+
+    /* Parses a configuration value such as "single-document" or "per-collection". */
+    public static StorageLayout from(String value) {
+        if (value == null || value.isBlank()) {
+            return SINGLE_DOCUMENT;
+        }
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
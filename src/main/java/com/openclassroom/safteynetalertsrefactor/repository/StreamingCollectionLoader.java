@@ -0,0 +1,76 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Reads the top-level arrays of a data document in a single pass with Jackson's token-level parser.
+ * Each element of a wanted array is bound straight to its typed object, so no JsonNode tree
+ * of the whole document is ever built; arrays nobody asked for are skipped.
+ */
+public class StreamingCollectionLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingCollectionLoader.class);
+
+    private final ObjectMapper objectMapper;
+
+    public StreamingCollectionLoader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /* Returns one list per wanted array found in the document, keyed by array name. */
+    public Map<String, List<?>> load(InputStream in, Map<String, Class<?>> wanted) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                log.warn("Data document does not start with an object, nothing loaded");
+                return new HashMap<>();
+            }
+            return readFields(parser, wanted);
+        }
+    }
+
+    /* Binds the remaining fields of an object whose START_OBJECT token has already been consumed. */
+    public Map<String, List<?>> readFields(JsonParser parser, Map<String, Class<?>> wanted) throws IOException {
+        Map<String, List<?>> loaded = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            Class<?> elementType = wanted.get(name);
+            if (elementType == null || value != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            loaded.put(name, readArray(parser, objectMapper.readerFor(elementType)));
+        }
+        return loaded;
+    }
+
+    /* Reads a document whose root is a single array of elementType. */
+    public List<Object> loadArray(InputStream in, Class<?> elementType) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                log.warn("Collection file does not start with an array, nothing loaded");
+                return new ArrayList<>();
+            }
+            return readArray(parser, objectMapper.readerFor(elementType));
+        }
+    }
+
+    private List<Object> readArray(JsonParser parser, ObjectReader reader) throws IOException {
+        List<Object> items = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            items.add(reader.readValue(parser));
+        }
+        return items;
+    }
+}
@@ -12,9 +12,14 @@ import java.util.List;
 public class FireStationService {
 
     private final FireStationRepository fireStationRepository;
+    private final StationCoverageViews stationViews;
+    private final MutationPipeline mutations;
 
-    public FireStationService(FireStationRepository fireStationRepository) {
+    public FireStationService(FireStationRepository fireStationRepository, StationCoverageViews stationViews,
+                              MutationPipeline mutations) {
         this.fireStationRepository = fireStationRepository;
+        this.stationViews = stationViews;
+        this.mutations = mutations;
     }
 
     /** Retrieve all fire stations.
@@ -41,7 +46,12 @@ public class FireStationService {
     public FireStation addFireStation(FireStation fireStation) {
         log.info("Add fire station requested: address='{}', station='{}'", fireStation.getAddress(), fireStation.getStation());
         try {
-            fireStationRepository.add(fireStation);
+            mutations.submit("add fire station", () -> {
+                fireStationRepository.add(fireStation);
+                stationViews.addressChanged(fireStation.getAddress());
+                stationViews.stationChanged(fireStation.getStation());
+                return fireStation;
+            });
             log.debug("Add fire station - added: address='{}'", fireStation.getAddress());
             return fireStation;
         } catch (Exception e) {
@@ -59,7 +69,15 @@ public class FireStationService {
     public boolean updateFireStation(String address, FireStation updated) {
         log.info("Update fire station requested for address='{}' -> station='{}'", address, updated.getStation());
         try {
-            boolean updatedOk = fireStationRepository.updateFireStation(address, updated.getStation());
+            boolean updatedOk = mutations.submit("update fire station", () -> {
+                boolean found = fireStationRepository.updateFireStation(address, updated.getStation());
+                if (found) {
+                    // the previous station still lists the address, the new one gains it
+                    stationViews.addressChanged(address);
+                    stationViews.stationChanged(updated.getStation());
+                }
+                return found;
+            });
             if (updatedOk) {
                 log.info("Update successful for address='{}'", address);
             } else {
@@ -80,7 +98,13 @@ public class FireStationService {
     public boolean deleteByAddress(String address) {
         log.info("Delete fire station requested for address='{}'", address);
         try {
-            boolean deleted = fireStationRepository.deleteByAddress(address);
+            boolean deleted = mutations.submit("delete fire station", () -> {
+                boolean found = fireStationRepository.deleteByAddress(address);
+                if (found) {
+                    stationViews.addressChanged(address);
+                }
+                return found;
+            });
             if (deleted) {
                 log.info("Delete successful for address='{}'", address);
             } else {
@@ -101,7 +125,13 @@ public class FireStationService {
     public boolean deleteByStationNumber(int stationNumber) {
         log.info("Delete fire station(s) requested for stationNumber={}", stationNumber);
         try {
-            boolean deleted = fireStationRepository.deleteByStationNumber(stationNumber);
+            boolean deleted = mutations.submit("delete fire station number", () -> {
+                boolean found = fireStationRepository.deleteByStationNumber(stationNumber);
+                if (found) {
+                    stationViews.stationChanged(stationNumber);
+                }
+                return found;
+            });
             if (deleted) {
                 log.info("Delete successful for stationNumber={}", stationNumber);
             } else {
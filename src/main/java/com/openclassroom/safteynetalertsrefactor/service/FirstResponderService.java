@@ -1,17 +1,22 @@
 package com.openclassroom.safteynetalertsrefactor.service;
 
 import com.openclassroom.safteynetalertsrefactor.dto.*;
-import com.openclassroom.safteynetalertsrefactor.model.FireStation;
 import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
 import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import com.openclassroom.safteynetalertsrefactor.repository.CityEmails;
+import com.openclassroom.safteynetalertsrefactor.repository.DenseIds;
 import com.openclassroom.safteynetalertsrefactor.repository.FireStationRepository;
 import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.NameKey;
 import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Slf4j
 @Service
@@ -20,30 +25,68 @@ public class FirstResponderService {
     private final PersonRepository personRepository;
     private final FireStationRepository fireStationRepository;
     private final MedicalRecordsRepository medicalRecordRepository;
+    private final HouseholdAgeIndex householdAgeIndex;
+    private final ResidentQueryEngine queryEngine;
+    private final StationCoverageViews stationViews;
+    private final MedicalTermIndex medicalTermIndex;
+    private final DenseIds denseIds;
+    private final Today today;
+    // Joined /personInfo views per case-folded last name with at least one resident, rebuilt when either
+    // repository version or the day changes
+    private final Map<String, CachedResidents> residentsByLastName = new ConcurrentHashMap<>();
+
+    private record CachedResidents(List<ResidentDto> residents, long personVersion, long medicalVersion, int day) {
+        boolean isCurrent(long personVersion, long medicalVersion, int day) {
+            return this.personVersion == personVersion && this.medicalVersion == medicalVersion && this.day == day;
+        }
+    }
 
     @Autowired
     public FirstResponderService(PersonRepository personRepository,
                                  FireStationRepository fireStationRepository,
-                                 MedicalRecordsRepository medicalRecordRepository) {
+                                 MedicalRecordsRepository medicalRecordRepository,
+                                 HouseholdAgeIndex householdAgeIndex,
+                                 ResidentQueryEngine queryEngine,
+                                 StationCoverageViews stationViews,
+                                 MedicalTermIndex medicalTermIndex,
+                                 DenseIds denseIds,
+                                 Today today) {
         this.personRepository = personRepository;
         this.fireStationRepository = fireStationRepository;
         this.medicalRecordRepository = medicalRecordRepository;
+        this.householdAgeIndex = householdAgeIndex;
+        this.queryEngine = queryEngine;
+        this.stationViews = stationViews;
+        this.medicalTermIndex = medicalTermIndex;
+        this.denseIds = denseIds;
+        this.today = today;
         log.info("FirstResponderService initialized");
     }
 
     /* ================= Helper methods ================= */
 
-    private int calculateAgeOf(String firstName, String lastName) {
-        MedicalRecord medicalrecord = medicalRecordRepository.findByName(firstName, lastName).orElse(null);
+    private int calculateAgeOf(Person person) {
+        MedicalRecord medicalrecord = medicalRecordRepository.findByNameId(person.getNameId()).orElse(null);
         if (medicalrecord == null) {
-            log.debug("Age calculation: no medical record for {} {}", firstName, lastName);
+            log.debug("Age calculation: no medical record for {} {}", person.getFirstName(), person.getLastName());
             return 0;
         }
-        int age = medicalrecord.calculateAge();
-        log.debug("Calculated age for {} {} = {}", firstName, lastName, age);
+        int age = medicalrecord.calculateAge(today);
+        log.debug("Calculated age for {} {} = {}", person.getFirstName(), person.getLastName(), age);
         return age;
     }
 
+    private static PersonDto toPersonDto(Person p) {
+        return new PersonDto(p.getFirstName(), p.getLastName(), p.getAddress(), p.getPhone());
+    }
+
+    private ResidentDto toResidentDto(Person p, MedicalRecord medicalrecord) {
+        int age = medicalrecord != null ? medicalrecord.calculateAge(today) : 0;
+        List<String> meds = medicalrecord != null && medicalrecord.getMedications() != null ? medicalrecord.getMedications() : List.of();
+        List<String> allergies = medicalrecord != null && medicalrecord.getAllergies() != null ? medicalrecord.getAllergies() : List.of();
+        return new ResidentDto(p.getFirstName(), p.getLastName(), p.getPhone(), age, meds, allergies);
+    }
+
     /**   Returns a FirstResponderDto containing a list of persons covered by the specified fire station number,
      * along with counts of adults and children.
      *
@@ -52,45 +95,33 @@ public class FirstResponderService {
      */
     public FirstResponderDto getPersonsByStation(int stationNumber) {
         log.info("getPersonsByStation called for station {}", stationNumber);
-        List<PersonDto> personsCovered = new ArrayList<>();
+        return stationViews.coverage(stationNumber, () -> buildPersonsByStation(stationNumber));
+    }
+
+    private FirstResponderDto buildPersonsByStation(int stationNumber) {
         int adults = 0;
         int children = 0;
 
         // find all addresses served by this station
-        List<String> addresses = new ArrayList<>();
-        // collect addresses for the given station number
-        for (FireStation fs : fireStationRepository.findAll()) {
-            if (fs != null && fs.getAddress() != null && stationNumber == fs.getStation()) {
-                addresses.add(fs.getAddress());
-            }
-        }
+        Set<String> addresses = fireStationRepository.findAddressesByStation(stationNumber);
         log.debug("Found {} addresses for station {}", addresses.size(), stationNumber);
 
-        // find all persons living at those addresses
-        /* if so, determine age and classify as adult/child */
-        for (Person p : personRepository.findAll()) {
-            if (addresses.contains(p.getAddress())) {
-                int age = calculateAgeOf(p.getFirstName(), p.getLastName());
-                // children if age 18 or younger -> adult if age > 18
-                if (age > 18) {
-                    adults++;
-                } else {
-                    children++;
-                }
-
-                personsCovered.add(
-                        new PersonDto(
-                                p.getFirstName(),
-                                p.getLastName(),
-                                p.getAddress(),
-                                p.getPhone()
-                        )
-                );
+        // counts come from the maintained household classification
+        Set<String> seen = new HashSet<>();
+        for (String address : addresses) {
+            if (seen.add(PersonRepository.normalizeAddress(address))) {
+                adults += householdAgeIndex.countAdults(address);
+                children += householdAgeIndex.countChildren(address);
             }
         }
 
+        List<PersonDto> personsCovered = queryEngine.persons("firestation")
+                .atAddresses(addresses)
+                .select(FirstResponderService::toPersonDto)
+                .rows();
+
         log.info("Station {} covers {} persons (adults={}, children={})", stationNumber, personsCovered.size(), adults, children);
-        return new FirstResponderDto(personsCovered, adults, children);
+        return new FirstResponderDto(Collections.unmodifiableList(personsCovered), adults, children);
     }
 
     /* ================= List of children under 18 by address and other household in that address ================= */
@@ -103,15 +134,13 @@ public class FirstResponderService {
      */
     public List<ChildResidentDto> getChildrenByAddress(String address) {
         log.info("getChildrenByAddress called for address '{}'", address);
-        List<Person> peopleAtAddress = new ArrayList<>();
         List<ChildResidentDto> children = new ArrayList<>();
 
         // All people living at this address
-        for (Person p : personRepository.findAll()) {
-            if (p.getAddress() != null && address.equalsIgnoreCase(p.getAddress())) {
-                peopleAtAddress.add(p);
-            }
-        }
+        List<Person> peopleAtAddress = queryEngine.persons("childAlert")
+                .atAddresses(List.of(address))
+                .select(Function.identity())
+                .rows();
 
         log.debug("Found {} people at address '{}'", peopleAtAddress.size(), address);
 
@@ -122,9 +151,8 @@ public class FirstResponderService {
 
         // find children (<= 18) and add "other household members"
         for (Person child : peopleAtAddress) {
-            int age = calculateAgeOf(child.getFirstName(), child.getLastName());
-
-            if (age <= 18) {
+            if (householdAgeIndex.isChild(child)) {
+                int age = calculateAgeOf(child);
                 List<PersonDto> otherMembers = new ArrayList<>();
 
                 for (Person other : peopleAtAddress) {
@@ -133,13 +161,7 @@ public class FirstResponderService {
                             && other.getLastName().equalsIgnoreCase(child.getLastName())) {
                         continue;
                     }
-
-                    otherMembers.add(new PersonDto(
-                            other.getFirstName(),
-                            other.getLastName(),
-                            other.getAddress(),
-                            other.getPhone()
-                    ));
+                    otherMembers.add(toPersonDto(other));
                 }
 
                 children.add(new ChildResidentDto(
@@ -163,20 +185,10 @@ public class FirstResponderService {
      */
     public List<String> getPhoneAlert(int stationNumber) {
         log.info("getPhoneAlert called for station {}", stationNumber);
-        List<String> addresses = new ArrayList<>();
-        for (FireStation fs : fireStationRepository.findAll()) {
-            if (fs.getStation() == stationNumber) {
-                addresses.add(fs.getAddress());
-            }
-        }
-        log.debug("Addresses for station {}: {}", stationNumber, addresses);
-
-        List<String> phones = new ArrayList<>();
-        for (Person p : personRepository.findAll()) {
-            if (addresses.contains(p.getAddress())) {
-                phones.add(p.getPhone());
-            }
-        }
+        List<String> phones = stationViews.phones(stationNumber, () -> queryEngine.persons("phoneAlert")
+                .coveredBy(List.of(stationNumber))
+                .select(Person::getPhone)
+                .rows());
 
         log.info("Found {} phone numbers for station {}", phones.size(), stationNumber);
         return phones;
@@ -191,44 +203,59 @@ public class FirstResponderService {
      */
     public List<ResidentDto> getFireInfo(String address) {
         log.info("getFireInfo called for address '{}'", address);
-        List<ResidentDto> residents = new ArrayList<>();
-        String targetAddress = address.trim().toLowerCase();
-        for (Person p : personRepository.findAll()) {
-            if (p.getAddress() != null && targetAddress.equalsIgnoreCase(p.getAddress().trim().toLowerCase())) {
-                MedicalRecord medicalrecord = medicalRecordRepository.findByName(p.getFirstName(), p.getLastName()).orElse(null);
-                int age = calculateAgeOf(p.getFirstName(), p.getLastName());
-                List<String> meds = medicalrecord != null ? medicalrecord.getMedications() : List.of();
-                List<String> allergies = medicalrecord != null ? medicalrecord.getAllergies() : List.of();
-
-                residents.add(new ResidentDto(
-                        p.getFirstName(),
-                        p.getLastName(),
-                        p.getPhone(),
-                        age,
-                        meds,
-                        allergies
-                ));
-            }
-        }
+        List<ResidentDto> residents = queryEngine.persons("fire")
+                .atAddresses(List.of(address))
+                .selectWithMedicalRecord(this::toResidentDto)
+                .rows();
         log.info("Found {} residents for address '{}'", residents.size(), address);
         return residents;
     }
 
+    /* ================= Medical alert by medication or allergy ================= */
+    /**   Returns the residents taking a medication and/or allergic to a substance, optionally only those
+     * covered by a fire station, including their medical information.
+     * The names come from the medical term index, so no medical record is scanned.
+     *
+     * @param stationNumber The fire station number, or null for residents of every station.
+     * @param medication    A medication as written in the records or without its dose, or null.
+     * @param allergy       An allergy, or null. When both terms are given, residents must match both.
+     * @return List of ResidentDto for the matching residents, empty when no term is given.
+     */
+    public List<ResidentDto> getMedicalAlert(Integer stationNumber, String medication, String allergy) {
+        log.info("getMedicalAlert called for station={}, medication='{}', allergy='{}'", stationNumber, medication, allergy);
+        boolean byMedication = medication != null && !medication.isBlank();
+        boolean byAllergy = allergy != null && !allergy.isBlank();
+        if (!byMedication && !byAllergy) {
+            log.debug("getMedicalAlert: no medication nor allergy given -> returning empty list");
+            return List.of();
+        }
+
+        ResidentQueryEngine.Query query = queryEngine.persons("medicalAlert");
+        if (byMedication) {
+            query.withNames(medicalTermIndex.withMedication(medication));
+        }
+        if (byAllergy) {
+            query.withNames(medicalTermIndex.withAllergy(allergy));
+        }
+        if (stationNumber != null) {
+            query.coveredBy(List.of(stationNumber));
+        }
+        List<ResidentDto> residents = query.selectWithMedicalRecord(this::toResidentDto).rows();
+        log.info("getMedicalAlert returning {} residents", residents.size());
+        return residents;
+    }
+
     /* ================= /community email by city ================= */
-    /**   Returns a list of email addresses for all persons living in the specified city.
+    /**   Returns the deduplicated email addresses of all persons living in the specified city,
+     * together with the version stamp of that list.
      *
-     * @param city The city to search for email addresses.
-     * @return List of email addresses for residents of the city.
+     * @param city The city to search for email addresses, compared case-insensitively.
+     * @return CityEmails with the cached immutable email list and its version.
      */
-    public List<String> getCommunityEmail(String city) {
+    public CityEmails getCommunityEmail(String city) {
         log.info("getCommunityEmail called for city '{}'", city);
-        List<String> emails = new ArrayList<>();
-        for (Person p : personRepository.findAll()) {
-            if (city.equalsIgnoreCase(p.getCity())) {
-                emails.add(p.getEmail());
-            }
-        }
-        log.info("Found {} emails for city '{}'", emails.size(), city);
+        CityEmails emails = personRepository.findEmailsByCity(city);
+        log.info("Found {} emails for city '{}' (version {})", emails.emails().size(), city, emails.version());
         return emails;
     }
 
@@ -248,43 +275,31 @@ public class FirstResponderService {
         }
 
         String target = lastName.trim();
-        List<ResidentDto> result = new ArrayList<>();
-
-        List<Person> allPeople = personRepository.findAll();
-        log.debug("getResidentsByLastName: scanning {} people for lastName='{}'", allPeople.size(), target);
-
-        for (Person p : allPeople) {
-            if (p == null) {
-                continue;
-            }
-            if (p.getLastName() != null && p.getLastName().equalsIgnoreCase(target)) {
-                log.debug("Match found: {} {}", p.getFirstName(), p.getLastName());
-
-                Optional<MedicalRecord> mrOpt = medicalRecordRepository.findByName(p.getFirstName(), p.getLastName());
-                MedicalRecord medicalrecord = mrOpt.orElse(null);
-                if (medicalrecord == null) {
-                    log.debug("No medical record for {} {}", p.getFirstName(), p.getLastName());
-                }
-
-                int age = calculateAgeOf(p.getFirstName(), p.getLastName());
-                List<String> meds = medicalrecord != null && medicalrecord.getMedications() != null ? medicalrecord.getMedications() : List.of();
-                List<String> allergies = medicalrecord != null && medicalrecord.getAllergies() != null ? medicalrecord.getAllergies() : List.of();
-
-                ResidentDto dto = new ResidentDto(
-                        p.getFirstName(),
-                        p.getLastName(),
-                        p.getPhone(),
-                        age,
-                        meds,
-                        allergies
-                );
-                result.add(dto);
-                log.debug("Added ResidentDto for {} {} (age={})", p.getFirstName(), p.getLastName(), age);
-            }
+        long personVersion = personRepository.lastNameVersion(target);
+        long medicalVersion = medicalRecordRepository.lastNameVersion(target);
+        int day = today.epochDay();
+        String key = NameKey.fold(target);
+
+        CachedResidents cached = residentsByLastName.get(key);
+        if (cached != null && cached.isCurrent(personVersion, medicalVersion, day)) {
+            log.debug("getResidentsByLastName: serving cached view for lastName='{}'", target);
+            return cached.residents();
         }
 
-        log.info("getResidentsByLastName returning {} residents for lastName='{}'", result.size(), target);
-        return result;
+        List<ResidentDto> result = queryEngine.persons("personInfo")
+                .withLastName(target)
+                .selectWithMedicalRecord(this::toResidentDto)
+                .rows();
+
+        List<ResidentDto> residents = List.copyOf(result);
+        if (residents.isEmpty()) {
+            // nobody by that name: not cached, so arbitrary names cannot grow the cache
+            residentsByLastName.remove(key);
+        } else {
+            residentsByLastName.put(key, new CachedResidents(residents, personVersion, medicalVersion, day));
+        }
+        log.info("getResidentsByLastName returning {} residents for lastName='{}'", residents.size(), target);
+        return residents;
     }
 
     /**   Returns a list of HouseholdDto for all households served by the specified fire station numbers,
@@ -295,76 +310,63 @@ public class FirstResponderService {
      */
     /* ================= /flood stations================= */
     public List<HouseholdDto> getFloodInfo(List<String> stations) {
-        log.info("getFloodInfo called for stations={}", stations);
+        return getFloodInfo(stations, false, false);
+    }
+
+    /**   Returns a list of HouseholdDto for the households served by the specified fire station numbers,
+     * optionally only those with children and/or with a resident having a medical record.
+     * Households come in the order the stations, then their addresses, are listed, each one once however
+     * many stations cover it; the household filters are bitsets of address ids.
+     *
+     * @param stations          The list of fire station numbers.
+     * @param withChildren      Whether to keep only the households where a child lives.
+     * @param withMedicalRecord Whether to keep only the households where someone has a medical record.
+     * @return List of HouseholdDto for the matching households.
+     */
+    public List<HouseholdDto> getFloodInfo(List<String> stations, boolean withChildren, boolean withMedicalRecord) {
+        log.info("getFloodInfo called for stations={}, withChildren={}, withMedicalRecord={}", stations, withChildren, withMedicalRecord);
         if (stations == null || stations.isEmpty()) {
             log.debug("getFloodInfo: stations list is null or empty -> returning empty result");
             return List.of();
         }
 
+        BitSet withChild = withChildren ? householdAgeIndex.householdsWithChildren() : null;
+        BitSet withRecord = withMedicalRecord ? householdAgeIndex.householdsWithMedicalRecord() : null;
+        // ids of the households already listed, or filtered out, for a previous station
+        BitSet seen = new BitSet();
         List<HouseholdDto> result = new ArrayList<>();
-        List<String> addresses = collectAddresses(stations);
-
-        // Cache all people once to avoid multiple repository calls
-        List<Person> allPeople = personRepository.findAll();
-        log.debug("getFloodInfo: loaded {} people from repository", allPeople.size());
-
-        collectResidences(addresses, allPeople, result);
-
-        log.info("getFloodInfo returning {} address blocks", result.size());
-        return result;
-    }
-
-    private List<String> collectAddresses(List<String> stations) {
-        List<String> addresses = new ArrayList<>();
-        for (FireStation fs : fireStationRepository.findAll()) {
-            if (fs != null
-                    && fs.getAddress() != null
-                    && stations.contains(String.valueOf(fs.getStation()))) {
-
-                if (!addresses.contains(fs.getAddress())) {
-                    addresses.add(fs.getAddress());
-                }
+        for (String station : stations) {
+            int stationNumber;
+            try {
+                stationNumber = Integer.parseInt(station.trim());
+            } catch (NumberFormatException e) {
+                log.debug("getFloodInfo: ignoring non-numeric station '{}'", station);
+                continue;
             }
-        }
-        log.debug("getFloodInfo: found {} addresses for stations {}", addresses.size(), stations);
-        return addresses;
-    }
-
-    private void collectResidences(List<String> addresses, List<Person> allPeople, List<HouseholdDto> result) {
-        for (String address : addresses) {
-            log.debug("Processing address '{}'", address);
-            List<ResidentDto> residents = new ArrayList<>();
-
-            for (Person p : allPeople) {
-                if (p == null || !address.equals(p.getAddress())) {
+            for (String address : fireStationRepository.findAddressesByStation(stationNumber)) {
+                int id = denseIds.findAddressId(address);
+                if (id == 0 || seen.get(id)) {
                     continue;
                 }
-
-                MedicalRecord medicalrecord = medicalRecordRepository
-                        .findByName(p.getFirstName(), p.getLastName())
-                        .orElse(null);
-
-                if (medicalrecord == null) {
-                    log.debug("No medical record for {} {} at address '{}'", p.getFirstName(), p.getLastName(), address);
+                seen.set(id);
+                if ((withChild != null && !withChild.get(id)) || (withRecord != null && !withRecord.get(id))) {
+                    continue;
                 }
-
-                int age = medicalrecord != null ? calculateAgeOf(p.getFirstName(), p.getLastName()) : 0;
-                List<String> meds = medicalrecord != null ? medicalrecord.getMedications() : List.of();
-                List<String> allergies = medicalrecord != null ? medicalrecord.getAllergies() : List.of();
-
-                residents.add(new ResidentDto(
-                        p.getFirstName(),
-                        p.getLastName(),
-                        p.getPhone(),
-                        age,
-                        meds,
-                        allergies
-                ));
-                log.debug("Added resident {} {} for address '{}'", p.getFirstName(), p.getLastName(), address);
+                result.add(household(address));
             }
-
-            result.add(new HouseholdDto(address, residents));
-            log.debug("Address '{}' block added with {} residents", address, residents.size());
         }
+
+        log.info("getFloodInfo returning {} address blocks", result.size());
+        return result;
+    }
+
+    private HouseholdDto household(String address) {
+        // only the residents of this household, joined with their medical records
+        List<ResidentDto> residents = queryEngine.persons("flood")
+                .atAddresses(List.of(address))
+                .selectWithMedicalRecord(this::toResidentDto)
+                .rows();
+        log.debug("Address '{}' block added with {} residents", address, residents.size());
+        return new HouseholdDto(address, residents);
     }
 }
@@ -0,0 +1,277 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import com.openclassroom.safteynetalertsrefactor.repository.DenseIds;
+import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Child/adult classification of every person, grouped by normalized address.
+ * <p>
+ * The classification is computed once per person and kept up to date by the person and medical-record
+ * services after each mutation. Children are also scheduled by the day they turn {@value #CHILD_MAX_AGE} + 1,
+ * and a rollover at local midnight moves the ones whose day has come to the adults of their household.
+ * Station-level counts are the sums of the household counts over the station's addresses.
+ * The households with children and the households where someone has a medical record are also kept as
+ * bitsets of address ids (see {@link DenseIds#addressId}), to be combined with station coverage.
+ */
+@Slf4j
+@Component
+public class HouseholdAgeIndex {
+
+    /** Oldest age still counted as a child. */
+    public static final int CHILD_MAX_AGE = 18;
+
+    private final PersonRepository personRepository;
+    private final MedicalRecordsRepository medicalRecordsRepository;
+    private final DenseIds denseIds;
+    private final Today today;
+
+    // Normalized address -> children and adults living there, compared by identity
+    private final Map<String, Household> households = new HashMap<>();
+    private final Map<Person, Entry> entries = new IdentityHashMap<>();
+    // Epoch day a child becomes an adult -> children turning adult that day
+    private final TreeMap<Integer, Set<Person>> adulthoods = new TreeMap<>();
+    private final BitSet withChildren = new BitSet();
+    private final BitSet withMedicalRecord = new BitSet();
+    private int classifiedDay;
+
+    private static final class Household {
+        final int addressId;
+        final Set<Person> children = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<Person> adults = Collections.newSetFromMap(new IdentityHashMap<>());
+        int withMedicalRecord;
+
+        Household(int addressId) {
+            this.addressId = addressId;
+        }
+
+        boolean isEmpty() {
+            return children.isEmpty() && adults.isEmpty();
+        }
+    }
+
+    private record Entry(String address, boolean child, boolean hasMedicalRecord, OptionalInt adultFrom) {
+    }
+
+    public HouseholdAgeIndex(PersonRepository personRepository, MedicalRecordsRepository medicalRecordsRepository,
+                             DenseIds denseIds, Today today) {
+        this.personRepository = personRepository;
+        this.medicalRecordsRepository = medicalRecordsRepository;
+        this.denseIds = denseIds;
+        this.today = today;
+    }
+
+    /**
+     * Classifies every person currently held by the person repository.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        households.clear();
+        entries.clear();
+        adulthoods.clear();
+        withChildren.clear();
+        withMedicalRecord.clear();
+        classifiedDay = today.epochDay();
+        List<Person> persons = personRepository.findAll();
+        for (Person person : persons) {
+            add(person);
+        }
+        log.info("Classified {} persons into {} households", persons.size(), households.size());
+    }
+
+    /**
+     * Moves the children whose adulthood day has been reached to the adults of their household.
+     * Runs at local midnight and, as a fallback, on the first lookup of a new day.
+     */
+    @Scheduled(cron = "0 0 0 * * *")
+    public synchronized void rollOver() {
+        int day = today.epochDay();
+        if (day == classifiedDay) {
+            return;
+        }
+        int moved = 0;
+        SortedMap<Integer, Set<Person>> due = adulthoods.headMap(day, true);
+        for (Set<Person> persons : due.values()) {
+            for (Person person : persons) {
+                Entry entry = entries.get(person);
+                Household household = households.get(entry.address());
+                household.children.remove(person);
+                household.adults.add(person);
+                withChildren.set(household.addressId, !household.children.isEmpty());
+                entries.put(person, new Entry(entry.address(), false, entry.hasMedicalRecord(), OptionalInt.empty()));
+                moved++;
+            }
+        }
+        due.clear();
+        classifiedDay = day;
+        log.info("Midnight rollover moved {} children to adults", moved);
+    }
+
+    /**
+     * Returns whether a person is counted as a child.
+     *
+     * @param person The person, as held by the person repository.
+     * @return true if the person is 18 or younger, or has no medical record.
+     */
+    public synchronized boolean isChild(Person person) {
+        rollOver();
+        Entry entry = entries.get(person);
+        return entry != null && entry.child();
+    }
+
+    /**
+     * Returns the number of children living at an address.
+     *
+     * @param address The address, compared in normalized form.
+     * @return The number of children.
+     */
+    public synchronized int countChildren(String address) {
+        rollOver();
+        Household household = households.get(PersonRepository.normalizeAddress(address));
+        return household == null ? 0 : household.children.size();
+    }
+
+    /**
+     * Returns the number of adults living at an address.
+     *
+     * @param address The address, compared in normalized form.
+     * @return The number of adults.
+     */
+    public synchronized int countAdults(String address) {
+        rollOver();
+        Household household = households.get(PersonRepository.normalizeAddress(address));
+        return household == null ? 0 : household.adults.size();
+    }
+
+    /**
+     * Returns the ids of the addresses where at least one child lives.
+     *
+     * @return A copy the caller may modify.
+     */
+    public synchronized BitSet householdsWithChildren() {
+        rollOver();
+        return (BitSet) withChildren.clone();
+    }
+
+    /**
+     * Returns the ids of the addresses where at least one resident has a medical record.
+     *
+     * @return A copy the caller may modify.
+     */
+    public synchronized BitSet householdsWithMedicalRecord() {
+        return (BitSet) withMedicalRecord.clone();
+    }
+
+    /**
+     * Classifies a person just added to the repository.
+     *
+     * @param person The added person.
+     */
+    public synchronized void personAdded(Person person) {
+        rollOver();
+        add(person);
+    }
+
+    /**
+     * Moves the classification of a person to the instance that replaced it, whose address may differ.
+     *
+     * @param previous The replaced instance.
+     * @param current  The instance now held by the repository.
+     */
+    public synchronized void personUpdated(Person previous, Person current) {
+        rollOver();
+        remove(previous);
+        add(current);
+    }
+
+    /**
+     * Forgets a person just removed from the repository.
+     *
+     * @param person The removed person.
+     */
+    public synchronized void personRemoved(Person person) {
+        rollOver();
+        remove(person);
+    }
+
+    /**
+     * Reclassifies the persons of a name after their medical record was added, updated or deleted.
+     *
+     * @param firstName First name of the medical record.
+     * @param lastName  Last name of the medical record.
+     */
+    public synchronized void medicalRecordChanged(String firstName, String lastName) {
+        rollOver();
+        for (Person person : personRepository.findByLastName(lastName)) {
+            if (Objects.equals(person.getFirstName(), firstName) && Objects.equals(person.getLastName(), lastName)) {
+                remove(person);
+                add(person);
+            }
+        }
+    }
+
+    private void add(Person person) {
+        String address = PersonRepository.normalizeAddress(person.getAddress());
+        if (address == null) {
+            return;
+        }
+        MedicalRecord medicalRecord = medicalRecordsRepository.findByNameId(person.getNameId()).orElse(null);
+        boolean child = true;
+        OptionalInt adultFrom = OptionalInt.empty();
+        if (medicalRecord != null) {
+            try {
+                child = medicalRecord.calculateAge(today) <= CHILD_MAX_AGE;
+                adultFrom = child ? medicalRecord.epochDayOfAge(CHILD_MAX_AGE + 1) : OptionalInt.empty();
+            } catch (DateTimeParseException e) {
+                log.warn("Unreadable birthdate for {} {}, counted as a child", person.getFirstName(), person.getLastName());
+            }
+        }
+        Household household = households.computeIfAbsent(address, k -> new Household(denseIds.addressId(k)));
+        (child ? household.children : household.adults).add(person);
+        if (medicalRecord != null) {
+            household.withMedicalRecord++;
+        }
+        updateSets(household);
+        adultFrom.ifPresent(day -> adulthoods.computeIfAbsent(day, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(person));
+        entries.put(person, new Entry(address, child, medicalRecord != null, adultFrom));
+    }
+
+    private void remove(Person person) {
+        Entry entry = entries.remove(person);
+        if (entry == null) {
+            return;
+        }
+        Household household = households.get(entry.address());
+        household.children.remove(person);
+        household.adults.remove(person);
+        if (entry.hasMedicalRecord()) {
+            household.withMedicalRecord--;
+        }
+        updateSets(household);
+        if (household.isEmpty()) {
+            households.remove(entry.address());
+        }
+        entry.adultFrom().ifPresent(day -> {
+            Set<Person> due = adulthoods.get(day);
+            due.remove(person);
+            if (due.isEmpty()) {
+                adulthoods.remove(day);
+            }
+        });
+    }
+
+    private void updateSets(Household household) {
+        withChildren.set(household.addressId, !household.children.isEmpty());
+        withMedicalRecord.set(household.addressId, household.withMedicalRecord > 0);
+    }
+}
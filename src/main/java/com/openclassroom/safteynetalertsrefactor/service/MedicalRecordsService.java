@@ -11,9 +11,19 @@ import java.util.List;
 @Service
 public class MedicalRecordsService {
     private final MedicalRecordsRepository medicalRecordsRepository;
+    private final HouseholdAgeIndex householdAgeIndex;
+    private final StationCoverageViews stationViews;
+    private final MedicalTermIndex medicalTermIndex;
+    private final MutationPipeline mutations;
 
-    public MedicalRecordsService(MedicalRecordsRepository medicalRecordsRepository) {
+    public MedicalRecordsService(MedicalRecordsRepository medicalRecordsRepository, HouseholdAgeIndex householdAgeIndex,
+                                 StationCoverageViews stationViews, MedicalTermIndex medicalTermIndex,
+                                 MutationPipeline mutations) {
         this.medicalRecordsRepository = medicalRecordsRepository;
+        this.householdAgeIndex = householdAgeIndex;
+        this.stationViews = stationViews;
+        this.medicalTermIndex = medicalTermIndex;
+        this.mutations = mutations;
     }
 
     /**
@@ -42,7 +52,13 @@ public class MedicalRecordsService {
     public MedicalRecord addMedicalRecords(MedicalRecord medicalRecord) {
         log.info("POST /medicalRecords - add requested for {} {}", medicalRecord.getFirstName(), medicalRecord.getLastName());
         try {
-            medicalRecordsRepository.add(medicalRecord);
+            mutations.submit("add medical record", () -> {
+                medicalRecordsRepository.add(medicalRecord);
+                householdAgeIndex.medicalRecordChanged(medicalRecord.getFirstName(), medicalRecord.getLastName());
+                stationViews.medicalRecordChanged(medicalRecord.getFirstName(), medicalRecord.getLastName());
+                medicalTermIndex.medicalRecordChanged(medicalRecord.getFirstName(), medicalRecord.getLastName());
+                return medicalRecord;
+            });
             log.debug("POST /medicalRecords - added record for {} {}", medicalRecord.getFirstName(), medicalRecord.getLastName());
             return medicalRecord;
         } catch (Exception e) {
@@ -62,7 +78,15 @@ public class MedicalRecordsService {
     public boolean updateMedicalRecord(String firstName, String lastName, MedicalRecord updatedMedicalRecord) {
         log.info("PUT /medicalRecords - update requested for {} {}", firstName, lastName);
         try {
-            boolean updated = medicalRecordsRepository.updateMedicalRecord(firstName, lastName, updatedMedicalRecord);
+            boolean updated = mutations.submit("update medical record", () -> {
+                boolean found = medicalRecordsRepository.updateMedicalRecord(firstName, lastName, updatedMedicalRecord);
+                if (found) {
+                    householdAgeIndex.medicalRecordChanged(firstName, lastName);
+                    stationViews.medicalRecordChanged(firstName, lastName);
+                    medicalTermIndex.medicalRecordChanged(firstName, lastName);
+                }
+                return found;
+            });
             if (updated) {
                 log.info("PUT /medicalRecords - update successful for {} {}", firstName, lastName);
             } else {
@@ -85,7 +109,15 @@ public class MedicalRecordsService {
     public boolean deleteMedicalRecord(String firstName, String lastName) {
         log.info("DELETE /medicalRecords - delete requested for {} {}", firstName, lastName);
         try {
-            boolean deleted = medicalRecordsRepository.deleteByName(firstName, lastName);
+            boolean deleted = mutations.submit("delete medical record", () -> {
+                boolean found = medicalRecordsRepository.deleteByName(firstName, lastName);
+                if (found) {
+                    householdAgeIndex.medicalRecordChanged(firstName, lastName);
+                    stationViews.medicalRecordChanged(firstName, lastName);
+                    medicalTermIndex.medicalRecordChanged(firstName, lastName);
+                }
+                return found;
+            });
             if (deleted) {
                 log.info("DELETE /medicalRecords - delete successful for {} {}", firstName, lastName);
             } else {
@@ -0,0 +1,138 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.NameKey;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Inverted index from medication and allergy terms to the names of the persons whose medical record lists them.
+ * <p>
+ * Terms are compared trimmed and case-folded. A medication is indexed both as written, such as "aznol:350mg",
+ * and by its name before the dose, "aznol", so either can be asked for. The index follows the record the
+ * medical record repository returns for each name and is kept up to date by the medical record service
+ * after each mutation, so a lookup never scans the records.
+ */
+@Slf4j
+@Component
+public class MedicalTermIndex {
+
+    private final MedicalRecordsRepository medicalRecordsRepository;
+
+    private final Map<String, Set<NameKey>> byMedication = new HashMap<>();
+    private final Map<String, Set<NameKey>> byAllergy = new HashMap<>();
+    // Terms each name is indexed under, so a changed record can be unindexed
+    private final Map<NameKey, Terms> entries = new HashMap<>();
+
+    private record Terms(Set<String> medications, Set<String> allergies) {
+    }
+
+    public MedicalTermIndex(MedicalRecordsRepository medicalRecordsRepository) {
+        this.medicalRecordsRepository = medicalRecordsRepository;
+    }
+
+    /**
+     * Indexes every medical record currently held by the repository.
+     */
+    @PostConstruct
+    public synchronized void rebuild() {
+        byMedication.clear();
+        byAllergy.clear();
+        entries.clear();
+        for (MedicalRecord medicalRecord : medicalRecordsRepository.findAll()) {
+            NameKey name = new NameKey(medicalRecord.getFirstName(), medicalRecord.getLastName());
+            if (!entries.containsKey(name)) {
+                index(name, medicalRecord);
+            }
+        }
+        log.info("Indexed {} medication and {} allergy term(s) of {} medical records",
+                byMedication.size(), byAllergy.size(), entries.size());
+    }
+
+    /**
+     * Returns the names of the persons taking a medication.
+     *
+     * @param medication A medication as written in the records, or its name without the dose.
+     * @return The matching names, empty when none.
+     */
+    public synchronized Set<NameKey> withMedication(String medication) {
+        return Set.copyOf(byMedication.getOrDefault(fold(medication), Set.of()));
+    }
+
+    /**
+     * Returns the names of the persons allergic to a substance.
+     *
+     * @param allergy An allergy as written in the records.
+     * @return The matching names, empty when none.
+     */
+    public synchronized Set<NameKey> withAllergy(String allergy) {
+        return Set.copyOf(byAllergy.getOrDefault(fold(allergy), Set.of()));
+    }
+
+    /**
+     * Reindexes a name after its medical record was added, updated or deleted.
+     *
+     * @param firstName First name of the medical record.
+     * @param lastName  Last name of the medical record.
+     */
+    public synchronized void medicalRecordChanged(String firstName, String lastName) {
+        NameKey name = new NameKey(firstName, lastName);
+        unindex(name);
+        medicalRecordsRepository.findByName(firstName, lastName).ifPresent(medicalRecord -> index(name, medicalRecord));
+    }
+
+    private void index(NameKey name, MedicalRecord medicalRecord) {
+        Set<String> medications = new HashSet<>();
+        for (String medication : nonNull(medicalRecord.getMedications())) {
+            String term = fold(medication);
+            if (term != null && !term.isEmpty()) {
+                medications.add(term);
+                int dose = term.indexOf(':');
+                if (dose > 0) {
+                    medications.add(term.substring(0, dose).trim());
+                }
+            }
+        }
+        Set<String> allergies = new HashSet<>();
+        for (String allergy : nonNull(medicalRecord.getAllergies())) {
+            String term = fold(allergy);
+            if (term != null && !term.isEmpty()) {
+                allergies.add(term);
+            }
+        }
+        medications.forEach(term -> byMedication.computeIfAbsent(term, k -> new HashSet<>()).add(name));
+        allergies.forEach(term -> byAllergy.computeIfAbsent(term, k -> new HashSet<>()).add(name));
+        entries.put(name, new Terms(medications, allergies));
+    }
+
+    private void unindex(NameKey name) {
+        Terms terms = entries.remove(name);
+        if (terms == null) {
+            return;
+        }
+        terms.medications().forEach(term -> removeFrom(byMedication, term, name));
+        terms.allergies().forEach(term -> removeFrom(byAllergy, term, name));
+    }
+
+    private static void removeFrom(Map<String, Set<NameKey>> index, String term, NameKey name) {
+        Set<NameKey> names = index.get(term);
+        if (names != null) {
+            names.remove(name);
+            if (names.isEmpty()) {
+                index.remove(term);
+            }
+        }
+    }
+
+    private static List<String> nonNull(List<String> terms) {
+        return terms == null ? List.of() : terms;
+    }
+
+    private static String fold(String term) {
+        return NameKey.fold(term);
+    }
+}
@@ -0,0 +1,266 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.repository.StorageEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-writer pipeline for every mutation of persons, fire stations and medical records.
+ * <p>
+ * The services submit each mutation, together with the index and view updates that follow it, to a bounded
+ * ring buffer. One writer thread takes them in submission order and applies up to a batch of them inside one
+ * storage engine batch before releasing the callers: the snapshot engine writes the batch in one document
+ * write, while a write-behind engine keeps its own flush interval and dirty threshold. Writes therefore never
+ * contend with each other, readers only ever wait behind this one thread, and a full buffer makes callers wait
+ * for room instead of piling up work. When the batch write fails, every caller of the batch gets its
+ * exception, even though its change stays applied in memory.
+ * <p>
+ * With {@code app.mutations.pipeline.enabled=false}, or when built with the no-argument constructor,
+ * mutations run directly on the calling thread.
+ */
+@Slf4j
+@Component
+public class MutationPipeline {
+
+    private static final long STOP_TIMEOUT_MS = 5000;
+
+    private final boolean enabled;
+    private final StorageEngine storageEngine;
+    private final BlockingQueue<Mutation<?>> ringBuffer;
+    private final int batchSize;
+    private final Mutation<Void> stop = new Mutation<>("stop", () -> null);
+
+    private volatile Thread writer;
+    private volatile boolean stopped;
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private volatile long appliedMutations;
+    private volatile long batches;
+
+    private static final class Mutation<T> {
+        final String name;
+        final Supplier<T> action;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        T value;
+        Throwable failure;
+
+        Mutation(String name, Supplier<T> action) {
+            this.name = name;
+            this.action = action;
+        }
+
+        void apply() {
+            try {
+                value = action.get();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+        }
+
+        void complete() {
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Builds a pipeline that runs every mutation directly on the calling thread.
+     */
+    public MutationPipeline() {
+        this(false, 1, 1, null);
+    }
+
+    @Autowired
+    public MutationPipeline(@Value("${app.mutations.pipeline.enabled:true}") boolean enabled,
+                            @Value("${app.mutations.queue-capacity:1024}") int capacity,
+                            @Value("${app.mutations.batch-size:64}") int batchSize,
+                            StorageEngine storageEngine) {
+        this.enabled = enabled;
+        this.storageEngine = storageEngine;
+        this.ringBuffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || writer != null) {
+            return;
+        }
+        writer = new Thread(this::run, "mutation-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Mutation pipeline started: {} slot(s), batches of up to {}", ringBuffer.remainingCapacity(), batchSize);
+    }
+
+    /**
+     * Applies the mutations already queued, then stops the writer thread.
+     * Mutations submitted afterwards are rejected.
+     */
+    @PreDestroy
+    public void stop() {
+        Thread thread = writer;
+        if (thread == null || stopped) {
+            return;
+        }
+        try {
+            ringBuffer.put(stop);
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a mutation on the writer thread and waits until it is applied and its batch written.
+     *
+     * @param name     Short description of the mutation, for the logs.
+     * @param mutation The repository call and the index updates that follow it.
+     * @return What the mutation returned.
+     * @throws RuntimeException The exception thrown by the mutation, or by the write of its batch, rethrown on the calling thread.
+     */
+    public <T> T submit(String name, Supplier<T> mutation) {
+        if (!enabled || Thread.currentThread() == writer) {
+            return mutation.get();
+        }
+        if (stopped) {
+            throw new IllegalStateException("Mutation pipeline is stopped, rejected: " + name);
+        }
+        Mutation<T> queued = new Mutation<>(name, mutation);
+        try {
+            ringBuffer.put(queued);
+            maxQueueDepth.accumulateAndGet(ringBuffer.size(), Math::max);
+            // the writer may have drained the buffer for the last time before this put landed
+            if (stopped && ringBuffer.remove(queued)) {
+                throw new IllegalStateException("Mutation pipeline is stopped, rejected: " + name);
+            }
+            return queued.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for mutation " + name, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Mutation " + name + " failed", e.getCause());
+        }
+    }
+
+    /**
+     * Returns the number of mutations waiting in the ring buffer.
+     *
+     * @return The current queue depth.
+     */
+    public int getQueueDepth() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * Returns the highest queue depth seen since startup.
+     *
+     * @return The maximum queue depth.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Returns the number of slots of the ring buffer.
+     *
+     * @return The queue capacity.
+     */
+    public int getQueueCapacity() {
+        return ringBuffer.size() + ringBuffer.remainingCapacity();
+    }
+
+    /**
+     * Returns the number of mutations applied by the writer thread.
+     *
+     * @return The applied mutation count.
+     */
+    public long getAppliedMutations() {
+        return appliedMutations;
+    }
+
+    /**
+     * Returns the number of batches the writer thread applied and wrote.
+     *
+     * @return The batch count.
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    private void run() {
+        List<Mutation<?>> batch = new ArrayList<>(batchSize);
+        boolean stopRequested = false;
+        while (!stopRequested) {
+            try {
+                batch.add(ringBuffer.take());
+            } catch (InterruptedException e) {
+                log.warn("Mutation writer interrupted, stopping");
+                break;
+            }
+            ringBuffer.drainTo(batch, batchSize - 1);
+            stopRequested = batch.remove(stop);
+            applyBatch(batch);
+            batch.clear();
+        }
+        stopped = true;
+        // anything queued behind the stop request, or racing with it, is rejected rather than left waiting
+        List<Mutation<?>> rejected = new ArrayList<>();
+        ringBuffer.drainTo(rejected);
+        for (Mutation<?> mutation : rejected) {
+            mutation.result.completeExceptionally(
+                    new IllegalStateException("Mutation pipeline is stopped, rejected: " + mutation.name));
+        }
+        log.info("Mutation pipeline stopped after {} mutation(s) in {} batch(es)", appliedMutations, batches);
+    }
+
+    private void applyBatch(List<Mutation<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            storageEngine.beginBatch();
+            for (Mutation<?> mutation : batch) {
+                mutation.apply();
+            }
+            storageEngine.endBatch();
+        } catch (RuntimeException e) {
+            log.error("Writing the batch of {} mutation(s) failed, they stay applied in memory only", batch.size(), e);
+            // the callers were promised a durable change: they get the flush failure instead of their result
+            for (Mutation<?> mutation : batch) {
+                if (mutation.failure == null) {
+                    mutation.failure = e;
+                }
+            }
+        }
+        appliedMutations += batch.size();
+        batches++;
+        for (Mutation<?> mutation : batch) {
+            mutation.complete();
+        }
+        log.debug("Applied {} mutation(s) in one batch, {} still queued", batch.size(), ringBuffer.size());
+    }
+}
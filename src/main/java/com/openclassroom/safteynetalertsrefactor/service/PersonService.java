@@ -2,6 +2,7 @@ package com.openclassroom.safteynetalertsrefactor.service;
 
 import com.openclassroom.safteynetalertsrefactor.model.Person;
 import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.Replacement;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -16,9 +17,16 @@ import java.util.Optional;
 public class PersonService {
 
     private final PersonRepository personRepository;
+    private final HouseholdAgeIndex householdAgeIndex;
+    private final StationCoverageViews stationViews;
+    private final MutationPipeline mutations;
 
-    public PersonService(PersonRepository personRepository) {
+    public PersonService(PersonRepository personRepository, HouseholdAgeIndex householdAgeIndex,
+                         StationCoverageViews stationViews, MutationPipeline mutations) {
         this.personRepository = personRepository;
+        this.householdAgeIndex = householdAgeIndex;
+        this.stationViews = stationViews;
+        this.mutations = mutations;
     }
 
     /**
@@ -47,7 +55,12 @@ public class PersonService {
     public Person addPerson(Person person) {
         log.info("POST /persons - add requested for {} {}", person.getFirstName(), person.getLastName());
         try {
-            personRepository.add(person);
+            mutations.submit("add person", () -> {
+                personRepository.add(person);
+                householdAgeIndex.personAdded(person);
+                stationViews.addressChanged(person.getAddress());
+                return person;
+            });
             log.debug("POST /persons - added person {} {}", person.getFirstName(), person.getLastName());
             return person;
         } catch (Exception e) {
@@ -67,18 +80,18 @@ public class PersonService {
     public boolean updatePerson(String firstName, String lastName, Person updatedPerson) {
         log.info("PUT /persons - update requested for {} {}", firstName, lastName);
         try {
-            Optional<Person> existingPersonOpt = personRepository.findByName(firstName, lastName);
-            if (existingPersonOpt.isEmpty()) {
+            Optional<Replacement<Person>> replaced = mutations.submit("update person", () -> {
+                Optional<Replacement<Person>> replacement = personRepository.updatePerson(firstName, lastName, updatedPerson);
+                replacement.ifPresent(r -> {
+                    householdAgeIndex.personUpdated(r.previous(), r.current());
+                    stationViews.addressChanged(r.previous().getAddress(), r.current().getAddress());
+                });
+                return replacement;
+            });
+            if (replaced.isEmpty()) {
                 log.warn("PUT /persons - not found for {} {}", firstName, lastName);
                 return false;
             }
-            Person existingPerson = existingPersonOpt.get();
-            existingPerson.setAddress(updatedPerson.getAddress());
-            existingPerson.setCity(updatedPerson.getCity());
-            existingPerson.setZip(updatedPerson.getZip());
-            existingPerson.setPhone(updatedPerson.getPhone());
-            existingPerson.setEmail(updatedPerson.getEmail());
-            personRepository.persist();
             log.info("PUT /persons - update successful for {} {}", firstName, lastName);
             return true;
         } catch (Exception e) {
@@ -97,7 +110,14 @@ public class PersonService {
     public boolean delete(String firstName, String lastName) {
         log.info("DELETE /persons - delete requested for {} {}", firstName, lastName);
         try {
-            boolean deleted = personRepository.deletePerson(firstName, lastName);
+            boolean deleted = mutations.submit("delete person", () -> {
+                Optional<Person> removed = personRepository.removePerson(firstName, lastName);
+                removed.ifPresent(person -> {
+                    householdAgeIndex.personRemoved(person);
+                    stationViews.addressChanged(person.getAddress());
+                });
+                return removed.isPresent();
+            });
             if (deleted) {
                 log.info("DELETE /persons - delete successful for {} {}", firstName, lastName);
             } else {
@@ -0,0 +1,260 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.repository.DenseIds;
+import com.openclassroom.safteynetalertsrefactor.repository.FireStationRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.NameKey;
+import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Small in-memory query layer joining persons with fire stations and medical records.
+ * <p>
+ * A query starts from the persons and narrows them with constraints that are pushed down to the
+ * repositories' indexes: station coverage joins fire stations to persons on the dense address ids, an address
+ * or a last name probes the matching index directly, a set of names, such as the ones found in the medical
+ * term index, probes the last-name index once per last name, and only a query without any of them scans
+ * every person. Constraints the chosen index does not cover are checked next, before the join with medical
+ * records on the persons' name ids, so filtered-out rows never probe it. Each row is then projected into its DTO.
+ * Every query logs, and returns, how many rows it read, kept and joined.
+ */
+@Slf4j
+@Component
+public class ResidentQueryEngine {
+
+    private final PersonRepository personRepository;
+    private final FireStationRepository fireStationRepository;
+    private final MedicalRecordsRepository medicalRecordRepository;
+    private final DenseIds denseIds;
+
+    /**
+     * Row counts of one executed query.
+     *
+     * @param query   Name of the query, for the logs.
+     * @param scanned Persons read from an index or from the full list.
+     * @param matched Persons left after the constraints.
+     * @param joined  Medical records found for the matched persons.
+     */
+    public record QueryStats(String query, int scanned, int matched, int joined) {
+    }
+
+    /**
+     * Projected rows of one executed query, with its row counts.
+     */
+    public record QueryResult<T>(List<T> rows, QueryStats stats) {
+    }
+
+    public ResidentQueryEngine(PersonRepository personRepository,
+                               FireStationRepository fireStationRepository,
+                               MedicalRecordsRepository medicalRecordRepository,
+                               DenseIds denseIds) {
+        this.personRepository = personRepository;
+        this.fireStationRepository = fireStationRepository;
+        this.medicalRecordRepository = medicalRecordRepository;
+        this.denseIds = denseIds;
+    }
+
+    /**
+     * Starts a query over all persons.
+     *
+     * @param name Name of the query, reported with its row counts.
+     * @return A query to narrow and project.
+     */
+    public Query persons(String name) {
+        return new Query(name);
+    }
+
+    /**
+     * A query under construction. Constraints are combined with AND.
+     */
+    public final class Query {
+        private final String name;
+        // Ids of the addresses the persons must live at, distinct, in given order; null when unconstrained
+        private int[] addressIds;
+        private String lastName;
+        // Exact (firstName, lastName) pairs the persons must have; null when unconstrained
+        private Set<NameKey> names;
+        private int scanned;
+
+        private Query(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Keeps the residents of the addresses covered by the given stations, household by household in the
+         * order the stations list their addresses.
+         *
+         * @param stationNumbers The fire station numbers.
+         * @return This query.
+         */
+        public Query coveredBy(Collection<Integer> stationNumbers) {
+            List<String> covered = new ArrayList<>();
+            for (int stationNumber : stationNumbers) {
+                covered.addAll(fireStationRepository.findAddressesByStation(stationNumber));
+            }
+            return atAddresses(covered);
+        }
+
+        /**
+         * Keeps the residents of the given addresses, compared in normalized form.
+         *
+         * @param addresses The addresses.
+         * @return This query.
+         */
+        public Query atAddresses(Collection<String> addresses) {
+            // an address no person or station ever had has no id, and no residents
+            return atAddressIds(addresses.stream().mapToInt(denseIds::findAddressId).filter(id -> id != 0).toArray());
+        }
+
+        private Query atAddressIds(int[] ids) {
+            if (addressIds == null) {
+                addressIds = Arrays.stream(ids).distinct().toArray();
+            } else {
+                BitSet keep = new BitSet();
+                Arrays.stream(ids).forEach(keep::set);
+                addressIds = Arrays.stream(addressIds).filter(keep::get).toArray();
+            }
+            return this;
+        }
+
+        /**
+         * Keeps the persons with the given last name, compared case-insensitively.
+         *
+         * @param lastName The last name.
+         * @return This query.
+         */
+        public Query withLastName(String lastName) {
+            this.lastName = lastName;
+            return this;
+        }
+
+        /**
+         * Keeps the persons whose exact first and last name are among the given ones.
+         *
+         * @param names The names.
+         * @return This query.
+         */
+        public Query withNames(Collection<NameKey> names) {
+            if (this.names == null) {
+                this.names = new HashSet<>(names);
+            } else {
+                this.names.retainAll(names);
+            }
+            return this;
+        }
+
+        /**
+         * Runs the query and projects each person.
+         *
+         * @param projection Builds a row from a person.
+         * @return The rows in source order, with the row counts.
+         */
+        public <T> QueryResult<T> select(Function<Person, T> projection) {
+            List<Person> matched = matches();
+            List<T> rows = new ArrayList<>(matched.size());
+            for (Person person : matched) {
+                rows.add(projection.apply(person));
+            }
+            return finish(rows, 0);
+        }
+
+        /**
+         * Runs the query, joins each person with their medical record and projects the pair.
+         *
+         * @param projection Builds a row from a person and their medical record, null when there is none.
+         * @return The rows in source order, with the row counts.
+         */
+        public <T> QueryResult<T> selectWithMedicalRecord(BiFunction<Person, MedicalRecord, T> projection) {
+            List<Person> matched = matches();
+            List<T> rows = new ArrayList<>(matched.size());
+            int joined = 0;
+            for (Person person : matched) {
+                MedicalRecord medicalRecord = medicalRecordRepository.findByNameId(person.getNameId()).orElse(null);
+                if (medicalRecord != null) {
+                    joined++;
+                }
+                rows.add(projection.apply(person, medicalRecord));
+            }
+            return finish(rows, joined);
+        }
+
+        private List<Person> matches() {
+            List<Person> source = source();
+            scanned = source.size();
+            String lastNameKey = (addressIds != null || names != null) && lastName != null ? NameKey.fold(lastName) : null;
+            // the names are only left to check when the addresses picked the index
+            BitSet nameFilter = addressIds != null && names != null ? nameIds() : null;
+            List<Person> matched = new ArrayList<>(source.size());
+            for (Person person : source) {
+                // the last name is only left to check when another constraint picked the index
+                if (lastNameKey != null && !lastNameKey.equals(NameKey.fold(person.getLastName()))) {
+                    continue;
+                }
+                if (nameFilter != null && !nameFilter.get(person.getNameId())) {
+                    continue;
+                }
+                matched.add(person);
+            }
+            return matched;
+        }
+
+        // Most selective index first: addresses, then names, then last name, then the full list
+        private List<Person> source() {
+            if (addressIds != null) {
+                List<Person> residents = new ArrayList<>();
+                for (int addressId : addressIds) {
+                    residents.addAll(personRepository.findByAddressId(addressId));
+                }
+                return residents;
+            }
+            if (names != null) {
+                // one probe per case-folded last name, in name order so results do not depend on hashing
+                Set<String> lastNames = new TreeSet<>();
+                for (NameKey name : names) {
+                    if (name.lastName() != null) {
+                        lastNames.add(NameKey.fold(name.lastName()));
+                    }
+                }
+                BitSet nameIds = nameIds();
+                List<Person> named = new ArrayList<>();
+                for (String folded : lastNames) {
+                    for (Person person : personRepository.findByLastName(folded)) {
+                        if (nameIds.get(person.getNameId())) {
+                            named.add(person);
+                        }
+                    }
+                }
+                return named;
+            }
+            if (lastName != null) {
+                return personRepository.findByLastName(lastName);
+            }
+            return personRepository.findAll();
+        }
+
+        // Ids of the names kept; a name without an id belongs to no indexed person
+        private BitSet nameIds() {
+            BitSet ids = new BitSet();
+            for (NameKey name : names) {
+                int id = denseIds.findNameId(name.firstName(), name.lastName());
+                if (id != 0) {
+                    ids.set(id);
+                }
+            }
+            return ids;
+        }
+
+        private <T> QueryResult<T> finish(List<T> rows, int joined) {
+            QueryStats stats = new QueryStats(name, scanned, rows.size(), joined);
+            log.debug("Query {} scanned {} row(s), matched {}, joined {}", name, stats.scanned(), stats.matched(), stats.joined());
+            return new QueryResult<>(rows, stats);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.dto.FirstResponderDto;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import com.openclassroom.safteynetalertsrefactor.repository.FireStationRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Materialized /firestation and /phoneAlert results per station number.
+ * <p>
+ * A view is built on first read and kept with the normalized addresses its station covered at that time.
+ * The mutation services report what they changed: a person or fire station change drops the views covering
+ * its address, a station number change drops that station's views, and a medical record change drops the
+ * coverage views of the addresses its persons live at, as only the adult and child counts depend on it.
+ * Coverage views also expire with the day, since ages move at midnight. Views are only kept for stations
+ * that cover at least one address in the fire station repository.
+ */
+@Slf4j
+@Component
+public class StationCoverageViews {
+
+    private final FireStationRepository fireStationRepository;
+    private final PersonRepository personRepository;
+    private final Today today;
+
+    private final Map<Integer, View<FirstResponderDto>> coverage = new ConcurrentHashMap<>();
+    private final Map<Integer, View<List<String>>> phones = new ConcurrentHashMap<>();
+    // Moves on every invalidation, so a view built from data read before it is not stored after it
+    private final AtomicLong generation = new AtomicLong();
+
+    private record View<T>(T value, Set<String> addresses, int day) {
+    }
+
+    public StationCoverageViews(FireStationRepository fireStationRepository, PersonRepository personRepository,
+                                Today today) {
+        this.fireStationRepository = fireStationRepository;
+        this.personRepository = personRepository;
+        this.today = today;
+    }
+
+    /**
+     * Returns the coverage view of a station, building it when missing or stale.
+     *
+     * @param stationNumber The fire station number.
+     * @param builder       Computes the view from the repositories.
+     * @return The shared view.
+     */
+    public FirstResponderDto coverage(int stationNumber, Supplier<FirstResponderDto> builder) {
+        int day = today.epochDay();
+        View<FirstResponderDto> view = coverage.get(stationNumber);
+        if (view != null && view.day() == day) {
+            log.debug("Serving materialized coverage of station {}", stationNumber);
+            return view.value();
+        }
+        return build(coverage, stationNumber, builder, day).value();
+    }
+
+    /**
+     * Returns the phone list of a station, building it when missing.
+     *
+     * @param stationNumber The fire station number.
+     * @param builder       Computes the list from the repositories.
+     * @return The shared, unmodifiable list.
+     */
+    public List<String> phones(int stationNumber, Supplier<List<String>> builder) {
+        View<List<String>> view = phones.get(stationNumber);
+        if (view != null) {
+            log.debug("Serving materialized phone list of station {}", stationNumber);
+            return view.value();
+        }
+        return build(phones, stationNumber, () -> Collections.unmodifiableList(builder.get()), today.epochDay()).value();
+    }
+
+    /**
+     * Drops the views of the stations covering any of the addresses.
+     *
+     * @param addresses Addresses of changed persons or fire stations; nulls are ignored.
+     */
+    public void addressChanged(String... addresses) {
+        Set<String> keys = new HashSet<>();
+        for (String address : addresses) {
+            if (address != null) {
+                keys.add(PersonRepository.normalizeAddress(address));
+            }
+        }
+        generation.incrementAndGet();
+        coverage.values().removeIf(view -> !Collections.disjoint(view.addresses(), keys));
+        phones.values().removeIf(view -> !Collections.disjoint(view.addresses(), keys));
+    }
+
+    /**
+     * Drops the views of a station whose covered addresses changed.
+     *
+     * @param stationNumber The fire station number.
+     */
+    public void stationChanged(int stationNumber) {
+        generation.incrementAndGet();
+        coverage.remove(stationNumber);
+        phones.remove(stationNumber);
+    }
+
+    /**
+     * Drops the coverage views of the addresses where the persons of a medical record live.
+     *
+     * @param firstName First name of the medical record.
+     * @param lastName  Last name of the medical record.
+     */
+    public void medicalRecordChanged(String firstName, String lastName) {
+        Set<String> keys = new HashSet<>();
+        for (Person person : personRepository.findByLastName(lastName)) {
+            if (Objects.equals(person.getFirstName(), firstName) && person.getAddress() != null) {
+                keys.add(PersonRepository.normalizeAddress(person.getAddress()));
+            }
+        }
+        generation.incrementAndGet();
+        coverage.values().removeIf(view -> !Collections.disjoint(view.addresses(), keys));
+    }
+
+    private <T> View<T> build(Map<Integer, View<T>> views, int stationNumber, Supplier<T> builder, int day) {
+        long before = generation.get();
+        Set<String> addresses = new HashSet<>();
+        for (String address : fireStationRepository.findAddressesByStation(stationNumber)) {
+            addresses.add(PersonRepository.normalizeAddress(address));
+        }
+        View<T> view = new View<>(builder.get(), addresses, day);
+        if (addresses.isEmpty()) {
+            // no such station: not kept, so arbitrary station numbers cannot grow the views
+            log.debug("Station {} covers no address, view not materialized", stationNumber);
+            return view;
+        }
+        views.put(stationNumber, view);
+        // an invalidation that raced with the build may have missed the new view; drop it ourselves
+        if (generation.get() != before) {
+            views.remove(stationNumber, view);
+        }
+        log.debug("Materialized view of station {} over {} address(es)", stationNumber, addresses.size());
+        return view;
+    }
+}
@@ -0,0 +1,61 @@
+package com.openclassroom.safteynetalertsrefactor.benchmark;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* Cost of one age computation: parsing the MM/dd/yyyy string and building a Period on every call,
+ * as MedicalRecord used to, against the pre-parsed epoch day and cached today.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.openclassroom.safteynetalertsrefactor.benchmark.AgeCalculationBenchmark
+ * Add -prof gc through the JMH command line to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AgeCalculationBenchmark {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+
+    private final Today today = new Today(Clock.systemDefaultZone());
+    private List<MedicalRecord> records;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        records = BenchmarkData.medicalRecords(1024);
+    }
+
+    private MedicalRecord next() {
+        index = (index + 1) & 1023;
+        return records.get(index);
+    }
+
+    @Benchmark
+    public int parseOnEveryCall() {
+        LocalDate dob = LocalDate.parse(next().getBirthdate(), FORMATTER);
+        return Period.between(dob, LocalDate.now()).getYears();
+    }
+
+    @Benchmark
+    public int preParsedEpochDay() {
+        return next().calculateAge(today);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AgeCalculationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package com.openclassroom.safteynetalertsrefactor.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassroom.safteynetalertsrefactor.model.FireStation;
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/* Synthetic data.json documents for the benchmarks: four residents per household,
+ * fifty households per fire station, one medical record per resident.
+ */
+final class BenchmarkData {
+
+    private static final String[] CITIES = {"Culver", "Springfield", "Riverside", "Fairview"};
+    private static final String[] MEDICATIONS = {"aznol:350mg", "hydrapermazol:100mg", "pharmacol:5000mg", "terazine:10mg"};
+    private static final String[] ALLERGIES = {"nillacilan", "peanut", "shellfish"};
+
+    private BenchmarkData() {
+    }
+
+    static List<Person> persons(int count) {
+        List<Person> persons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            persons.add(new Person("First" + i, "Last" + (i / 4), address(i / 4), CITIES[i % CITIES.length],
+                    String.valueOf(97451 + i % 10), String.format("841-%03d-%04d", i / 10_000 % 1000, i % 10_000),
+                    "resident" + i + "@email.com"));
+        }
+        return persons;
+    }
+
+    static List<FireStation> fireStations(int persons) {
+        int households = Math.max(1, (persons + 3) / 4);
+        List<FireStation> stations = new ArrayList<>(households);
+        for (int h = 0; h < households; h++) {
+            stations.add(new FireStation(address(h), h / 50 + 1));
+        }
+        return stations;
+    }
+
+    static List<MedicalRecord> medicalRecords(int count) {
+        List<MedicalRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new MedicalRecord("First" + i, "Last" + (i / 4),
+                    String.format("%02d/%02d/%04d", i % 12 + 1, i % 28 + 1, 1940 + i % 80),
+                    List.of(MEDICATIONS[i % MEDICATIONS.length]), i % 3 == 0 ? List.of(ALLERGIES[i % ALLERGIES.length]) : List.of()));
+        }
+        return records;
+    }
+
+    /* Writes a pretty-printed data.json document with the given number of persons. */
+    static Path writeDataFile(Path directory, int persons) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve("data.json");
+        Map<String, Object> document = Map.of(
+                "persons", persons(persons),
+                "firestations", fireStations(persons),
+                "medicalrecords", medicalRecords(persons));
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file.toFile(), document);
+        return file;
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static String address(int household) {
+        return (1000 + household) + " Culver St";
+    }
+}
@@ -0,0 +1,67 @@
+package com.openclassroom.safteynetalertsrefactor.benchmark;
+
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.repository.JSONFileReaderRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/* Latency of one persisted person update while eight threads mutate concurrently.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.openclassroom.safteynetalertsrefactor.benchmark.PersistenceWriteBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+public class PersistenceWriteBenchmark {
+
+    @Param({"10000"})
+    int persons;
+
+    @Param({"snapshot", "journal", "write-behind"})
+    String mode;
+
+    @Param({"single-document", "per-collection"})
+    String layout;
+
+    private Path directory;
+    private JSONFileReaderRepository storage;
+    private List<Person> personList;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("persistence-bench");
+        Path dataFile = BenchmarkData.writeDataFile(directory, persons);
+        storage = new JSONFileReaderRepository("data.json", dataFile.toString(), mode,
+                10_000, 100, 1_000, layout, directory.resolve("collections").toString(), false, false);
+        personList = List.copyOf(storage.readList("persons", Person.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.shutdown();
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void updatePerson() {
+        Person person = personList.get(ThreadLocalRandom.current().nextInt(personList.size()));
+        storage.updateElement("persons", person, person, personList);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PersistenceWriteBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package com.openclassroom.safteynetalertsrefactor.benchmark;
+
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.repository.DenseIds;
+import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.StorageEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/* Throughput of PersonRepository lookups under its read-write lock, alone and next to a writer.
+ * "reads" runs lookups only and should scale with the thread count; "mixed" pairs three readers with one
+ * writer replacing persons, to show what readers lose while writes hold the lock.
+ * Storage is a no-op so only the in-memory structures are measured.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.openclassroom.safteynetalertsrefactor.benchmark.RepositoryThroughputBenchmark
+ * Compare core counts through the JMH command line, e.g. -t 1 and -t 4 for "reads".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class RepositoryThroughputBenchmark {
+
+    @Param({"10000"})
+    int persons;
+
+    private PersonRepository repository;
+    private List<Person> personList;
+
+    /* Discards every write; the benchmark measures locking and indexes, not persistence. */
+    private static final class NoStorage implements StorageEngine {
+        private final List<Person> seed;
+
+        NoStorage(List<Person> seed) {
+            this.seed = seed;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> readList(String collection, Class<T> elementType) {
+            return "persons".equals(collection) ? new ArrayList<>((List<T>) seed) : new ArrayList<>();
+        }
+
+        @Override
+        public <T> void writeList(String collection, List<T> items) {
+        }
+
+        @Override
+        public <T> void addElement(String collection, T element, List<T> items) {
+        }
+
+        @Override
+        public <T> void updateElement(String collection, T previous, T element, List<T> items) {
+        }
+
+        @Override
+        public <T> void removeElements(String collection, List<T> removed, List<T> items) {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        personList = BenchmarkData.persons(persons);
+        repository = new PersonRepository(new NoStorage(personList), new DenseIds());
+        repository.init();
+    }
+
+    private Person randomPerson() {
+        return personList.get(ThreadLocalRandom.current().nextInt(personList.size()));
+    }
+
+    private void lookups(Blackhole blackhole) {
+        Person person = randomPerson();
+        blackhole.consume(repository.findByName(person.getFirstName(), person.getLastName()));
+        blackhole.consume(repository.findByAddress(person.getAddress()));
+        blackhole.consume(repository.findByLastName(person.getLastName()));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void reads(Blackhole blackhole) {
+        lookups(blackhole);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedReads(Blackhole blackhole) {
+        lookups(blackhole);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrites(Blackhole blackhole) {
+        Person person = randomPerson();
+        blackhole.consume(repository.updatePerson(person.getFirstName(), person.getLastName(), person));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RepositoryThroughputBenchmark.class.getSimpleName()).build()).run();
+    }
+}
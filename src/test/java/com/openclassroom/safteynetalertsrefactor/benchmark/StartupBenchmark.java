@@ -0,0 +1,70 @@
+package com.openclassroom.safteynetalertsrefactor.benchmark;
+
+import com.openclassroom.safteynetalertsrefactor.model.FireStation;
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.repository.JSONFileReaderRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/* Cold start: time for a fresh repository to load all three collections, from data.json (streamed, or
+ * memory-mapped and bound in parallel chunks) or from its binary snapshot. The snapshot is built once during setup, so every measured start can use it.
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.openclassroom.safteynetalertsrefactor.benchmark.StartupBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class StartupBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int persons;
+
+    @Param({"json", "json-parallel", "smile"})
+    String format;
+
+    private Path directory;
+    private Path dataFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("startup-bench");
+        dataFile = BenchmarkData.writeDataFile(directory, persons);
+        if ("smile".equals(format)) {
+            open().readList("persons", Person.class);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    private JSONFileReaderRepository open() {
+        return new JSONFileReaderRepository("data.json", dataFile.toString(), "snapshot",
+                500, 1000, 100, "single-document", "", "smile".equals(format), "json-parallel".equals(format));
+    }
+
+    @Benchmark
+    public void coldStart(Blackhole blackhole) {
+        JSONFileReaderRepository storage = open();
+        blackhole.consume(storage.readList("persons", Person.class));
+        blackhole.consume(storage.readList("firestations", FireStation.class));
+        blackhole.consume(storage.readList("medicalrecords", MedicalRecord.class));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StartupBenchmark.class.getSimpleName()).build()).run();
+    }
+}
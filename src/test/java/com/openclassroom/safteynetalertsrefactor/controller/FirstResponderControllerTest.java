@@ -5,6 +5,7 @@ import com.openclassroom.safteynetalertsrefactor.dto.ChildResidentDto;
 import com.openclassroom.safteynetalertsrefactor.dto.FirstResponderDto;
 import com.openclassroom.safteynetalertsrefactor.dto.HouseholdDto;
 import com.openclassroom.safteynetalertsrefactor.dto.ResidentDto;
+import com.openclassroom.safteynetalertsrefactor.repository.CityEmails;
 import com.openclassroom.safteynetalertsrefactor.service.FirstResponderService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -99,16 +100,28 @@ public class FirstResponderControllerTest {
         String city = "Culver";
         List<String> emails = List.of("a@example.com");
 
-        when(service.getCommunityEmail(city)).thenReturn(emails);
+        when(service.getCommunityEmail(city)).thenReturn(new CityEmails(emails, 7));
 
         mockMvc.perform(get("/communityEmail")
                         .param("city", city))
                 .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7\""))
                 .andExpect(content().json(objectMapper.writeValueAsString(emails)));
 
         verify(service, times(1)).getCommunityEmail(city);
     }
 
+    @Test
+    void getCommunityEmail_returnsNotModified_whenVersionUnchanged() throws Exception {
+        when(service.getCommunityEmail("Culver")).thenReturn(new CityEmails(List.of("a@example.com"), 7));
+
+        mockMvc.perform(get("/communityEmail")
+                        .param("city", "Culver")
+                        .header("If-None-Match", "\"7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
     @Test
     void getPersonInfoByLastName_returnsList_and_callsService() throws Exception {
         String lastName = "Doe";
@@ -128,13 +141,45 @@ public class FirstResponderControllerTest {
         List<String> stations = List.of("1", "2");
         List<HouseholdDto> floodData = List.of(new HouseholdDto());
 
-        when(service.getFloodInfo(stations)).thenReturn(floodData);
+        when(service.getFloodInfo(stations, false, false)).thenReturn(floodData);
 
         mockMvc.perform(get("/flood/stations")
                         .param("stations", "1", "2"))
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(floodData)));
 
-        verify(service, times(1)).getFloodInfo(stations);
+        verify(service, times(1)).getFloodInfo(stations, false, false);
+    }
+
+    @Test
+    void getFloodInfo_passesTheHouseholdFilters() throws Exception {
+        List<String> stations = List.of("3");
+        List<HouseholdDto> floodData = List.of(new HouseholdDto());
+
+        when(service.getFloodInfo(stations, true, true)).thenReturn(floodData);
+
+        mockMvc.perform(get("/flood/stations")
+                        .param("stations", "3")
+                        .param("withChildren", "true")
+                        .param("withMedicalRecord", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(floodData)));
+
+        verify(service, times(1)).getFloodInfo(stations, true, true);
+    }
+
+    @Test
+    void getMedicalAlert_returnsList_and_callsService() throws Exception {
+        List<ResidentDto> residents = List.of(new ResidentDto());
+
+        when(service.getMedicalAlert(3, "aznol", null)).thenReturn(residents);
+
+        mockMvc.perform(get("/medicalAlert")
+                        .param("stationNumber", "3")
+                        .param("medication", "aznol"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(residents)));
+
+        verify(service, times(1)).getMedicalAlert(3, "aznol", null);
     }
 }
@@ -0,0 +1,131 @@
+package com.openclassroom.safteynetalertsrefactor.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicalRecordTest {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    private static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+
+    private final SettableClock clock = new SettableClock(ZONE);
+    private final Today today = new Today(clock);
+
+    private void setToday(LocalDate date, int hour, int minute) {
+        clock.set(date, hour, minute);
+    }
+
+    private static MedicalRecord bornOn(LocalDate birth) {
+        return new MedicalRecord("John", "Boyd", birth.format(FORMATTER), List.of(), List.of());
+    }
+
+    @Test
+    void calculateAge_shouldMatchPeriodBetweenAcrossLeapDaysAndBirthdays() {
+        LocalDate[] todays = {LocalDate.of(2024, 2, 28), LocalDate.of(2024, 2, 29), LocalDate.of(2025, 2, 28),
+                LocalDate.of(2025, 3, 1), LocalDate.of(2026, 10, 17), LocalDate.of(2026, 12, 31)};
+        for (LocalDate date : todays) {
+            setToday(date, 12, 0);
+            for (LocalDate birth = LocalDate.of(1899, 12, 1); birth.isBefore(LocalDate.of(2030, 1, 1)); birth = birth.plusDays(37)) {
+                assertEquals(Period.between(birth, date).getYears(), bornOn(birth).calculateAge(today), birth + " on " + date);
+            }
+            for (LocalDate birth : List.of(LocalDate.of(2000, 2, 29), date, date.minusYears(18), date.minusYears(18).plusDays(1))) {
+                assertEquals(Period.between(birth, date).getYears(), bornOn(birth).calculateAge(today), birth + " on " + date);
+            }
+        }
+    }
+
+    @Test
+    void calculateAge_shouldRollOverAtMidnight() {
+        MedicalRecord record = bornOn(LocalDate.of(2008, 10, 18));
+        setToday(LocalDate.of(2026, 10, 17), 23, 59);
+        assertEquals(17, record.calculateAge(today));
+
+        setToday(LocalDate.of(2026, 10, 18), 0, 1);
+        assertEquals(18, record.calculateAge(today));
+    }
+
+    @Test
+    void setBirthdate_shouldReparseOnUpdate_andKeepFailuresForAgeCalculation() {
+        setToday(LocalDate.of(2026, 10, 17), 12, 0);
+        MedicalRecord record = new MedicalRecord();
+        assertEquals(0, record.calculateAge(today));
+
+        record.setBirthdate("10/17/2000");
+        assertEquals(26, record.calculateAge(today));
+
+        record.setBirthdate("2000-10-17");
+        assertThrows(DateTimeParseException.class, () -> record.calculateAge(today));
+    }
+
+    @Test
+    void json_shouldNotExposeParsedBirthdate() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        MedicalRecord record = objectMapper.readValue(
+                "{\"firstName\":\"John\",\"lastName\":\"Boyd\",\"birthdate\":\"03/06/1984\"}", MedicalRecord.class);
+
+        setToday(LocalDate.of(2026, 10, 17), 12, 0);
+        assertEquals(42, record.calculateAge(today));
+        assertFalse(objectMapper.writeValueAsString(record).contains("EpochDay"));
+    }
+
+    @Test
+    void epochDayOfAge_shouldBeTheFirstDayCalculateAgeReachesIt() {
+        for (LocalDate birth : List.of(LocalDate.of(2008, 2, 29), LocalDate.of(2007, 10, 17), LocalDate.of(2007, 12, 31))) {
+            MedicalRecord record = bornOn(birth);
+            LocalDate adult = LocalDate.ofEpochDay(record.epochDayOfAge(19).getAsInt());
+
+            setToday(adult.minusDays(1), 12, 0);
+            assertEquals(18, record.calculateAge(today), birth.toString());
+            setToday(adult, 12, 0);
+            assertEquals(19, record.calculateAge(today), birth.toString());
+        }
+        assertTrue(new MedicalRecord().epochDayOfAge(19).isEmpty());
+    }
+
+    @Test
+    void moveListsTo_shouldDecodeTheSameListsFromTheArena() throws Exception {
+        OffHeapListArena arena = new OffHeapListArena();
+        MedicalRecord record = new MedicalRecord("John", "Boyd", "03/06/1984",
+                List.of("aznol:350mg", "hydrapermazol:100mg"), List.of("nillacilan", "pénicilline", ""));
+        MedicalRecord withoutLists = new MedicalRecord("Jacob", "Boyd", "03/06/1989", null, List.of());
+
+        ValueDictionary<String> terms = new ValueDictionary<>();
+        record.moveListsTo(arena, terms);
+        withoutLists.moveListsTo(arena, terms);
+
+        assertEquals(List.of("aznol:350mg", "hydrapermazol:100mg"), record.getMedications());
+        assertEquals(List.of("nillacilan", "pénicilline", ""), record.getAllergies());
+        assertNull(withoutLists.getMedications());
+        assertEquals(List.of(), withoutLists.getAllergies());
+        assertTrue(arena.usedBytes() > 0);
+        assertEquals(5, new ObjectMapper().valueToTree(record).size());
+
+        record.releaseOffHeapLists();
+        assertEquals(List.of("nillacilan", "pénicilline", ""), record.getAllergies());
+        record.setAllergies(List.of("peanut"));
+        assertEquals(List.of("peanut"), record.getAllergies());
+        assertTrue(arena.garbageBytes() > 0);
+    }
+
+    @Test
+    void lists_shouldBeReadOnlyCopies() {
+        List<String> medications = new ArrayList<>(List.of("aznol:350mg"));
+        MedicalRecord record = new MedicalRecord("John", "Boyd", "03/06/1984", medications, List.of("nillacilan"));
+
+        medications.add("tradoxidine:400mg");
+
+        assertEquals(List.of("aznol:350mg"), record.getMedications());
+        assertThrows(UnsupportedOperationException.class, () -> record.getMedications().add("x"));
+        assertThrows(UnsupportedOperationException.class, () -> record.getAllergies().add("x"));
+    }
+}
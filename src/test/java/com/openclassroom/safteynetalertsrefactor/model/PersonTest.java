@@ -0,0 +1,71 @@
+package com.openclassroom.safteynetalertsrefactor.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void accessors_shouldReturnWhatWasSet() {
+        Person person = new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com");
+
+        assertEquals("John", person.getFirstName());
+        assertEquals("Boyd", person.getLastName());
+        assertEquals("1509 Culver St", person.getAddress());
+        assertEquals("Culver", person.getCity());
+        assertEquals("97451", person.getZip());
+        assertEquals("841-874-6512", person.getPhone());
+        assertEquals("jaboyd@email.com", person.getEmail());
+
+        person.setCity("Springfield");
+        person.setPhone("000-000-0000");
+        assertEquals("Springfield", person.getCity());
+        assertEquals("000-000-0000", person.getPhone());
+    }
+
+    @Test
+    void newPerson_shouldHaveNullFields() {
+        Person person = new Person();
+
+        assertNull(person.getLastName());
+        assertNull(person.getAddress());
+        assertNull(person.getCity());
+        assertNull(person.getZip());
+        assertNull(person.getPhone());
+    }
+
+    @Test
+    void json_shouldBindTheSameSevenStringProperties() throws Exception {
+        Person person = new Person("John", "Boyd", "1509 Culver St", "Culver", "97451", "841-874-6512", "jaboyd@email.com");
+
+        JsonNode json = objectMapper.valueToTree(person);
+        Person read = objectMapper.treeToValue(json, Person.class);
+
+        assertEquals(7, json.size());
+        assertEquals("841-874-6512", json.get("phone").asText());
+        assertEquals("1509 Culver St", json.get("address").asText());
+        assertEquals(person.getPhone(), read.getPhone());
+        assertEquals(person.getAddress(), read.getAddress());
+        assertEquals(person.getLastName(), read.getLastName());
+    }
+
+    @Test
+    void valueDictionary_shouldReserveCodeZeroForNull() {
+        ValueDictionary<String> dictionary = new ValueDictionary<>();
+
+        assertEquals(0, dictionary.encode(null));
+        assertNull(dictionary.decode(0));
+        int code = dictionary.encode("Culver");
+        for (int i = 0; i < 100; i++) {
+            dictionary.encode("value" + i);
+        }
+        assertEquals(code, dictionary.encode(new String("Culver")));
+        assertEquals("Culver", dictionary.decode(code));
+        assertEquals(101, dictionary.size());
+    }
+}
@@ -0,0 +1,37 @@
+package com.openclassroom.safteynetalertsrefactor.model;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/* Clock of the tests, moved to a given local date and time of its zone. */
+public class SettableClock extends Clock {
+
+    private final ZoneId zone;
+    private volatile Instant instant;
+
+    public SettableClock(ZoneId zone) {
+        this.zone = zone;
+        this.instant = Instant.EPOCH;
+    }
+
+    public void set(LocalDate date, int hour, int minute) {
+        instant = date.atTime(hour, minute).atZone(zone).toInstant();
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return Clock.fixed(instant, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+}
@@ -0,0 +1,56 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtomicFileWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void write_shouldCreateParentDirectoriesAndFile() throws IOException {
+        Path target = tempDir.resolve("nested/data.json");
+
+        AtomicFileWriter.write(target, out -> out.write("{}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("{}", Files.readString(target));
+    }
+
+    @Test
+    void write_shouldReplaceExistingFileWithoutLeavingTempFiles() throws IOException {
+        Path target = tempDir.resolve("data.json");
+        Files.writeString(target, "old");
+
+        AtomicFileWriter.write(target, out -> out.write("new".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("new", Files.readString(target));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void write_shouldKeepOldFileWhenContentFails() throws IOException {
+        Path target = tempDir.resolve("data.json");
+        Files.writeString(target, "old");
+
+        assertThrows(IOException.class, () -> AtomicFileWriter.write(target, out -> {
+            out.write("partial".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("crash mid-write");
+        }));
+
+        assertEquals("old", Files.readString(target));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySnapshotTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private BinarySnapshot snapshot;
+    private Path source;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        source = tempDir.resolve("data.json");
+        Files.writeString(source, """
+                { "persons": [ { "firstName": "John", "lastName": "Doe" } ], "firestations": [] }
+                """);
+        snapshot = new BinarySnapshot(tempDir.resolve("data.json.smile"));
+    }
+
+    @Test
+    void load_shouldReturnCollectionsWrittenFromDocument() throws IOException {
+        snapshot.write(source, objectMapper.readTree(source.toFile()));
+
+        Optional<Map<String, List<?>>> loaded = snapshot.load(source, Map.of("persons", Person.class));
+
+        assertTrue(loaded.isPresent());
+        assertEquals(1, loaded.get().size());
+        Person person = (Person) loaded.get().get("persons").get(0);
+        assertEquals("Doe", person.getLastName());
+    }
+
+    @Test
+    void load_shouldIgnoreSnapshotOfChangedSource() throws IOException {
+        snapshot.write(source, Map.of("persons", List.of()));
+        Files.writeString(source, "{ \"persons\": [] }");
+
+        assertTrue(snapshot.load(source, Map.of("persons", Person.class)).isEmpty());
+    }
+
+    @Test
+    void load_shouldIgnoreMissingOrUnreadableSnapshot() throws IOException {
+        assertTrue(snapshot.load(source, Map.of("persons", Person.class)).isEmpty());
+
+        Files.writeString(snapshot.getPath(), "not smile");
+
+        assertTrue(snapshot.load(source, Map.of("persons", Person.class)).isEmpty());
+        snapshot.delete();
+        assertFalse(Files.exists(snapshot.getPath()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassroom.safteynetalertsrefactor.model.FireStation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollectionFileStoreTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CollectionFileStore store;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        store = new CollectionFileStore(tempDir.resolve("collections"), objectMapper);
+    }
+
+    @Test
+    void write_shouldCreateOneFilePerCollectionWithoutLeavingTempFiles() throws IOException {
+        assertTrue(store.isEmpty());
+
+        store.write("firestations", List.of(new FireStation("1 Main St", 1)));
+
+        assertFalse(store.isEmpty());
+        assertTrue(Files.exists(store.fileFor("firestations")));
+        try (Stream<Path> files = Files.list(store.getDirectory())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void read_shouldBindTypedElements() {
+        store.write("firestations", List.of(new FireStation("1 Main St", 1), new FireStation("2 Main St", 2)));
+
+        List<Object> stations = store.read("firestations", FireStation.class);
+
+        assertEquals(2, stations.size());
+        assertEquals(2, ((FireStation) stations.get(1)).getStation());
+        assertTrue(store.read("persons", FireStation.class).isEmpty());
+    }
+
+    @Test
+    void importAndExportDocument_shouldRoundTrip() throws IOException {
+        var document = objectMapper.readTree("""
+                { "persons": [ { "firstName": "John" } ], "firestations": [ { "address": "A", "station": 1 } ] }
+                """);
+
+        store.importDocument(document);
+        var exported = store.exportDocument();
+
+        assertEquals(document.get("persons"), exported.get("persons"));
+        assertEquals(document.get("firestations"), exported.get("firestations"));
+    }
+}
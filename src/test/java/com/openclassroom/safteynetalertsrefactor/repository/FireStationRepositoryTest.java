@@ -12,6 +12,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyList;
@@ -20,8 +21,10 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class FireStationRepositoryTest {
 
+    private final DenseIds ids = new DenseIds();
+
     @Mock
-    private JSONFileReaderRepository jsonFileReaderRepository;
+    private StorageEngine storageEngine;
 
     private FireStationRepository fireStationRepository;
 
@@ -41,10 +44,10 @@ class FireStationRepositoryTest {
     void init_shouldLoadFireStationsFromJson() {
         List<FireStation> stations = List.of(sample("123 St", 1), sample("456 St", 2));
 
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(stations);
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         List<FireStation> result = fireStationRepository.findAll();
@@ -54,10 +57,10 @@ class FireStationRepositoryTest {
 
     @Test
     void add_shouldAddFireStationAndPersist() {
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(new ArrayList<>());
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         FireStation newFS = sample("ABC Street", 3);
@@ -67,17 +70,17 @@ class FireStationRepositoryTest {
         assertEquals(1, result.size());
         assertEquals("ABC Street", result.get(0).getAddress());
 
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("firestations"), anyList());
+        verify(storageEngine, times(1))
+                .addElement(eq("firestations"), any(FireStation.class), anyList());
     }
 
     @Test
     void findByAddress_shouldReturnMatch() {
         List<FireStation> stations = List.of(sample("123 St", 1));
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(stations);
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         Optional<FireStation> found = fireStationRepository.findByAddress("123 St");
@@ -88,10 +91,10 @@ class FireStationRepositoryTest {
 
     @Test
     void findByAddress_shouldReturnEmptyWhenNotFound() {
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(new ArrayList<>());
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         assertTrue(fireStationRepository.findByAddress("missing").isEmpty());
@@ -100,40 +103,44 @@ class FireStationRepositoryTest {
     @Test
     void updateFireStation_shouldUpdateStationAndPersist() {
         FireStation fs = sample("123 St", 1);
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(new ArrayList<>(List.of(fs)));
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         boolean result = fireStationRepository.updateFireStation("123 St", 9);
 
         assertTrue(result);
-        assertEquals(9, fireStationRepository.findAll().get(0).getStation());
-
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("firestations"), anyList());
+        FireStation current = fireStationRepository.findAll().get(0);
+        assertEquals(9, current.getStation());
+        assertNotSame(fs, current);
+        assertEquals(1, fs.getStation());
+        assertSame(current, fireStationRepository.findByAddress("123 St").orElseThrow());
+
+        verify(storageEngine, times(1))
+                .updateElement(eq("firestations"), any(FireStation.class), any(FireStation.class), anyList());
     }
 
     @Test
     void updateFireStation_shouldReturnFalseWhenNotFound() {
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(new ArrayList<>());
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         assertFalse(fireStationRepository.updateFireStation("NA", 5));
-        verify(jsonFileReaderRepository, never()).writeList(anyString(), anyList());
+        verify(storageEngine, never()).updateElement(anyString(), any(), any(), anyList());
     }
 
     @Test
     void deleteByAddress_shouldRemoveAndPersist() {
         FireStation fs = sample("123 St", 1);
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(new ArrayList<>(List.of(fs)));
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         boolean deleted = fireStationRepository.deleteByAddress("123 St");
@@ -141,20 +148,20 @@ class FireStationRepositoryTest {
         assertTrue(deleted);
         assertEquals(0, fireStationRepository.findAll().size());
 
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("firestations"), anyList());
+        verify(storageEngine, times(1))
+                .removeElements(eq("firestations"), anyList(), anyList());
     }
 
     @Test
     void deleteByAddress_shouldReturnFalseWhenMissing() {
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(new ArrayList<>());
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         assertFalse(fireStationRepository.deleteByAddress("missing"));
-        verify(jsonFileReaderRepository, never()).writeList(anyString(), anyList());
+        verify(storageEngine, never()).removeElements(anyString(), anyList(), anyList());
     }
 
     @Test
@@ -164,10 +171,10 @@ class FireStationRepositoryTest {
         stations.add(sample("B", 1));
         stations.add(sample("C", 2));
 
-        when(jsonFileReaderRepository.readList("firestations", FireStation.class))
+        when(storageEngine.readList("firestations", FireStation.class))
                 .thenReturn(stations);
 
-        fireStationRepository = new FireStationRepository(jsonFileReaderRepository);
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
         fireStationRepository.init();
 
         boolean result = fireStationRepository.deleteByStationNumber(1);
@@ -176,7 +183,60 @@ class FireStationRepositoryTest {
         assertEquals(1, fireStationRepository.findAll().size());
         assertEquals("C", fireStationRepository.findAll().get(0).getAddress());
 
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("firestations"), anyList());
+        verify(storageEngine, times(1))
+                .removeElements(eq("firestations"), anyList(), anyList());
+    }
+
+    @Test
+    void findAddressesByStation_shouldFollowAddUpdateAndDelete() {
+        when(storageEngine.readList("firestations", FireStation.class))
+                .thenReturn(new ArrayList<>(List.of(sample("A", 1), sample("B", 1), sample("C", 2))));
+
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
+        fireStationRepository.init();
+        assertEquals(List.of("A", "B"), List.copyOf(fireStationRepository.findAddressesByStation(1)));
+
+        fireStationRepository.add(sample("D", 2));
+        assertEquals(Set.of("C", "D"), fireStationRepository.findAddressesByStation(2));
+
+        fireStationRepository.updateFireStation("B", 2);
+        assertEquals(Set.of("A"), fireStationRepository.findAddressesByStation(1));
+        assertEquals(Set.of("B", "C", "D"), fireStationRepository.findAddressesByStation(2));
+        assertEquals(2, fireStationRepository.findByAddress("B").orElseThrow().getStation());
+
+        assertTrue(fireStationRepository.deleteByStationNumber(2));
+        assertTrue(fireStationRepository.findAddressesByStation(2).isEmpty());
+        assertTrue(fireStationRepository.findByAddress("C").isEmpty());
+        assertEquals(1, fireStationRepository.findAll().size());
+        assertFalse(fireStationRepository.findAddressesByStation(9).contains(null));
+    }
+
+    @Test
+    void deleteByAddress_shouldKeepStationCoveredByAnotherMapping() {
+        when(storageEngine.readList("firestations", FireStation.class))
+                .thenReturn(new ArrayList<>(List.of(sample("A", 1), sample("A", 3))));
+
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
+        fireStationRepository.init();
+
+        assertTrue(fireStationRepository.deleteByAddress("A"));
+
+        assertTrue(fireStationRepository.findAddressesByStation(1).isEmpty());
+        assertEquals(Set.of("A"), fireStationRepository.findAddressesByStation(3));
+        assertEquals(3, fireStationRepository.findByAddress("A").orElseThrow().getStation());
+    }
+
+    @Test
+    void init_shouldHandOutAddressIds_forEveryMappedAddress() {
+        when(storageEngine.readList("firestations", FireStation.class))
+                .thenReturn(new ArrayList<>(List.of(sample("1509 Culver St", 3), sample("1509  culver st", 3), sample("29 15th St", 2))));
+
+        fireStationRepository = new FireStationRepository(storageEngine, ids);
+        fireStationRepository.init();
+
+        assertNotEquals(0, ids.findAddressId("1509 Culver St"));
+        assertEquals(ids.findAddressId("1509 Culver St"), ids.findAddressId("1509  culver st"));
+        assertNotEquals(0, ids.findAddressId("29 15th St"));
+        assertEquals(List.of("1509 Culver St", "1509  culver st"), List.copyOf(fireStationRepository.findAddressesByStation(3)));
     }
 }
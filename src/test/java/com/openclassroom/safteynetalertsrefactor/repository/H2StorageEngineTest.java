@@ -0,0 +1,165 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.openclassroom.safteynetalertsrefactor.model.FireStation;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class H2StorageEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private H2StorageEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    private String url() {
+        return "jdbc:h2:file:" + tempDir.resolve("safetynet").toAbsolutePath();
+    }
+
+    private H2StorageEngine open() {
+        H2StorageEngine opened = new H2StorageEngine(url(), "data.json");
+        opened.init();
+        return opened;
+    }
+
+    private H2StorageEngine reopen() {
+        engine.close();
+        engine = open();
+        return engine;
+    }
+
+    private Person person(String firstName, String lastName, String city) {
+        return new Person(firstName, lastName, "1 Main St", city, "97451", "841-874-0000", "x@email.com");
+    }
+
+    @Test
+    void init_shouldSeedEmptyDatabaseFromClasspath() {
+        List<Person> persons = engine.readList("persons", Person.class);
+
+        assertFalse(persons.isEmpty());
+        assertEquals("John", persons.get(0).getFirstName());
+        assertEquals("Boyd", persons.get(0).getLastName());
+        assertFalse(engine.readList("firestations", FireStation.class).isEmpty());
+    }
+
+    @Test
+    void addElement_shouldStoreElementAtHeadOfCollection() {
+        List<Person> persons = engine.readList("persons", Person.class);
+        Person added = person("Jane", "Roe", "Culver");
+        persons.add(0, added);
+
+        engine.addElement("persons", added, persons);
+
+        List<Person> stored = reopen().readList("persons", Person.class);
+        assertEquals(persons.size(), stored.size());
+        assertEquals("Jane", stored.get(0).getFirstName());
+    }
+
+    @Test
+    void updateElement_shouldReplaceRowWithSameKey() {
+        List<Person> persons = engine.readList("persons", Person.class);
+        Person first = persons.get(0);
+        first.setCity("Paris");
+
+        engine.updateElement("persons", first, first, persons);
+
+        List<Person> stored = reopen().readList("persons", Person.class);
+        assertEquals(persons.size(), stored.size());
+        assertEquals("Paris", stored.get(0).getCity());
+    }
+
+    @Test
+    void removeElements_shouldDeleteRowsByKey() {
+        List<FireStation> stations = engine.readList("firestations", FireStation.class);
+        FireStation removed = stations.remove(0);
+
+        engine.removeElements("firestations", List.of(removed), stations);
+
+        List<FireStation> stored = reopen().readList("firestations", FireStation.class);
+        assertEquals(stations.size(), stored.size());
+        assertTrue(stored.stream().noneMatch(fs -> fs.getAddress().equals(removed.getAddress())));
+    }
+
+    // data.json maps "112 Steppes Pl" to stations 3 and 4
+    private static List<Integer> stationsOf(List<FireStation> stations, String address) {
+        return stations.stream().filter(fs -> fs.getAddress().equals(address)).map(FireStation::getStation).toList();
+    }
+
+    @Test
+    void updateElement_shouldOnlyTouchTheMappingOfTheSameStation_whenAnAddressHasTwoStations() {
+        List<FireStation> stations = engine.readList("firestations", FireStation.class);
+        assertEquals(List.of(3, 4), stationsOf(stations, "112 Steppes Pl"));
+        FireStation previous = stations.stream()
+                .filter(fs -> fs.getAddress().equals("112 Steppes Pl") && fs.getStation() == 4).findFirst().orElseThrow();
+        FireStation current = new FireStation("112 Steppes Pl", 5);
+        stations.set(stations.indexOf(previous), current);
+
+        engine.updateElement("firestations", previous, current, stations);
+
+        List<FireStation> stored = reopen().readList("firestations", FireStation.class);
+        assertEquals(stations.size(), stored.size());
+        assertEquals(List.of(3, 5), stationsOf(stored, "112 Steppes Pl"));
+    }
+
+    @Test
+    void removeElements_shouldKeepTheOtherStationOfAnAddress() {
+        List<FireStation> stations = engine.readList("firestations", FireStation.class);
+        FireStation removed = new FireStation("112 Steppes Pl", 3);
+        stations.removeIf(fs -> fs.getAddress().equals("112 Steppes Pl") && fs.getStation() == 3);
+
+        engine.removeElements("firestations", List.of(removed), stations);
+
+        List<FireStation> stored = reopen().readList("firestations", FireStation.class);
+        assertEquals(stations.size(), stored.size());
+        assertEquals(List.of(4), stationsOf(stored, "112 Steppes Pl"));
+    }
+
+    @Test
+    void init_shouldRekeyFireStationRowsKeyedOnTheAddressAlone() throws SQLException {
+        engine.close();
+        try (Connection connection = DriverManager.getConnection(url());
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE documents SET key2 = '' WHERE collection_name = 'firestations'");
+        }
+        engine = open();
+
+        engine.removeElements("firestations", List.of(new FireStation("112 Steppes Pl", 3)), new ArrayList<>());
+
+        assertEquals(List.of(4), stationsOf(engine.readList("firestations", FireStation.class), "112 Steppes Pl"));
+    }
+
+    @Test
+    void writeList_shouldReplaceWholeCollectionInOrder() {
+        List<Person> persons = new ArrayList<>(List.of(person("A", "One", "Culver"), person("B", "Two", "Culver")));
+
+        engine.writeList("persons", persons);
+
+        List<Person> stored = reopen().readList("persons", Person.class);
+        assertEquals(2, stored.size());
+        assertEquals("A", stored.get(0).getFirstName());
+        assertEquals("B", stored.get(1).getFirstName());
+        assertTrue(engine.readList("unknown", Person.class).isEmpty());
+    }
+}
@@ -10,6 +10,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 @ExtendWith(MockitoExtension.class)
 class JSONFileReaderTest {
 
@@ -39,6 +41,17 @@ class JSONFileReaderTest {
         System.out.println("tempDir = " + tempDir.toAbsolutePath());
     }
 
+    // Repository on tempDir/data.json with explicit persistence settings
+    private JSONFileReaderRepository configured(String mode, int compactionThreshold, long flushIntervalMs, int maxDirty, String layout) {
+        return new JSONFileReaderRepository("update-data.json", tempDir.resolve("data.json").toString(), mode,
+                compactionThreshold, flushIntervalMs, maxDirty, layout, tempDir.resolve("collections").toString(), false, false);
+    }
+
+    private JSONFileReaderRepository withBinarySnapshot() {
+        return new JSONFileReaderRepository("update-data.json", tempDir.resolve("data.json").toString(), "snapshot",
+                100, 1000, 100, "single-document", "", true, false);
+    }
+
     @Test
     void testReadFromClasspath() {
         var classpathReader = new JSONFileReaderRepository("data.json", tempDir.resolve("nonexistent.json").toString());
@@ -73,6 +86,30 @@ class JSONFileReaderTest {
         assert persons.get(0).getFirstName().equals("John");
     }
 
+    @Test
+    void testReadListBindsAllCollectionsInOnePass() throws IOException {
+        Path jsonFile = tempDir.resolve("data.json");
+        Files.writeString(jsonFile, """
+                {
+                    "persons": [ { "firstName": "John", "lastName": "Doe" } ],
+                    "ignored": { "nested": [ 1, 2, 3 ] },
+                    "firestations": [ { "address": "1 Main St", "station": 3 } ],
+                    "medicalrecords": [ { "firstName": "John", "lastName": "Doe", "medications": [ "aznol:350mg" ] } ]
+                }
+                """);
+
+        var persons = jsonFileReaderRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        // the other collections were bound during the first read, so later changes to the file are not re-parsed
+        Files.writeString(jsonFile, "{}");
+        var stations = jsonFileReaderRepository.readList("firestations", com.openclassroom.safteynetalertsrefactor.model.FireStation.class);
+        var records = jsonFileReaderRepository.readList("medicalrecords", com.openclassroom.safteynetalertsrefactor.model.MedicalRecord.class);
+
+        assertEquals("John", persons.get(0).getFirstName());
+        assertEquals(3, stations.get(0).getStation());
+        assertEquals("aznol:350mg", records.get(0).getMedications().get(0));
+        assertTrue(jsonFileReaderRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).isEmpty());
+    }
+
     @Test
     void testWriteList() {
         var newPerson = new com.openclassroom.safteynetalertsrefactor.model.Person();
@@ -92,4 +129,413 @@ class JSONFileReaderTest {
         assert updatedPersons.get(1).getFirstName().equals("Jane");
     }
 
+    @Test
+    void testJournalModeAppendsWithoutRewritingSnapshot() throws IOException {
+        Path jsonFile = tempDir.resolve("data.json");
+        String snapshotBefore = Files.readString(jsonFile);
+        var journalRepository = configured("journal", 100, 1000, 100, "single-document");
+
+        var persons = journalRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        var newPerson = new com.openclassroom.safteynetalertsrefactor.model.Person();
+        newPerson.setFirstName("Jane");
+        newPerson.setLastName("Smith");
+        persons.add(0, newPerson);
+        journalRepository.addElement("persons", newPerson, persons);
+
+        assertEquals(snapshotBefore, Files.readString(jsonFile));
+        assertTrue(Files.exists(tempDir.resolve("data.json.journal")));
+
+        var replayed = journalRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        assertEquals(2, replayed.size());
+        assertEquals("Jane", replayed.get(0).getFirstName());
+    }
+
+    @Test
+    void testJournalCompactionFoldsRecordsIntoSnapshot() throws IOException {
+        Path jsonFile = tempDir.resolve("data.json");
+        var journalRepository = configured("journal", 2, 1000, 100, "single-document");
+
+        var persons = journalRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        var john = persons.get(0);
+        john.setCity("Paris");
+        journalRepository.updateElement("persons", john, john, persons);
+        persons.remove(john);
+        journalRepository.removeElements("persons", java.util.List.of(john), persons);
+
+        assertFalse(Files.exists(tempDir.resolve("data.json.journal")));
+        var snapshotRepository = new JSONFileReaderRepository("update-data.json", jsonFile.toString());
+        assertEquals(0, snapshotRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+    }
+
+    @Test
+    void testRecoverJournalOnStartup() throws IOException {
+        Path jsonFile = tempDir.resolve("data.json");
+        var journalRepository = configured("journal", 100, 1000, 100, "single-document");
+        var persons = journalRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        persons.get(0).setCity("Paris");
+        journalRepository.updateElement("persons", persons.get(0), persons.get(0), persons);
+
+        var restarted = configured("journal", 100, 1000, 100, "single-document");
+        restarted.recoverJournal();
+
+        assertFalse(Files.exists(tempDir.resolve("data.json.journal")));
+        assertTrue(Files.readString(jsonFile).contains("Paris"));
+    }
+
+    @Test
+    void testRecoveryAfterCrashBetweenSnapshotWriteAndTruncateAppliesRecordsOnce() throws IOException {
+        Path journalFile = tempDir.resolve("data.json.journal");
+        String original = Files.readString(tempDir.resolve("data.json"));
+        for (String layout : java.util.List.of("single-document", "per-collection")) {
+            Files.writeString(tempDir.resolve("data.json"), original);
+            var journalRepository = configured("journal", 100, 1000, 100, layout);
+            journalRepository.recoverJournal();
+            var persons = journalRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+            var john = persons.get(0);
+            // two identical adds are two records, both kept
+            for (int i = 0; i < 2; i++) {
+                var jane = new com.openclassroom.safteynetalertsrefactor.model.Person();
+                jane.setFirstName("Jane");
+                jane.setLastName("Doe");
+                persons.add(0, jane);
+                journalRepository.addElement("persons", jane, persons);
+            }
+            persons.remove(john);
+            journalRepository.removeElements("persons", java.util.List.of(john), persons);
+
+            // the snapshot is written but the process dies before the journal is truncated
+            byte[] journalBytes = Files.readAllBytes(journalFile);
+            journalRepository.compact();
+            Files.write(journalFile, journalBytes);
+
+            var restarted = configured("journal", 100, 1000, 100, layout);
+            restarted.recoverJournal();
+            var recovered = restarted.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+
+            assertEquals(2, recovered.size(), layout);
+            assertTrue(recovered.stream().allMatch(p -> p.getFirstName().equals("Jane")), layout);
+        }
+    }
+
+    @Test
+    void testJournalNumbersRecordsAfterTheSnapshotSequenceOnRestart() throws IOException {
+        var journalRepository = configured("journal", 1, 1000, 100, "single-document");
+        var persons = journalRepository.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        persons.get(0).setCity("Paris");
+        journalRepository.updateElement("persons", persons.get(0), persons.get(0), persons);
+        assertFalse(Files.exists(tempDir.resolve("data.json.journal")));
+
+        var restarted = configured("journal", 100, 1000, 100, "single-document");
+        restarted.recoverJournal();
+        var reloaded = restarted.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        reloaded.get(0).setCity("Lyon");
+        restarted.updateElement("persons", reloaded.get(0), reloaded.get(0), reloaded);
+
+        var readBack = configured("journal", 100, 1000, 100, "single-document")
+                .readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        assertEquals("Lyon", readBack.get(0).getCity());
+    }
+
+    @Test
+    void testWriteBehindCoalescesBurstIntoOneFlush() throws IOException {
+        Path jsonFile = tempDir.resolve("data.json");
+        String snapshotBefore = Files.readString(jsonFile);
+        var writeBehind = configured("write-behind", 100, 60_000, 1000, "single-document");
+
+        var persons = writeBehind.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        for (int i = 0; i < 50; i++) {
+            var person = new com.openclassroom.safteynetalertsrefactor.model.Person();
+            person.setFirstName("First" + i);
+            person.setLastName("Last" + i);
+            persons.add(0, person);
+            writeBehind.addElement("persons", person, persons);
+        }
+
+        assertEquals(snapshotBefore, Files.readString(jsonFile));
+        assertEquals(50, writeBehind.getPendingChanges());
+        assertEquals(51, writeBehind.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+
+        writeBehind.flush();
+
+        assertEquals(0, writeBehind.getPendingChanges());
+        var reread = new JSONFileReaderRepository("update-data.json", jsonFile.toString());
+        assertEquals(51, reread.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+    }
+
+    @Test
+    void testSnapshotBatchIsCommittedInOneWrite() throws IOException {
+        var snapshot = configured("snapshot", 100, 1000, 100, "single-document");
+        var persons = snapshot.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        String documentBefore = Files.readString(tempDir.resolve("data.json"));
+
+        snapshot.beginBatch();
+        persons.get(0).setCity("Paris");
+        snapshot.updateElement("persons", persons.get(0), persons.get(0), persons);
+        snapshot.writeList("firestations", java.util.List.of(new com.openclassroom.safteynetalertsrefactor.model.FireStation("1 Main St", 9)));
+        assertEquals(documentBefore, Files.readString(tempDir.resolve("data.json")));
+        snapshot.endBatch();
+
+        assertEquals(1, snapshot.getCommitWrites());
+        var reread = new JSONFileReaderRepository("update-data.json", tempDir.resolve("data.json").toString());
+        assertEquals("Paris", reread.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).get(0).getCity());
+        assertEquals(1, reread.readList("firestations", com.openclassroom.safteynetalertsrefactor.model.FireStation.class).size());
+    }
+
+    @Test
+    void testWriteBehindBatchDoesNotForceAFlush() throws IOException {
+        String documentBefore = Files.readString(tempDir.resolve("data.json"));
+        var writeBehind = configured("write-behind", 100, 60_000, 1000, "single-document");
+        var persons = writeBehind.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+
+        writeBehind.beginBatch();
+        writeBehind.updateElement("persons", persons.get(0), persons.get(0), persons);
+        writeBehind.endBatch();
+
+        assertEquals(1, writeBehind.getPendingChanges());
+        assertEquals(documentBefore, Files.readString(tempDir.resolve("data.json")));
+    }
+
+    @Test
+    void testFailedWriteBehindFlushKeepsChangesPending() throws IOException {
+        Path jsonFile = tempDir.resolve("data.json");
+        var writeBehind = configured("write-behind", 100, 60_000, 1000, "single-document");
+        var persons = writeBehind.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        persons.get(0).setCity("Paris");
+        writeBehind.updateElement("persons", persons.get(0), persons.get(0), persons);
+
+        // a non-empty directory in place of the data file makes the write fail
+        Files.delete(jsonFile);
+        Files.createDirectories(jsonFile.resolve("blocker"));
+        assertThrows(RuntimeException.class, writeBehind::flush);
+        assertEquals(1, writeBehind.getPendingChanges());
+
+        Files.delete(jsonFile.resolve("blocker"));
+        Files.delete(jsonFile);
+        writeBehind.flush();
+
+        assertEquals(0, writeBehind.getPendingChanges());
+        var reread = new JSONFileReaderRepository("update-data.json", jsonFile.toString());
+        assertEquals("Paris", reread.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).get(0).getCity());
+    }
+
+    @Test
+    void testWriteBehindFlushesWhenDirtyThresholdReached() {
+        Path jsonFile = tempDir.resolve("data.json");
+        var writeBehind = configured("write-behind", 100, 60_000, 2, "single-document");
+
+        var persons = writeBehind.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        persons.get(0).setCity("Paris");
+        writeBehind.updateElement("persons", persons.get(0), persons.get(0), persons);
+        assertEquals(1, writeBehind.getPendingChanges());
+        writeBehind.updateElement("persons", persons.get(0), persons.get(0), persons);
+
+        assertEquals(0, writeBehind.getPendingChanges());
+    }
+
+    @Test
+    void testWriteBehindFlushesTheListAsItWasWhenMarkedDirty() throws IOException {
+        Path jsonFile = tempDir.resolve("data.json");
+        var writeBehind = configured("write-behind", 100, 60_000, 100, "single-document");
+
+        var persons = writeBehind.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        var jane = new com.openclassroom.safteynetalertsrefactor.model.Person();
+        jane.setFirstName("Jane");
+        persons.add(0, jane);
+        writeBehind.addElement("persons", jane, persons);
+        persons.clear();
+
+        writeBehind.flush();
+
+        assertTrue(Files.readString(jsonFile).contains("Jane"));
+    }
+
+    @Test
+    void testWriteBehindSchedulerAndShutdownFlush() throws Exception {
+        Path jsonFile = tempDir.resolve("data.json");
+        var writeBehind = configured("write-behind", 100, 50, 1000, "single-document");
+        writeBehind.init();
+
+        var persons = writeBehind.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        persons.get(0).setCity("Paris");
+        writeBehind.updateElement("persons", persons.get(0), persons.get(0), persons);
+        for (int i = 0; i < 100 && writeBehind.getPendingChanges() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(Files.readString(jsonFile).contains("Paris"));
+
+        persons.get(0).setCity("Lyon");
+        writeBehind.updateElement("persons", persons.get(0), persons.get(0), persons);
+        writeBehind.shutdown();
+        assertTrue(Files.readString(jsonFile).contains("Lyon"));
+    }
+
+    @Test
+    void testPerCollectionLayoutImportsAndWritesOnlyChangedCollection() throws IOException {
+        var perCollection = configured("snapshot", 100, 1000, 100, "per-collection");
+        Path personsFile = tempDir.resolve("collections/persons.json");
+        Path stationsFile = tempDir.resolve("collections/firestations.json");
+
+        var persons = perCollection.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        assertEquals(1, persons.size());
+        assertTrue(Files.exists(personsFile));
+        var stationsModified = Files.getLastModifiedTime(stationsFile);
+        String documentBefore = Files.readString(tempDir.resolve("data.json"));
+
+        var jane = new com.openclassroom.safteynetalertsrefactor.model.Person();
+        jane.setFirstName("Jane");
+        jane.setLastName("Smith");
+        persons.add(0, jane);
+        perCollection.addElement("persons", jane, persons);
+
+        assertEquals(documentBefore, Files.readString(tempDir.resolve("data.json")));
+        assertEquals(stationsModified, Files.getLastModifiedTime(stationsFile));
+        assertEquals(2, perCollection.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+    }
+
+    @Test
+    void testPerCollectionLayoutExportsSingleDocument() throws IOException {
+        var perCollection = configured("snapshot", 100, 1000, 100, "per-collection");
+        var persons = perCollection.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        persons.get(0).setCity("Paris");
+        perCollection.updateElement("persons", persons.get(0), persons.get(0), persons);
+
+        Path exported = tempDir.resolve("export/data.json");
+        perCollection.exportDocument(exported);
+
+        var reader = new JSONFileReaderRepository("update-data.json", exported.toString());
+        var exportedPersons = reader.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        assertEquals("Paris", exportedPersons.get(0).getCity());
+        assertTrue(reader.readJson().get("firestations").isArray());
+        try (var files = Files.list(exported.getParent())) {
+            assertEquals(java.util.List.of(exported), files.toList());
+        }
+    }
+
+    @Test
+    void testImportDocumentReplacesCollectionFiles() throws IOException {
+        var perCollection = configured("snapshot", 100, 1000, 100, "per-collection");
+        Path source = tempDir.resolve("import.json");
+        Files.writeString(source, """
+                { "persons": [ { "firstName": "Ann" }, { "firstName": "Ben" } ], "firestations": [], "medicalrecords": [] }
+                """);
+
+        perCollection.importDocument(source);
+
+        assertEquals(2, perCollection.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+        assertTrue(Files.readString(tempDir.resolve("collections/persons.json")).contains("Ben"));
+    }
+
+    @Test
+    void testImportPathIsAppliedOnStartupBeforeTheCollectionsAreRead() throws IOException {
+        Path source = tempDir.resolve("import.json");
+        Files.writeString(source, """
+                { "persons": [ { "firstName": "Ann" }, { "firstName": "Ben" } ], "firestations": [], "medicalrecords": [] }
+                """);
+        var importing = new JSONFileReaderRepository("update-data.json", tempDir.resolve("data.json").toString(), "snapshot",
+                100, 1000, 100, "single-document", "", false, false, source.toString());
+
+        importing.init();
+
+        var persons = importing.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        assertEquals(java.util.List.of("Ann", "Ben"), persons.stream().map(com.openclassroom.safteynetalertsrefactor.model.Person::getFirstName).toList());
+        assertTrue(Files.readString(tempDir.resolve("data.json")).contains("Ben"));
+    }
+
+    @Test
+    void testImportDocumentIsRefusedOnceCollectionsWereRead() throws IOException {
+        var perCollection = configured("snapshot", 100, 1000, 100, "per-collection");
+        perCollection.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        Path source = tempDir.resolve("import.json");
+        Files.writeString(source, """
+                { "persons": [ { "firstName": "Ann" } ], "firestations": [], "medicalrecords": [] }
+                """);
+
+        assertThrows(IllegalStateException.class, () -> perCollection.importDocument(source));
+        assertFalse(Files.readString(tempDir.resolve("collections/persons.json")).contains("Ann"));
+    }
+
+    @Test
+    void testConcurrentWritesAreGroupCommitted() throws Exception {
+        int writers = 16;
+        var start = new java.util.concurrent.CountDownLatch(1);
+        var pool = java.util.concurrent.Executors.newFixedThreadPool(writers);
+        try {
+            var futures = new java.util.ArrayList<java.util.concurrent.Future<?>>();
+            for (int i = 0; i < writers; i++) {
+                String collection = "collection" + i;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    jsonFileReaderRepository.writeList(collection, java.util.List.of(collection));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        var root = new JSONFileReaderRepository("update-data.json", tempDir.resolve("data.json").toString()).readJson();
+        for (int i = 0; i < writers; i++) {
+            assertEquals("collection" + i, root.get("collection" + i).get(0).asText());
+        }
+        assertEquals(1, root.get("persons").size());
+        assertTrue(jsonFileReaderRepository.getCommitWrites() <= writers);
+    }
+
+    @Test
+    void testBinarySnapshotIsWrittenAndPreferredWhileJsonUnchanged() throws IOException {
+        Path smileFile = tempDir.resolve("data.json.smile");
+        var first = withBinarySnapshot();
+        assertEquals(1, first.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+        assertTrue(Files.exists(smileFile));
+
+        // corrupting only the JSON content while keeping its size and timestamp proves the binary copy is read
+        Path jsonFile = tempDir.resolve("data.json");
+        var modified = Files.getLastModifiedTime(jsonFile);
+        String json = Files.readString(jsonFile);
+        Files.writeString(jsonFile, json.replace("John", "Jean"));
+        Files.setLastModifiedTime(jsonFile, modified);
+
+        var restarted = withBinarySnapshot();
+        assertEquals("John", restarted.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).get(0).getFirstName());
+    }
+
+    @Test
+    void testStaleBinarySnapshotIsIgnored() throws IOException {
+        var first = withBinarySnapshot();
+        var persons = first.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        assertTrue(Files.exists(tempDir.resolve("data.json.smile")));
+
+        Files.writeString(tempDir.resolve("data.json"), """
+                { "persons": [ { "firstName": "Ann" }, { "firstName": "Ben" } ] }
+                """);
+
+        var restarted = withBinarySnapshot();
+        assertEquals(2, restarted.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+        assertEquals(1, persons.size());
+    }
+
+    @Test
+    void testCorruptBinarySnapshotFallsBackToJson() throws IOException {
+        withBinarySnapshot().readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class);
+        Files.write(tempDir.resolve("data.json.smile"), new byte[]{1, 2, 3});
+
+        var restarted = withBinarySnapshot();
+        assertEquals("John", restarted.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).get(0).getFirstName());
+    }
+
+    @Test
+    void testParallelLoadMatchesStreamingLoad() {
+        var parallel = new JSONFileReaderRepository("update-data.json", tempDir.resolve("data.json").toString(), "snapshot",
+                100, 1000, 100, "single-document", "", false, true);
+        var streaming = configured("snapshot", 100, 1000, 100, "single-document");
+
+        assertEquals(streaming.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size(),
+                parallel.readList("persons", com.openclassroom.safteynetalertsrefactor.model.Person.class).size());
+        assertEquals(streaming.readList("firestations", com.openclassroom.safteynetalertsrefactor.model.FireStation.class).size(),
+                parallel.readList("firestations", com.openclassroom.safteynetalertsrefactor.model.FireStation.class).size());
+    }
 }
@@ -16,13 +16,16 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class MedicalRecordsRepositoryTest {
 
+    private final DenseIds ids = new DenseIds();
+
     @Mock
-    private JSONFileReaderRepository jsonFileReaderRepository;
+    private StorageEngine storageEngine;
 
     private MedicalRecordsRepository medicalRecordsRepository;
 
@@ -48,10 +51,10 @@ class MedicalRecordsRepositoryTest {
                 sampleRecord("Jane", "Doe")
         );
 
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(records);
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         List<MedicalRecord> all = medicalRecordsRepository.findAll();
@@ -61,10 +64,10 @@ class MedicalRecordsRepositoryTest {
 
     @Test
     void add_shouldAddRecordAndPersist() {
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(new ArrayList<>());
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         MedicalRecord medicalrecord = sampleRecord("John", "Doe");
@@ -74,17 +77,17 @@ class MedicalRecordsRepositoryTest {
         assertEquals(1, all.size());
         assertEquals("John", all.get(0).getFirstName());
 
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("medicalrecords"), anyList());
+        verify(storageEngine, times(1))
+                .addElement(eq("medicalrecords"), any(MedicalRecord.class), anyList());
     }
 
     @Test
     void findByName_shouldReturnRecordWhenExists() {
         List<MedicalRecord> records = List.of(sampleRecord("John", "Doe"));
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(records);
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         Optional<MedicalRecord> result = medicalRecordsRepository.findByName("John", "Doe");
@@ -95,10 +98,10 @@ class MedicalRecordsRepositoryTest {
 
     @Test
     void findByName_shouldReturnEmptyWhenNotFound() {
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(new ArrayList<>());
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         Optional<MedicalRecord> result = medicalRecordsRepository.findByName("John", "Doe");
@@ -111,10 +114,10 @@ class MedicalRecordsRepositoryTest {
         List<MedicalRecord> records = new ArrayList<>();
         records.add(existing);
 
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(records);
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         MedicalRecord updated = new MedicalRecord();
@@ -125,28 +128,31 @@ class MedicalRecordsRepositoryTest {
         boolean ok = medicalRecordsRepository.updateMedicalRecord("John", "Doe", updated);
 
         assertTrue(ok);
-        assertEquals("02/02/2010", existing.getBirthdate());
-        assertEquals(List.of("newMed"), existing.getMedications());
-        assertEquals(List.of("newAllergy"), existing.getAllergies());
-
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("medicalrecords"), anyList());
+        MedicalRecord current = medicalRecordsRepository.findByName("John", "Doe").orElseThrow();
+        assertNotSame(existing, current);
+        assertEquals("02/02/2010", current.getBirthdate());
+        assertEquals(List.of("newMed"), current.getMedications());
+        assertEquals(List.of("newAllergy"), current.getAllergies());
+        assertSame(current, medicalRecordsRepository.findAll().get(0));
+
+        verify(storageEngine, times(1))
+                .updateElement(eq("medicalrecords"), any(MedicalRecord.class), any(MedicalRecord.class), anyList());
     }
 
     @Test
     void updateMedicalRecord_shouldReturnFalseWhenNotFound() {
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(new ArrayList<>());
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         boolean ok = medicalRecordsRepository.updateMedicalRecord(
                 "John", "Doe", sampleRecord("John", "Doe"));
 
         assertFalse(ok);
-        verify(jsonFileReaderRepository, never())
-                .writeList(eq("medicalrecords"), anyList());
+        verify(storageEngine, never())
+                .updateElement(eq("medicalrecords"), any(MedicalRecord.class), any(MedicalRecord.class), anyList());
     }
 
     @Test
@@ -155,10 +161,10 @@ class MedicalRecordsRepositoryTest {
         List<MedicalRecord> records = new ArrayList<>();
         records.add(existing);
 
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(records);
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         boolean deleted = medicalRecordsRepository.deleteByName("John", "Doe");
@@ -166,23 +172,23 @@ class MedicalRecordsRepositoryTest {
         assertTrue(deleted);
         assertEquals(0, medicalRecordsRepository.findAll().size());
 
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("medicalrecords"), anyList());
+        verify(storageEngine, times(1))
+                .removeElements(eq("medicalrecords"), anyList(), anyList());
     }
 
     @Test
     void deleteByName_shouldReturnFalseWhenNotFound() {
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(new ArrayList<>());
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         boolean deleted = medicalRecordsRepository.deleteByName("John", "Doe");
 
         assertFalse(deleted);
-        verify(jsonFileReaderRepository, never())
-                .writeList(eq("medicalrecords"), anyList());
+        verify(storageEngine, never())
+                .removeElements(eq("medicalrecords"), anyList(), anyList());
     }
 
     @Test
@@ -190,15 +196,125 @@ class MedicalRecordsRepositoryTest {
         List<MedicalRecord> records = new ArrayList<>();
         records.add(sampleRecord("John", "Doe"));
 
-        when(jsonFileReaderRepository.readList("medicalrecords", MedicalRecord.class))
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
                 .thenReturn(records);
 
-        medicalRecordsRepository = new MedicalRecordsRepository(jsonFileReaderRepository);
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
         medicalRecordsRepository.init();
 
         medicalRecordsRepository.persist();
 
-        verify(jsonFileReaderRepository, times(1))
+        verify(storageEngine, times(1))
                 .writeList(eq("medicalrecords"), anyList());
     }
-}
\ No newline at end of file
+
+    @Test
+    void findByName_shouldFollowIndexThroughAddAndDelete() {
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
+                .thenReturn(new ArrayList<>(List.of(sampleRecord("John", "Doe"))));
+
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
+        medicalRecordsRepository.init();
+
+        assertEquals(0, medicalRecordsRepository.lastNameVersion("Doe"));
+        MedicalRecord added = sampleRecord("Jane", "Doe");
+        medicalRecordsRepository.add(added);
+        assertSame(added, medicalRecordsRepository.findByName("Jane", "Doe").orElseThrow());
+        long afterAdd = medicalRecordsRepository.lastNameVersion("doe");
+        assertTrue(afterAdd > 0);
+        medicalRecordsRepository.updateMedicalRecord("Jane", "Doe", sampleRecord("Jane", "Doe"));
+        assertTrue(medicalRecordsRepository.lastNameVersion("DOE") > afterAdd);
+
+        assertTrue(medicalRecordsRepository.deleteByName("John", "Doe"));
+        assertTrue(medicalRecordsRepository.findByName("John", "Doe").isEmpty());
+        assertTrue(medicalRecordsRepository.findByName("Jane", "Doe").isPresent());
+    }
+
+    @Test
+    void offHeap_shouldKeepListsReadableThroughUpdatesAndCompaction() {
+        List<MedicalRecord> loaded = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            loaded.add(sampleRecord("First" + i, "Doe"));
+        }
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class)).thenReturn(loaded);
+
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, true, ids);
+        medicalRecordsRepository.init();
+
+        assertTrue(medicalRecordsRepository.offHeapBytes() > 0);
+        MedicalRecord first = medicalRecordsRepository.findByName("First0", "Doe").orElseThrow();
+        assertEquals(List.of("med1", "med2"), first.getMedications());
+        assertEquals(List.of("allergy1"), first.getAllergies());
+
+        // enough replaced lists to push the arena over its compaction threshold
+        MedicalRecord changes = sampleRecord("First0", "Doe");
+        changes.setMedications(List.of("x".repeat(10_000)));
+        for (int i = 0; i < 200; i++) {
+            assertTrue(medicalRecordsRepository.updateMedicalRecord("First" + (i % 100), "Doe", changes));
+        }
+
+        assertEquals(List.of("med1", "med2"), first.getMedications());
+        assertEquals(100, medicalRecordsRepository.findAll().size());
+        for (MedicalRecord current : medicalRecordsRepository.findAll()) {
+            assertSame(current, medicalRecordsRepository.findByName(current.getFirstName(), "Doe").orElseThrow());
+            assertEquals(List.of("x".repeat(10_000)), current.getMedications());
+            assertEquals(List.of("allergy1"), current.getAllergies());
+        }
+        assertTrue(medicalRecordsRepository.offHeapBytes() < 3L * (1 << 20));
+    }
+
+    @Test
+    void offHeap_shouldBeOffByDefault() {
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
+                .thenReturn(new ArrayList<>(List.of(sampleRecord("John", "Doe"))));
+
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
+        medicalRecordsRepository.init();
+
+        assertEquals(0, medicalRecordsRepository.offHeapBytes());
+    }
+
+    @Test
+    void storedRecords_shouldShareRepeatedTerms_untilTheLastOneIsGone() {
+        MedicalRecord john = new MedicalRecord("John", "Boyd", "03/06/1984",
+                List.of(new String("aznol:350mg")), List.of(new String("nillacilan")));
+        MedicalRecord jacob = new MedicalRecord("Jacob", "Boyd", "03/06/1989",
+                List.of(new String("aznol:350mg")), List.of(new String("nillacilan")));
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class)).thenReturn(new ArrayList<>(List.of(john)));
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
+        medicalRecordsRepository.init();
+
+        medicalRecordsRepository.add(jacob);
+        assertSame(john.getMedications().get(0), jacob.getMedications().get(0));
+        assertSame(john.getAllergies().get(0), jacob.getAllergies().get(0));
+        assertEquals(2, medicalRecordsRepository.sharedTermCount());
+
+        // an unstored record, such as a rejected request body, adds nothing
+        new MedicalRecord("Ann", "Other", "01/01/2000", List.of("tradoxidine:400mg"), List.of());
+        assertEquals(2, medicalRecordsRepository.sharedTermCount());
+
+        medicalRecordsRepository.updateMedicalRecord("Jacob", "Boyd",
+                new MedicalRecord("Jacob", "Boyd", "03/06/1989", List.of("aznol:350mg"), List.of("peanut")));
+        assertEquals(3, medicalRecordsRepository.sharedTermCount());
+
+        medicalRecordsRepository.deleteByName("John", "Boyd");
+        medicalRecordsRepository.deleteByName("Jacob", "Boyd");
+        assertEquals(0, medicalRecordsRepository.sharedTermCount());
+    }
+
+    @Test
+    void findByNameId_shouldFindTheRecordOfThePersonsOfThatName() {
+        when(storageEngine.readList("medicalrecords", MedicalRecord.class))
+                .thenReturn(new ArrayList<>(List.of(sampleRecord("John", "Doe"))));
+
+        medicalRecordsRepository = new MedicalRecordsRepository(storageEngine, ids);
+        medicalRecordsRepository.init();
+
+        assertEquals("John", medicalRecordsRepository.findByNameId(ids.nameId("John", "Doe")).orElseThrow().getFirstName());
+        assertTrue(medicalRecordsRepository.findByNameId(ids.nameId("Nobody", "Doe")).isEmpty());
+        assertTrue(medicalRecordsRepository.findByNameId(0).isEmpty());
+
+        assertTrue(medicalRecordsRepository.deleteByName("John", "Doe"));
+        assertTrue(medicalRecordsRepository.findByNameId(ids.nameId("John", "Doe")).isEmpty());
+    }
+}
@@ -0,0 +1,174 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MutationJournalTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MutationJournal journal;
+    private ObjectNode root;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        journal = new MutationJournal(tempDir.resolve("data.json.journal"), objectMapper);
+        root = (ObjectNode) objectMapper.readTree("""
+                {
+                  "persons": [ { "firstName": "John", "lastName": "Doe", "city": "Culver" } ],
+                  "firestations": [ { "address": "1 Main St", "station": 1 } ]
+                }
+                """);
+    }
+
+    private ObjectNode person(String firstName, String lastName, String city) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("firstName", firstName);
+        node.put("lastName", lastName);
+        node.put("city", city);
+        return node;
+    }
+
+    @Test
+    void append_shouldWriteOneCompactLinePerRecord() throws IOException {
+        assertTrue(journal.isEmpty());
+
+        journal.append("persons", MutationJournal.ADD, person("Jane", "Doe", "Culver"));
+        int size = journal.append("persons", MutationJournal.UPDATE, person("Jane", "Doe", "Paris"));
+
+        assertEquals(2, size);
+        assertEquals(2, Files.readAllLines(journal.getPath()).size());
+    }
+
+    @Test
+    void replay_shouldApplyAddUpdateAndRemoveInOrder() {
+        journal.append("persons", MutationJournal.ADD, person("Jane", "Doe", "Culver"));
+        journal.append("persons", MutationJournal.UPDATE, person("John", "Doe", "Paris"));
+        journal.append("firestations", MutationJournal.REMOVE,
+                objectMapper.createArrayNode().add(fireStation("1 Main St", 1)));
+
+        journal.replay(root);
+
+        assertEquals(2, root.get("persons").size());
+        assertEquals("Jane", root.get("persons").get(0).get("firstName").asText());
+        assertEquals("Paris", root.get("persons").get(1).get("city").asText());
+        assertEquals(0, root.get("firestations").size());
+    }
+
+    private ObjectNode fireStation(String address, int station) {
+        return objectMapper.createObjectNode().put("address", address).put("station", station);
+    }
+
+    @Test
+    void replay_shouldMatchFireStationsOnAddressAndStation_whenAnAddressHasTwoStations() {
+        root.withArray("firestations").add(fireStation("1 Main St", 2));
+
+        journal.append("firestations", MutationJournal.UPDATE, fireStation("1 Main St", 3), fireStation("1 Main St", 2));
+        journal.append("firestations", MutationJournal.REMOVE, objectMapper.createArrayNode().add(fireStation("1 Main St", 1)));
+
+        journal.replay(root);
+
+        assertEquals(1, root.get("firestations").size());
+        assertEquals(fireStation("1 Main St", 3), root.get("firestations").get(0));
+    }
+
+    @Test
+    void replay_shouldMatchAnUpdateOnTheElementItReplaced() throws IOException {
+        journal.append("firestations", MutationJournal.UPDATE, fireStation("1 Main St", 4), fireStation("1 Main St", 1));
+
+        assertTrue(Files.readString(journal.getPath()).contains("\"old\""));
+        journal.replay(root);
+
+        assertEquals(1, root.get("firestations").size());
+        assertEquals(4, root.get("firestations").get(0).get("station").asInt());
+    }
+
+    @Test
+    void replay_shouldMatchAStationNumberWrittenAsAString() {
+        root.withArray("firestations").add(objectMapper.createObjectNode().put("address", "1 Main St").put("station", "2"));
+
+        journal.append("firestations", MutationJournal.REMOVE, objectMapper.createArrayNode().add(fireStation("1 Main St", 2)));
+        journal.replay(root);
+
+        assertEquals(1, root.get("firestations").size());
+        assertEquals(1, root.get("firestations").get(0).get("station").asInt());
+    }
+
+    @Test
+    void replay_shouldKeepTwoIdenticalAdds() {
+        journal.append("persons", MutationJournal.ADD, person("Jane", "Doe", "Culver"));
+        journal.append("persons", MutationJournal.ADD, person("Jane", "Doe", "Culver"));
+
+        journal.replay(root);
+
+        assertEquals(3, root.get("persons").size());
+    }
+
+    @Test
+    void replay_shouldSkipRecordsAtOrBelowTheSnapshotSequence() {
+        journal.append("persons", MutationJournal.ADD, person("Jane", "Doe", "Culver"));
+        journal.append("persons", MutationJournal.REMOVE, objectMapper.createArrayNode().add(person("John", "Doe", "Culver")));
+        root.put(MutationJournal.SEQUENCE_FIELD, 1);
+
+        journal.replay(root);
+
+        assertEquals(0, root.get("persons").size());
+        assertEquals(2, root.get(MutationJournal.SEQUENCE_FIELD).asLong());
+    }
+
+    @Test
+    void replay_shouldApplyRecordsWithoutSequence() throws IOException {
+        Files.writeString(journal.getPath(), "{\"c\":\"persons\",\"op\":\"add\",\"v\":{\"firstName\":\"Jane\"}}\n");
+        root.put(MutationJournal.SEQUENCE_FIELD, 5);
+
+        journal.replay(root);
+
+        assertEquals(2, root.get("persons").size());
+    }
+
+    @Test
+    void append_shouldNumberRecordsAfterTruncateAndResume() {
+        journal.append("persons", MutationJournal.SET, objectMapper.createArrayNode());
+        journal.truncate();
+        journal.append("persons", MutationJournal.SET, objectMapper.createArrayNode());
+        assertEquals(2, journal.lastSequence());
+
+        MutationJournal reopened = new MutationJournal(journal.getPath(), objectMapper);
+        reopened.resumeAfter(7);
+        reopened.append("persons", MutationJournal.SET, objectMapper.createArrayNode());
+
+        assertEquals(8, reopened.lastSequence());
+    }
+
+    @Test
+    void replay_shouldStopAtTornRecord() throws IOException {
+        journal.append("persons", MutationJournal.ADD, person("Jane", "Doe", "Culver"));
+        Files.writeString(journal.getPath(), "{\"c\":\"persons\",\"op\":\"ad", StandardOpenOption.APPEND);
+
+        journal.replay(root);
+
+        assertEquals(2, root.get("persons").size());
+    }
+
+    @Test
+    void truncate_shouldEmptyJournal() {
+        journal.append("persons", MutationJournal.SET, objectMapper.createArrayNode());
+
+        journal.truncate();
+
+        assertTrue(journal.isEmpty());
+        assertFalse(Files.exists(journal.getPath()));
+    }
+}
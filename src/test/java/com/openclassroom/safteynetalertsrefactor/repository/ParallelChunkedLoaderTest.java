@@ -0,0 +1,88 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelChunkedLoaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    // one element per chunk so every separator is a chunk boundary
+    private final ParallelChunkedLoader loader = new ParallelChunkedLoader(objectMapper, pool, 1);
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void load_shouldBindEveryElementInFileOrder() throws IOException {
+        StringBuilder json = new StringBuilder("{ \"persons\": [");
+        for (int i = 0; i < 100; i++) {
+            json.append(i == 0 ? "" : ",").append("\n  { \"firstName\": \"P").append(i).append("\", \"lastName\": \"L\" }");
+        }
+        json.append("\n] }");
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, json);
+
+        Map<String, List<?>> loaded = loader.load(file, Map.of("persons", Person.class));
+
+        assertEquals(100, loaded.get("persons").size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("P" + i, ((Person) loaded.get("persons").get(i)).getFirstName());
+        }
+    }
+
+    @Test
+    void load_shouldIgnoreStructuralCharactersInsideStringsAndNestedArrays() throws IOException {
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, """
+                {
+                  "note": "persons: [not, an, array]",
+                  "persons": [ { "firstName": "A, \\"quoted\\" [x]", "lastName": "Zoë" }, { "firstName": "B" } ],
+                  "medicalrecords": [ { "firstName": "A", "medications": ["a:1mg", "b:2mg"], "allergies": [] } ],
+                  "firestations": []
+                }
+                """);
+
+        Map<String, List<?>> loaded = loader.load(file, Map.of("persons", Person.class, "medicalrecords", MedicalRecord.class));
+
+        assertEquals(2, loaded.size());
+        Person first = (Person) loaded.get("persons").get(0);
+        assertEquals("A, \"quoted\" [x]", first.getFirstName());
+        assertEquals("Zoë", first.getLastName());
+        assertEquals(List.of("a:1mg", "b:2mg"), ((MedicalRecord) loaded.get("medicalrecords").get(0)).getMedications());
+    }
+
+    @Test
+    void load_shouldReturnEmptyListForEmptyArray() throws IOException {
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{ \"persons\": [ ] }");
+
+        assertTrue(loader.load(file, Map.of("persons", Person.class)).get("persons").isEmpty());
+    }
+
+    @Test
+    void load_shouldRejectTruncatedFile() throws IOException {
+        Path file = tempDir.resolve("data.json");
+        Files.writeString(file, "{ \"persons\": [ { \"firstName\": \"A\" }");
+
+        assertThrows(IOException.class, () -> loader.load(file, Map.of("persons", Person.class)));
+    }
+}
@@ -16,13 +16,16 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class PersonRepositoryTest {
 
+    private final DenseIds ids = new DenseIds();
+
     @Mock
-    private JSONFileReaderRepository jsonFileReaderRepository;
+    private StorageEngine storageEngine;
 
     private PersonRepository personRepository;
 
@@ -49,10 +52,10 @@ class PersonRepositoryTest {
                 samplePerson("John", "Doe"),
                 samplePerson("Jane", "Doe")
         );
-        when(jsonFileReaderRepository.readList("persons", Person.class))
+        when(storageEngine.readList("persons", Person.class))
                 .thenReturn(initialPersons);
 
-        personRepository = new PersonRepository(jsonFileReaderRepository);
+        personRepository = new PersonRepository(storageEngine, ids);
         personRepository.init();
 
         List<Person> all = personRepository.findAll();
@@ -62,10 +65,10 @@ class PersonRepositoryTest {
 
     @Test
     void add_shouldAddPersonAndPersistList() {
-        when(jsonFileReaderRepository.readList("persons", Person.class))
+        when(storageEngine.readList("persons", Person.class))
                 .thenReturn(new ArrayList<>()); // start empty
 
-        personRepository = new PersonRepository(jsonFileReaderRepository);
+        personRepository = new PersonRepository(storageEngine, ids);
         personRepository.init();
 
         Person p = samplePerson("John", "Doe");
@@ -76,8 +79,8 @@ class PersonRepositoryTest {
         assertEquals("John", all.get(0).getFirstName());
 
         // verify writeList called with updated list
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("persons"), anyList());
+        verify(storageEngine, times(1))
+                .addElement(eq("persons"), any(Person.class), anyList());
     }
 
     @Test
@@ -86,10 +89,10 @@ class PersonRepositoryTest {
         initialPersons.add(samplePerson("John", "Doe"));
         initialPersons.add(samplePerson("Jane", "Doe"));
 
-        when(jsonFileReaderRepository.readList("persons", Person.class))
+        when(storageEngine.readList("persons", Person.class))
                 .thenReturn(initialPersons);
 
-        personRepository = new PersonRepository(jsonFileReaderRepository);
+        personRepository = new PersonRepository(storageEngine, ids);
         personRepository.init();
 
         Optional<Person> result = personRepository.findByName("Jane", "Doe");
@@ -100,10 +103,10 @@ class PersonRepositoryTest {
 
     @Test
     void findByName_shouldReturnEmptyWhenNotFound() {
-        when(jsonFileReaderRepository.readList("persons", Person.class))
+        when(storageEngine.readList("persons", Person.class))
                 .thenReturn(new ArrayList<>());
 
-        personRepository = new PersonRepository(jsonFileReaderRepository);
+        personRepository = new PersonRepository(storageEngine, ids);
         personRepository.init();
 
         Optional<Person> result = personRepository.findByName("Nobody", "Here");
@@ -117,10 +120,10 @@ class PersonRepositoryTest {
         List<Person> initialPersons = new ArrayList<>();
         initialPersons.add(john);
 
-        when(jsonFileReaderRepository.readList("persons", Person.class))
+        when(storageEngine.readList("persons", Person.class))
                 .thenReturn(initialPersons);
 
-        personRepository = new PersonRepository(jsonFileReaderRepository);
+        personRepository = new PersonRepository(storageEngine, ids);
         personRepository.init();
 
         boolean deleted = personRepository.deletePerson("John", "Doe");
@@ -130,24 +133,24 @@ class PersonRepositoryTest {
 
         // capture list passed to writeList
         ArgumentCaptor<List<Person>> captor = ArgumentCaptor.forClass(List.class);
-        verify(jsonFileReaderRepository, times(1))
-                .writeList(eq("persons"), captor.capture());
+        verify(storageEngine, times(1))
+                .removeElements(eq("persons"), anyList(), captor.capture());
         assertEquals(0, captor.getValue().size());
     }
 
     @Test
     void deletePerson_shouldReturnFalseAndNotPersist_whenNotFound() {
-        when(jsonFileReaderRepository.readList("persons", Person.class))
+        when(storageEngine.readList("persons", Person.class))
                 .thenReturn(new ArrayList<>());
 
-        personRepository = new PersonRepository(jsonFileReaderRepository);
+        personRepository = new PersonRepository(storageEngine, ids);
         personRepository.init();
 
         boolean deleted = personRepository.deletePerson("John", "Doe");
 
         assertFalse(deleted);
-        verify(jsonFileReaderRepository, never())
-                .writeList(eq("persons"), anyList());
+        verify(storageEngine, never())
+                .removeElements(eq("persons"), anyList(), anyList());
     }
 
     @Test
@@ -155,15 +158,225 @@ class PersonRepositoryTest {
         List<Person> initialPersons = new ArrayList<>();
         initialPersons.add(samplePerson("John", "Doe"));
 
-        when(jsonFileReaderRepository.readList("persons", Person.class))
+        when(storageEngine.readList("persons", Person.class))
                 .thenReturn(initialPersons);
 
-        personRepository = new PersonRepository(jsonFileReaderRepository);
+        personRepository = new PersonRepository(storageEngine, ids);
         personRepository.init();
 
         personRepository.persist();
 
-        verify(jsonFileReaderRepository, times(1))
+        verify(storageEngine, times(1))
                 .writeList(eq("persons"), anyList());
     }
-}
\ No newline at end of file
+
+    @Test
+    void findByName_shouldFollowIndexThroughAddAndDeleteOfSameName() {
+        Person first = samplePerson("John", "Doe");
+        Person second = samplePerson("John", "Doe");
+        second.setCity("Paris");
+        when(storageEngine.readList("persons", Person.class))
+                .thenReturn(new ArrayList<>(List.of(first)));
+
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+
+        personRepository.add(second);
+        assertSame(second, personRepository.findByName("John", "Doe").orElseThrow());
+
+        personRepository.deletePerson("John", "Doe");
+        assertSame(first, personRepository.findByName("John", "Doe").orElseThrow());
+
+        personRepository.deletePerson("John", "Doe");
+        assertTrue(personRepository.findByName("John", "Doe").isEmpty());
+    }
+
+    @Test
+    void findByAddress_shouldMatchNormalizedAddressAndFollowUpdates() {
+        Person john = samplePerson("John", "Doe");
+        Person jane = samplePerson("Jane", "Doe");
+        jane.setAddress("  123   MAIN st ");
+        when(storageEngine.readList("persons", Person.class))
+                .thenReturn(new ArrayList<>(List.of(john, jane)));
+
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+        assertEquals(List.of(john, jane), personRepository.findByAddress("123 main St"));
+
+        Person moved = samplePerson("Jane", "Doe");
+        moved.setAddress("9 Elm St");
+        Person current = personRepository.updatePerson("Jane", "Doe", moved).orElseThrow().current();
+        assertEquals(List.of(john), personRepository.findByAddress("123 Main St"));
+        assertEquals(List.of(current), personRepository.findByAddress("9 elm st"));
+
+        personRepository.deletePerson("John", "Doe");
+        assertTrue(personRepository.findByAddress("123 Main St").isEmpty());
+        assertTrue(personRepository.findByAddress(null).isEmpty());
+    }
+
+    @Test
+    void findEmailsByCity_shouldDeduplicateAndBumpVersionOnlyOnChange() {
+        Person john = samplePerson("John", "Doe");
+        Person jane = samplePerson("Jane", "Doe");
+        jane.setEmail(john.getEmail());
+        when(storageEngine.readList("persons", Person.class))
+                .thenReturn(new ArrayList<>(List.of(john, jane)));
+
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+
+        CityEmails first = personRepository.findEmailsByCity(" townsville ");
+        assertEquals(List.of("john.doe@mail.com"), first.emails());
+        assertSame(first, personRepository.findEmailsByCity("TOWNSVILLE"));
+
+        // removing one of two users of a shared email leaves the list unchanged
+        personRepository.deletePerson("Jane", "Doe");
+        assertSame(first, personRepository.findEmailsByCity("Townsville"));
+
+        Person changes = samplePerson("John", "Doe");
+        changes.setEmail("john@new.com");
+        personRepository.updatePerson("John", "Doe", changes);
+        CityEmails second = personRepository.findEmailsByCity("Townsville");
+        assertEquals(List.of("john@new.com"), second.emails());
+        assertTrue(second.version() > first.version());
+        assertThrows(UnsupportedOperationException.class, () -> second.emails().add("x"));
+        assertTrue(personRepository.findEmailsByCity("Nowhere").emails().isEmpty());
+        assertSame(personRepository.findEmailsByCity("Nowhere"), personRepository.findEmailsByCity("Elsewhere"));
+        assertTrue(personRepository.findEmailsByCity(null).emails().isEmpty());
+    }
+
+    @Test
+    void findByLastName_shouldMatchCaseInsensitivelyAndBumpVersionOnChange() {
+        Person john = samplePerson("John", "Doe");
+        when(storageEngine.readList("persons", Person.class))
+                .thenReturn(new ArrayList<>(List.of(john, samplePerson("Ann", "Smith"))));
+
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+        long loaded = personRepository.lastNameVersion("doe");
+
+        Person jane = samplePerson("Jane", "DOE");
+        personRepository.add(jane);
+        assertEquals(List.of(jane, john), personRepository.findByLastName(" doe"));
+        long added = personRepository.lastNameVersion("Doe");
+        assertTrue(added > loaded);
+
+        Person changes = samplePerson("John", "Doe");
+        changes.setPhone("999");
+        Person current = personRepository.updatePerson("John", "Doe", changes).orElseThrow().current();
+        assertTrue(personRepository.lastNameVersion("DOE") > added);
+
+        personRepository.deletePerson("Jane", "DOE");
+        assertEquals(List.of(current), personRepository.findByLastName("Doe"));
+        assertEquals(0, personRepository.lastNameVersion("Nobody"));
+    }
+
+    @Test
+    void storedPersons_shouldShareRepeatedValues_untilTheLastOneIsGone() {
+        Person john = new Person("John", "Boyd", new String("1509 Culver St"), new String("Culver"), "97451", new String("841-874-6512"), null);
+        Person jacob = new Person("Jacob", "Boyd", new String("1509 Culver St"), new String("Culver"), "97451", new String("841-874-6512"), null);
+        when(storageEngine.readList("persons", Person.class)).thenReturn(new ArrayList<>(List.of(john)));
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+
+        personRepository.add(jacob);
+        assertSame(john.getAddress(), jacob.getAddress());
+        assertSame(john.getCity(), jacob.getCity());
+        assertSame(john.getLastName(), jacob.getLastName());
+        assertSame(john.getPhone(), jacob.getPhone());
+        assertEquals(5, personRepository.sharedValueCount());
+
+        // an unstored person, such as a rejected request body, adds nothing
+        new Person("Ann", "Other", "9 Elm St", "Elsewhere", "00000", null, null);
+        assertEquals(5, personRepository.sharedValueCount());
+
+        Person moved = new Person("Jacob", "Boyd", "9 Elm St", "Culver", "97451", null, null);
+        personRepository.updatePerson("Jacob", "Boyd", moved);
+        assertEquals(6, personRepository.sharedValueCount());
+
+        personRepository.deletePerson("John", "Boyd");
+        personRepository.deletePerson("Jacob", "Boyd");
+        assertEquals(0, personRepository.sharedValueCount());
+    }
+
+    @Test
+    void findAll_shouldShareOneImmutableSnapshot_untilTheNextWrite() {
+        when(storageEngine.readList("persons", Person.class))
+                .thenReturn(new ArrayList<>(List.of(samplePerson("John", "Doe"))));
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+
+        List<Person> before = personRepository.findAll();
+        assertSame(before, personRepository.findAll());
+        assertThrows(UnsupportedOperationException.class, () -> before.add(samplePerson("Jane", "Doe")));
+
+        personRepository.add(samplePerson("Jane", "Doe"));
+
+        assertEquals(1, before.size());
+        assertEquals(2, personRepository.findAll().size());
+        assertNotSame(before, personRepository.findAll());
+    }
+
+    @Test
+    void updatePerson_shouldSwapInANewInstanceAndKeepIndexesInPlace() {
+        Person john = samplePerson("John", "Doe");
+        Person jane = samplePerson("Jane", "Doe");
+        when(storageEngine.readList("persons", Person.class))
+                .thenReturn(new ArrayList<>(List.of(john, jane)));
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+        CityEmails emails = personRepository.findEmailsByCity("Townsville");
+
+        Person changes = samplePerson("ignored", "ignored");
+        changes.setPhone("999");
+        Replacement<Person> replaced = personRepository.updatePerson("John", "Doe", changes).orElseThrow();
+
+        assertSame(john, replaced.previous());
+        assertEquals("111-222-3333", john.getPhone());
+        Person current = replaced.current();
+        assertEquals("John", current.getFirstName());
+        assertEquals("999", current.getPhone());
+        assertSame(current, personRepository.findByName("John", "Doe").orElseThrow());
+        assertEquals(List.of(current, jane), personRepository.findAll());
+        assertEquals(List.of(current, jane), personRepository.findByAddress("123 Main St"));
+        assertEquals(List.of(current, jane), personRepository.findByLastName("Doe"));
+        verify(storageEngine, times(1)).updateElement("persons", john, current, List.of(current, jane));
+
+        changes.setEmail("john@new.com");
+        changes.setAddress("9 Elm St");
+        current = personRepository.updatePerson("John", "Doe", changes).orElseThrow().current();
+        assertEquals(List.of(jane), personRepository.findByAddress("123 Main St"));
+        assertEquals(List.of(current), personRepository.findByAddress("9 elm st"));
+        assertEquals(List.of("jane.doe@mail.com", "john@new.com"), personRepository.findEmailsByCity("Townsville").emails());
+        assertNotSame(emails, personRepository.findEmailsByCity("Townsville"));
+        assertTrue(personRepository.updatePerson("Nobody", "Doe", changes).isEmpty());
+    }
+
+    @Test
+    void nameAndAddressIds_shouldBeAssignedOnLoadAndInsert_andKeptByUpdates() {
+        Person john = samplePerson("John", "Doe");
+        when(storageEngine.readList("persons", Person.class)).thenReturn(new ArrayList<>(List.of(john)));
+
+        personRepository = new PersonRepository(storageEngine, ids);
+        personRepository.init();
+        Person jane = samplePerson("Jane", "Doe");
+        personRepository.add(jane);
+
+        assertEquals(ids.nameId("John", "Doe"), john.getNameId());
+        assertEquals(ids.findNameId("Jane", "Doe"), jane.getNameId());
+        assertNotEquals(john.getNameId(), jane.getNameId());
+        int address = ids.findAddressId(" 123  MAIN st");
+        assertNotEquals(0, address);
+        assertEquals(List.of(jane, john), personRepository.findByAddressId(address));
+
+        Person changes = samplePerson("John", "Doe");
+        changes.setAddress("9 Elm St");
+        Person current = personRepository.updatePerson("John", "Doe", changes).orElseThrow().current();
+
+        assertEquals(john.getNameId(), current.getNameId());
+        assertEquals(List.of(jane), personRepository.findByAddressId(address));
+        assertEquals(List.of(current), personRepository.findByAddressId(ids.findAddressId("9 elm st")));
+        assertEquals(0, ids.findAddressId("never seen before st"));
+        assertTrue(personRepository.findByAddress("never seen before st").isEmpty());
+    }
+}
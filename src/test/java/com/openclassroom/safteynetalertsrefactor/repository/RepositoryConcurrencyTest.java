@@ -0,0 +1,152 @@
+package com.openclassroom.safteynetalertsrefactor.repository;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Readers and writers hammer the repositories from several threads at once.
+ * Every write keeps a person's address, city and phone on the same suffix, so a reader that sees
+ * mismatched suffixes has observed a torn update; any exception, such as a
+ * ConcurrentModificationException from an index, fails the test as well.
+ */
+class RepositoryConcurrencyTest {
+
+    private static final int PERSONS = 200;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int OPERATIONS = 2_000;
+
+    private final DenseIds ids = new DenseIds();
+    private final Today today = new Today(Clock.systemDefaultZone());
+
+    /* Keeps everything in memory; the storage layer is not under test here. */
+    private static final class InMemoryStorage implements StorageEngine {
+        private final Map<String, List<?>> collections = new ConcurrentHashMap<>();
+
+        InMemoryStorage(List<Person> persons, List<MedicalRecord> records) {
+            collections.put("persons", persons);
+            collections.put("medicalrecords", records);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> readList(String collection, Class<T> elementType) {
+            return new ArrayList<>((List<T>) collections.getOrDefault(collection, List.of()));
+        }
+
+        @Override
+        public <T> void writeList(String collection, List<T> items) {
+        }
+
+        @Override
+        public <T> void addElement(String collection, T element, List<T> items) {
+        }
+
+        @Override
+        public <T> void updateElement(String collection, T previous, T element, List<T> items) {
+        }
+
+        @Override
+        public <T> void removeElements(String collection, List<T> removed, List<T> items) {
+        }
+    }
+
+    private static Person person(int id, int version) {
+        return new Person("First" + id, "Last" + (id % 10), "Addr " + version, "City " + version, "00000",
+                "Phone " + version, "p" + id + "@mail.com");
+    }
+
+    private static void assertConsistent(Person person) {
+        String version = person.getAddress().substring("Addr ".length());
+        if (!person.getCity().equals("City " + version) || !person.getPhone().equals("Phone " + version)) {
+            throw new AssertionError("Torn read: " + person.getAddress() + " / " + person.getCity() + " / " + person.getPhone());
+        }
+    }
+
+    @Test
+    void concurrentReadsAndWrites_shouldNeverFailOrObserveTornUpdates() throws InterruptedException {
+        List<Person> persons = new ArrayList<>();
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int id = 0; id < PERSONS; id++) {
+            persons.add(person(id, id % 20));
+            records.add(new MedicalRecord("First" + id, "Last" + (id % 10), "01/01/2000", List.of(), List.of()));
+        }
+        InMemoryStorage storage = new InMemoryStorage(persons, records);
+        PersonRepository personRepository = new PersonRepository(storage, ids);
+        personRepository.init();
+        MedicalRecordsRepository medicalRecordsRepository = new MedicalRecordsRepository(storage, ids);
+        medicalRecordsRepository.init();
+
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int w = 0; w < WRITERS; w++) {
+            pool.execute(() -> run(start, failures, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int id = random.nextInt(PERSONS);
+                int version = random.nextInt(20);
+                switch (random.nextInt(4)) {
+                    case 0 -> personRepository.updatePerson("First" + id, "Last" + (id % 10), person(id, version));
+                    case 1 -> {
+                        if (personRepository.deletePerson("First" + id, "Last" + (id % 10))) {
+                            personRepository.add(person(id, version));
+                        }
+                    }
+                    case 2 -> medicalRecordsRepository.updateMedicalRecord("First" + id, "Last" + (id % 10),
+                            new MedicalRecord(null, null, "02/02/2002", List.of("med" + version), List.of()));
+                    default -> personRepository.findEmailsByCity("City " + version);
+                }
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            pool.execute(() -> run(start, failures, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int id = random.nextInt(PERSONS);
+                personRepository.findAll().forEach(RepositoryConcurrencyTest::assertConsistent);
+                personRepository.findByAddress("Addr " + random.nextInt(20)).forEach(RepositoryConcurrencyTest::assertConsistent);
+                personRepository.findByLastName("Last" + (id % 10)).forEach(RepositoryConcurrencyTest::assertConsistent);
+                personRepository.findByName("First" + id, "Last" + (id % 10)).ifPresent(RepositoryConcurrencyTest::assertConsistent);
+                personRepository.findEmailsByCity("City " + random.nextInt(20));
+                medicalRecordsRepository.findByName("First" + id, "Last" + (id % 10)).ifPresent(record -> record.calculateAge(today));
+            }));
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertTrue(failures.isEmpty(), () -> "Concurrent access failed: " + failures.peek());
+        assertEquals(PERSONS, personRepository.findAll().size());
+        int indexed = 0;
+        for (int version = 0; version < 20; version++) {
+            indexed += personRepository.findByAddress("Addr " + version).size();
+        }
+        assertEquals(PERSONS, indexed);
+    }
+
+    private static void run(CountDownLatch start, Queue<Throwable> failures, Runnable operation) {
+        try {
+            start.await();
+            for (int i = 0; i < OPERATIONS && failures.isEmpty(); i++) {
+                operation.run();
+            }
+        } catch (Throwable t) {
+            failures.add(t);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
@@ -20,7 +21,11 @@ class FireStationServiceTest {
 
     @Mock
     private FireStationRepository fireStationRepository;
+    @Mock
+    private StationCoverageViews stationViews;
 
+    @Spy
+    private MutationPipeline mutations = new MutationPipeline();
     @InjectMocks
     private FireStationService fireStationService;
 
@@ -80,6 +85,8 @@ class FireStationServiceTest {
         boolean result = fireStationService.updateFireStation("ABC", updated);
 
         assertTrue(result);
+        verify(stationViews).addressChanged("ABC");
+        verify(stationViews).stationChanged(9);
         verify(fireStationRepository, times(1))
                 .updateFireStation("ABC", 9);
     }
@@ -95,6 +102,7 @@ class FireStationServiceTest {
         boolean result = fireStationService.updateFireStation("ABC", updated);
 
         assertFalse(result);
+        verifyNoInteractions(stationViews);
         verify(fireStationRepository, times(1))
                 .updateFireStation("ABC", 9);
     }
@@ -120,6 +128,7 @@ class FireStationServiceTest {
         when(fireStationRepository.deleteByStationNumber(5)).thenReturn(true);
 
         assertTrue(fireStationService.deleteByStationNumber(5));
+        verify(stationViews).stationChanged(5);
         verify(fireStationRepository, times(1))
                 .deleteByStationNumber(5);
     }
@@ -1,20 +1,23 @@
 package com.openclassroom.safteynetalertsrefactor.service;
 
 import com.openclassroom.safteynetalertsrefactor.dto.*;
-import com.openclassroom.safteynetalertsrefactor.model.FireStation;
 import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
 import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import com.openclassroom.safteynetalertsrefactor.repository.DenseIds;
+import com.openclassroom.safteynetalertsrefactor.repository.CityEmails;
 import com.openclassroom.safteynetalertsrefactor.repository.FireStationRepository;
 import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.NameKey;
 import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Clock;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -24,27 +27,35 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class FirstResponderServiceTest {
 
+    private final DenseIds ids = new DenseIds();
+    private final Today today = new Today(Clock.systemDefaultZone());
+
     @Mock
     private PersonRepository personRepository;
     @Mock
     private FireStationRepository fireStationRepository;
     @Mock
     private MedicalRecordsRepository medicalRecordRepository;
+    @Mock
+    private HouseholdAgeIndex householdAgeIndex;
+    @Mock
+    private MedicalTermIndex medicalTermIndex;
 
-    @InjectMocks
     private FirstResponderService service;
 
-    private static FireStation fs(String addr, int station) {
-        FireStation f = new FireStation();
-        f.setAddress(addr);
-        f.setStation(station);
-        return f;
+    @BeforeEach
+    void setUp() {
+        ResidentQueryEngine queryEngine = new ResidentQueryEngine(personRepository, fireStationRepository, medicalRecordRepository, ids);
+        StationCoverageViews stationViews = new StationCoverageViews(fireStationRepository, personRepository, today);
+        service = new FirstResponderService(personRepository, fireStationRepository, medicalRecordRepository,
+                householdAgeIndex, queryEngine, stationViews, medicalTermIndex, ids, today);
     }
 
-    private static Person person(String first, String last, String addr, String phone, String city, String email) {
+    private Person person(String first, String last, String addr, String phone, String city, String email) {
         Person p = new Person();
         p.setFirstName(first);
         p.setLastName(last);
+        p.setNameId(ids.nameId(first, last));
         p.setAddress(addr);
         p.setPhone(phone);
         p.setCity(city);
@@ -52,6 +63,14 @@ class FirstResponderServiceTest {
         return p;
     }
 
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+
     private static MedicalRecord medicalrecord(String first, String last, String birthdate, List<String> meds, List<String> allergies) {
         MedicalRecord m = new MedicalRecord();
         m.setFirstName(first);
@@ -64,18 +83,13 @@ class FirstResponderServiceTest {
 
     @Test
     void getPersonsByStation_returnsCounts_and_callsRepositories() {
-        FireStation station = fs("100 Main St", 1);
-
         Person alice = person("Alice", "Anderson", "100 Main St", "111-111-1111", "City", "a@x.com");
         Person bob = person("Bob", "Brown", "100 Main St", "222-222-2222", "City", "b@x.com");
 
-        MedicalRecord mrAlice = medicalrecord("Alice", "Anderson", "01/01/2010", Collections.emptyList(), Collections.emptyList());
-        MedicalRecord mrBob = medicalrecord("Bob", "Brown", "01/01/1980", Collections.emptyList(), Collections.emptyList());
-
-        when(fireStationRepository.findAll()).thenReturn(Arrays.asList(station));
-        when(personRepository.findAll()).thenReturn(Arrays.asList(alice, bob));
-        when(medicalRecordRepository.findByName("Alice", "Anderson")).thenReturn(Optional.of(mrAlice));
-        when(medicalRecordRepository.findByName("Bob", "Brown")).thenReturn(Optional.of(mrBob));
+        when(fireStationRepository.findAddressesByStation(1)).thenReturn(Set.of("100 Main St"));
+        when(personRepository.findByAddressId(ids.addressId("100 Main St"))).thenReturn(Arrays.asList(alice, bob));
+        when(householdAgeIndex.countAdults("100 Main St")).thenReturn(1);
+        when(householdAgeIndex.countChildren("100 Main St")).thenReturn(1);
 
         FirstResponderDto result = service.getPersonsByStation(1);
 
@@ -84,9 +98,10 @@ class FirstResponderServiceTest {
         assertEquals(1, result.getNumberOfAdults());
         assertEquals(1, result.getNumberOfChildren());
 
-        verify(fireStationRepository, times(1)).findAll();
-        verify(personRepository, times(1)).findAll();
-        verify(medicalRecordRepository, atLeast(2)).findByName(anyString(), anyString());
+        assertSame(result, service.getPersonsByStation(1));
+        verify(personRepository, times(1)).findByAddressId(ids.addressId("100 Main St"));
+        verify(personRepository, never()).findAll();
+        verify(medicalRecordRepository, never()).findByNameId(anyInt());
     }
 
     @Test
@@ -95,11 +110,10 @@ class FirstResponderServiceTest {
         Person parent = person("Paula", "Cole", "123 Elm St", "444-444-4444", "City", "p@x.com");
 
         MedicalRecord mrChild = medicalrecord("Charlie", "Cole", "01/01/2015", Collections.emptyList(), Collections.emptyList());
-        MedicalRecord mrParent = medicalrecord("Paula", "Cole", "01/01/1985", Collections.emptyList(), Collections.emptyList());
 
-        when(personRepository.findAll()).thenReturn(Arrays.asList(child, parent));
-        when(medicalRecordRepository.findByName("Charlie", "Cole")).thenReturn(Optional.of(mrChild));
-        when(medicalRecordRepository.findByName("Paula", "Cole")).thenReturn(Optional.of(mrParent));
+        when(personRepository.findByAddressId(ids.addressId("123 Elm St"))).thenReturn(Arrays.asList(child, parent));
+        when(householdAgeIndex.isChild(child)).thenReturn(true);
+        when(medicalRecordRepository.findByNameId(ids.nameId("Charlie", "Cole"))).thenReturn(Optional.of(mrChild));
 
         List<ChildResidentDto> children = service.getChildrenByAddress("123 Elm St");
 
@@ -112,29 +126,26 @@ class FirstResponderServiceTest {
         PersonDto other = dto.getOtherHouseholdMembers().get(0);
         assertEquals("Paula", other.getFirstName());
 
-        verify(personRepository, times(1)).findAll();
-        verify(medicalRecordRepository, atLeastOnce()).findByName(anyString(), anyString());
+        verify(personRepository, times(1)).findByAddressId(ids.addressId("123 Elm St"));
+        verify(medicalRecordRepository, atLeastOnce()).findByNameId(anyInt());
     }
 
     @Test
     void getPhoneAlert_returnsPhonesForStation_and_doesNotCallMedicalRepo() {
-        FireStation fs1 = fs("A St", 2);
-        FireStation fs2 = fs("B St", 1);
-
         Person p1 = person("One", "Two", "A St", "555-0001", "City", "o@x.com");
-        Person p2 = person("Three", "Four", "B St", "555-0002", "City", "t@x.com");
 
-        when(fireStationRepository.findAll()).thenReturn(Arrays.asList(fs1, fs2));
-        when(personRepository.findAll()).thenReturn(Arrays.asList(p1, p2));
+        when(fireStationRepository.findAddressesByStation(2)).thenReturn(Set.of("A St"));
+        when(personRepository.findByAddressId(ids.addressId("A St"))).thenReturn(List.of(p1));
 
         List<String> phones = service.getPhoneAlert(2);
 
         assertEquals(1, phones.size());
         assertTrue(phones.contains("555-0001"));
 
-        verify(fireStationRepository, times(1)).findAll();
-        verify(personRepository, times(1)).findAll();
-        verify(medicalRecordRepository, never()).findByName(anyString(), anyString());
+        assertSame(phones, service.getPhoneAlert(2));
+        verify(personRepository, times(1)).findByAddressId(ids.addressId("A St"));
+        verify(personRepository, never()).findAll();
+        verify(medicalRecordRepository, never()).findByNameId(anyInt());
     }
 
     @Test
@@ -142,8 +153,8 @@ class FirstResponderServiceTest {
         Person dave = person("Dave", "Duke", "50 Pine St", "777-7777", "Town", "d@x.com");
         MedicalRecord mrDave = medicalrecord("Dave", "Duke", "01/01/1990", Arrays.asList("med1"), Arrays.asList("peanut"));
 
-        when(personRepository.findAll()).thenReturn(Collections.singletonList(dave));
-        when(medicalRecordRepository.findByName("Dave", "Duke")).thenReturn(Optional.of(mrDave));
+        when(personRepository.findByAddressId(ids.addressId("50 Pine St"))).thenReturn(Collections.singletonList(dave));
+        when(medicalRecordRepository.findByNameId(ids.nameId("Dave", "Duke"))).thenReturn(Optional.of(mrDave));
 
         List<ResidentDto> residents = service.getFireInfo("50 Pine St");
 
@@ -154,24 +165,22 @@ class FirstResponderServiceTest {
         assertTrue(r.getMedicationList().contains("med1"));
         assertTrue(r.getAllergyList().contains("peanut"));
 
-        verify(personRepository, times(1)).findAll();
-        verify(medicalRecordRepository, atLeastOnce()).findByName("Dave", "Duke");
+        verify(personRepository, times(1)).findByAddressId(ids.addressId("50 Pine St"));
+        verify(medicalRecordRepository, atLeastOnce()).findByNameId(ids.nameId("Dave", "Duke"));
     }
 
     @Test
     void getCommunityEmail_returnsEmailsByCity_and_doesNotCallMedicalRepo() {
-        Person p1 = person("Eve", "Evans", "X St", "000", "MyCity", "e@x.com");
-        Person p2 = person("Fay", "Fox", "Y St", "111", "OtherCity", "f@x.com");
+        when(personRepository.findEmailsByCity("MyCity")).thenReturn(new CityEmails(List.of("e@x.com"), 3));
 
-        when(personRepository.findAll()).thenReturn(Arrays.asList(p1, p2));
+        CityEmails emails = service.getCommunityEmail("MyCity");
 
-        List<String> emails = service.getCommunityEmail("MyCity");
+        assertEquals(List.of("e@x.com"), emails.emails());
+        assertEquals(3, emails.version());
 
-        assertEquals(1, emails.size());
-        assertTrue(emails.contains("e@x.com"));
-
-        verify(personRepository, times(1)).findAll();
-        verify(medicalRecordRepository, never()).findByName(anyString(), anyString());
+        verify(personRepository, times(1)).findEmailsByCity("MyCity");
+        verify(personRepository, never()).findAll();
+        verify(medicalRecordRepository, never()).findByNameId(anyInt());
     }
 
     @Test
@@ -182,24 +191,52 @@ class FirstResponderServiceTest {
         MedicalRecord mr1 = medicalrecord("Ann", "Duke", "01/01/1992", Arrays.asList("mA"), Collections.emptyList());
         MedicalRecord mr2 = medicalrecord("Ben", "Duke", "01/01/1988", Arrays.asList("mB"), Arrays.asList("peanut"));
 
-        when(personRepository.findAll()).thenReturn(Arrays.asList(p1, p2));
-        when(medicalRecordRepository.findByName("Ann", "Duke")).thenReturn(Optional.of(mr1));
-        when(medicalRecordRepository.findByName("Ben", "Duke")).thenReturn(Optional.of(mr2));
+        when(personRepository.findByLastName("Duke")).thenReturn(Arrays.asList(p1, p2));
+        when(medicalRecordRepository.findByNameId(ids.nameId("Ann", "Duke"))).thenReturn(Optional.of(mr1));
+        when(medicalRecordRepository.findByNameId(ids.nameId("Ben", "Duke"))).thenReturn(Optional.of(mr2));
 
         List<ResidentDto> residents = service.getResidentsByLastName("Duke");
         assertEquals(2, residents.size());
 
         // empty/blank input
         assertTrue(service.getResidentsByLastName(" ").isEmpty());
-        verify(medicalRecordRepository, atLeast(2)).findByName(anyString(), eq("Duke"));
+        verify(medicalRecordRepository, atLeast(2)).findByNameId(anyInt());
+        verify(personRepository, never()).findAll();
+    }
+
+    @Test
+    void getResidentsByLastName_reusesJoinedView_untilAVersionChanges() {
+        Person p1 = person("Ann", "Duke", "A", "1", "C", "a@x.com");
+        MedicalRecord mr1 = medicalrecord("Ann", "Duke", "01/01/1992", Arrays.asList("mA"), Collections.emptyList());
+
+        when(personRepository.findByLastName(anyString())).thenReturn(List.of(p1));
+        when(personRepository.lastNameVersion(anyString())).thenReturn(5L);
+        when(medicalRecordRepository.findByNameId(ids.nameId("Ann", "Duke"))).thenReturn(Optional.of(mr1));
+
+        List<ResidentDto> first = service.getResidentsByLastName("Duke");
+        assertSame(first, service.getResidentsByLastName("DUKE "));
+        verify(personRepository, times(1)).findByLastName(anyString());
+
+        when(medicalRecordRepository.lastNameVersion(anyString())).thenReturn(1L);
+        List<ResidentDto> rebuilt = service.getResidentsByLastName("Duke");
+        assertNotSame(first, rebuilt);
+        assertEquals(first, rebuilt);
+        verify(personRepository, times(2)).findByLastName(anyString());
+    }
+
+    @Test
+    void getResidentsByLastName_doesNotCacheAnEmptyView() {
+        when(personRepository.findByLastName("Nobody")).thenReturn(List.of());
+
+        assertTrue(service.getResidentsByLastName("Nobody").isEmpty());
+        assertTrue(service.getResidentsByLastName("Nobody").isEmpty());
+
+        verify(personRepository, times(2)).findByLastName("Nobody");
     }
 
     // java
     @Test
     void getFloodInfo_returnsAddressBlocks_withResidents() {
-        FireStation f1 = fs("Addr1", 1);
-        FireStation f2 = fs("Addr2", 2);
-
         Person p1 = person("P1", "L1", "Addr1", "111", "C", "p1@x.com");
         Person p2 = person("P2", "L2", "Addr2", "222", "C", "p2@x.com");
         Person p3 = person("P3", "L3", "Addr1", "333", "C", "p3@x.com");
@@ -208,11 +245,13 @@ class FirstResponderServiceTest {
         MedicalRecord mr2 = medicalrecord("P2", "L2", "01/01/2000", Collections.emptyList(), Collections.emptyList());
         MedicalRecord mr3 = medicalrecord("P3", "L3", "01/01/2010", Collections.emptyList(), Collections.emptyList());
 
-        when(fireStationRepository.findAll()).thenReturn(Arrays.asList(f1, f2));
-        when(personRepository.findAll()).thenReturn(Arrays.asList(p1, p2, p3));
-        when(medicalRecordRepository.findByName("P1", "L1")).thenReturn(Optional.of(mr1));
-        when(medicalRecordRepository.findByName("P2", "L2")).thenReturn(Optional.of(mr2));
-        when(medicalRecordRepository.findByName("P3", "L3")).thenReturn(Optional.of(mr3));
+        when(fireStationRepository.findAddressesByStation(1)).thenReturn(Set.of("Addr1"));
+        when(fireStationRepository.findAddressesByStation(2)).thenReturn(new LinkedHashSet<>(List.of("Addr2", "Addr1")));
+        when(personRepository.findByAddressId(ids.addressId("Addr1"))).thenReturn(Arrays.asList(p1, p3));
+        when(personRepository.findByAddressId(ids.addressId("Addr2"))).thenReturn(Arrays.asList(p2));
+        when(medicalRecordRepository.findByNameId(ids.nameId("P1", "L1"))).thenReturn(Optional.of(mr1));
+        when(medicalRecordRepository.findByNameId(ids.nameId("P2", "L2"))).thenReturn(Optional.of(mr2));
+        when(medicalRecordRepository.findByNameId(ids.nameId("P3", "L3"))).thenReturn(Optional.of(mr3));
 
         List<HouseholdDto> flood = service.getFloodInfo(Arrays.asList("1", "2"));
 
@@ -234,8 +273,97 @@ class FirstResponderServiceTest {
         assertTrue(addressesFound.contains("Addr1"));
         assertTrue(addressesFound.contains("Addr2"));
 
-        verify(fireStationRepository, times(1)).findAll();
-        verify(personRepository, times(1)).findAll();
-        verify(medicalRecordRepository, atLeast(3)).findByName(anyString(), anyString());
+        verify(fireStationRepository, times(2)).findAddressesByStation(anyInt());
+        verify(personRepository, times(2)).findByAddressId(anyInt());
+        verify(personRepository, never()).findAll();
+        verify(medicalRecordRepository, atLeast(3)).findByNameId(anyInt());
+    }
+
+    @Test
+    void getFloodInfo_intersectsTheCoverageWithTheHouseholdFilters() {
+        int withChild = ids.addressId("Flood Child St");
+        int withRecord = ids.addressId("Flood Record St");
+        int withBoth = ids.addressId("Flood Both St");
+        Person kid = person("Kid", "Both", "Flood Both St", "111", "C", "k@x.com");
+
+        when(fireStationRepository.findAddressesByStation(1))
+                .thenReturn(new LinkedHashSet<>(List.of("Flood Child St", "Flood Record St")));
+        when(fireStationRepository.findAddressesByStation(2)).thenReturn(Set.of("Flood Both St"));
+        when(householdAgeIndex.householdsWithChildren()).thenReturn(bits(withChild, withBoth));
+        when(householdAgeIndex.householdsWithMedicalRecord()).thenReturn(bits(withRecord, withBoth));
+        when(personRepository.findByAddressId(ids.addressId("Flood Both St"))).thenReturn(List.of(kid));
+
+        List<HouseholdDto> flood = service.getFloodInfo(List.of("1", "2", "x"), true, true);
+
+        assertEquals(1, flood.size());
+        assertEquals("Flood Both St", flood.get(0).getAddress());
+        assertEquals("Kid", flood.get(0).getResidents().get(0).getFirstName());
+        verify(personRepository, times(1)).findByAddressId(anyInt());
+    }
+
+    @Test
+    void getFloodInfo_listsHouseholdsInStationOrder_onceEach() {
+        // ids handed out in another order than the stations list the addresses
+        int first = ids.addressId("1509 Culver St");
+        int second = ids.addressId("29 15th St");
+        int third = ids.addressId("644 Gershwin Cir");
+        assertTrue(first < second && second < third);
+        when(fireStationRepository.findAddressesByStation(2))
+                .thenReturn(new LinkedHashSet<>(List.of("644 Gershwin Cir", "1509 culver st")));
+        when(fireStationRepository.findAddressesByStation(1))
+                .thenReturn(new LinkedHashSet<>(List.of("1509 Culver St", "29 15th St")));
+
+        List<HouseholdDto> flood = service.getFloodInfo(List.of("2", "1"));
+
+        assertEquals(List.of("644 Gershwin Cir", "1509 culver st", "29 15th St"),
+                flood.stream().map(HouseholdDto::getAddress).toList());
+    }
+
+    @Test
+    void getMedicalAlert_returnsResidentsMatchingBothTerms_atTheStation() {
+        Person john = person("John", "Boyd", "1509 Culver St", "841-874-6512", "Culver", "j@x.com");
+        Person jacob = person("Jacob", "Boyd", "1509 Culver St", "841-874-6513", "Culver", "jb@x.com");
+        Person eric = person("Eric", "Cadigan", "951 LoneTree Rd", "841-874-7458", "Culver", "e@x.com");
+        MedicalRecord johnRecord = medicalrecord("John", "Boyd", "03/06/1984", List.of("aznol:350mg"), List.of("nillacilan"));
+
+        when(medicalTermIndex.withMedication("aznol"))
+                .thenReturn(Set.of(new NameKey("John", "Boyd"), new NameKey("Jacob", "Boyd"), new NameKey("Eric", "Cadigan")));
+        when(medicalTermIndex.withAllergy("nillacilan"))
+                .thenReturn(Set.of(new NameKey("John", "Boyd"), new NameKey("Eric", "Cadigan")));
+        when(fireStationRepository.findAddressesByStation(3)).thenReturn(Set.of("1509 Culver St"));
+        when(personRepository.findByAddressId(ids.addressId("1509 Culver St"))).thenReturn(List.of(john, jacob));
+        when(medicalRecordRepository.findByNameId(ids.nameId("John", "Boyd"))).thenReturn(Optional.of(johnRecord));
+
+        List<ResidentDto> residents = service.getMedicalAlert(3, "aznol", "nillacilan");
+
+        assertEquals(1, residents.size());
+        assertEquals("John", residents.get(0).getFirstName());
+        assertEquals(List.of("aznol:350mg"), residents.get(0).getMedicationList());
+        verify(personRepository, never()).findByAddressId(ids.addressId("951 LoneTree Rd"));
+        verify(medicalRecordRepository, never()).findAll();
+    }
+
+    @Test
+    void getMedicalAlert_probesTheLastNamesOfTheIndexedNames_withoutStation() {
+        Person eric = person("Eric", "Cadigan", "951 LoneTree Rd", "841-874-7458", "Culver", "e@x.com");
+        MedicalRecord ericRecord = medicalrecord("Eric", "Cadigan", "08/06/1945", List.of("tradoxidine:400mg"), List.of());
+
+        when(medicalTermIndex.withMedication("tradoxidine")).thenReturn(Set.of(new NameKey("Eric", "Cadigan")));
+        when(personRepository.findByLastName("cadigan")).thenReturn(List.of(eric));
+        when(medicalRecordRepository.findByNameId(ids.nameId("Eric", "Cadigan"))).thenReturn(Optional.of(ericRecord));
+
+        List<ResidentDto> residents = service.getMedicalAlert(null, "tradoxidine", null);
+
+        assertEquals(1, residents.size());
+        assertEquals(List.of("tradoxidine:400mg"), residents.get(0).getMedicationList());
+        verify(personRepository, never()).findAll();
+        verifyNoInteractions(fireStationRepository);
+    }
+
+    @Test
+    void getMedicalAlert_returnsEmpty_whenNoTermIsGiven() {
+        assertTrue(service.getMedicalAlert(1, null, " ").isEmpty());
+
+        verifyNoInteractions(medicalTermIndex, personRepository, medicalRecordRepository);
     }
 }
@@ -0,0 +1,179 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.model.SettableClock;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import com.openclassroom.safteynetalertsrefactor.repository.DenseIds;
+import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.NameKey;
+import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HouseholdAgeIndexTest {
+
+    private final DenseIds ids = new DenseIds();
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+
+    @Mock
+    private PersonRepository personRepository;
+    @Mock
+    private MedicalRecordsRepository medicalRecordsRepository;
+
+    private final SettableClock clock = new SettableClock(ZONE);
+    private HouseholdAgeIndex index;
+
+    private Person person(String first, String last, String address) {
+        Person p = new Person();
+        p.setFirstName(first);
+        p.setLastName(last);
+        p.setNameId(ids.nameId(first, last));
+        p.setAddress(address);
+        return p;
+    }
+
+    private void setToday(LocalDate date) {
+        clock.set(date, 12, 0);
+    }
+
+    private void givenRecord(String first, String last, String birthdate) {
+        when(medicalRecordsRepository.findByNameId(ids.nameId(first, last)))
+                .thenReturn(Optional.of(new MedicalRecord(first, last, birthdate, List.of(), List.of())));
+    }
+
+    @BeforeEach
+    void setUp() {
+        setToday(LocalDate.of(2026, 10, 17));
+        index = new HouseholdAgeIndex(personRepository, medicalRecordsRepository, ids, new Today(clock));
+    }
+
+    @Test
+    void rebuild_shouldClassifyByAgeAndNormalizedAddress() {
+        Person child = person("Tenley", "Boyd", "1509 Culver St");
+        Person adult = person("John", "Boyd", " 1509  culver st ");
+        Person noRecord = person("Roger", "Boyd", "1509 Culver St");
+        when(personRepository.findAll()).thenReturn(List.of(child, adult, noRecord));
+        givenRecord("Tenley", "Boyd", "02/18/2012");
+        givenRecord("John", "Boyd", "03/06/1984");
+        when(medicalRecordsRepository.findByNameId(ids.nameId("Roger", "Boyd"))).thenReturn(Optional.empty());
+
+        index.rebuild();
+
+        assertEquals(2, index.countChildren("1509 CULVER ST"));
+        assertEquals(1, index.countAdults("1509 Culver St"));
+        assertTrue(index.isChild(child));
+        assertFalse(index.isChild(adult));
+        assertEquals(0, index.countAdults("unknown"));
+    }
+
+    @Test
+    void rollOver_shouldMoveChildrenTurningNineteenAtMidnight() {
+        Person child = person("Tenley", "Boyd", "1509 Culver St");
+        when(personRepository.findAll()).thenReturn(List.of(child));
+        givenRecord("Tenley", "Boyd", "10/18/2007");
+        index.rebuild();
+        assertEquals(1, index.countChildren("1509 Culver St"));
+
+        setToday(LocalDate.of(2026, 10, 18));
+        index.rollOver();
+
+        assertEquals(0, index.countChildren("1509 Culver St"));
+        assertEquals(1, index.countAdults("1509 Culver St"));
+        assertFalse(index.isChild(child));
+    }
+
+    @Test
+    void lookups_shouldRollOverWhenTheScheduledJobDidNotRun() {
+        Person child = person("Tenley", "Boyd", "1509 Culver St");
+        when(personRepository.findAll()).thenReturn(List.of(child));
+        givenRecord("Tenley", "Boyd", "10/18/2007");
+        index.rebuild();
+
+        setToday(LocalDate.of(2026, 10, 19));
+
+        assertEquals(1, index.countAdults("1509 Culver St"));
+    }
+
+    @Test
+    void mutations_shouldKeepHouseholdsInStep() {
+        when(personRepository.findAll()).thenReturn(List.of());
+        index.rebuild();
+
+        Person person = person("Tenley", "Boyd", "1509 Culver St");
+        givenRecord("Tenley", "Boyd", "02/18/2012");
+        index.personAdded(person);
+        assertEquals(1, index.countChildren("1509 Culver St"));
+
+        Person moved = person("Tenley", "Boyd", "29 15th St");
+        index.personUpdated(person, moved);
+        person = moved;
+        assertEquals(0, index.countChildren("1509 Culver St"));
+        assertEquals(1, index.countChildren("29 15th St"));
+
+        givenRecord("Tenley", "Boyd", "02/18/1990");
+        when(personRepository.findByLastName("Boyd")).thenReturn(List.of(person));
+        index.medicalRecordChanged("Tenley", "Boyd");
+        assertEquals(0, index.countChildren("29 15th St"));
+        assertEquals(1, index.countAdults("29 15th St"));
+
+        index.personRemoved(person);
+        assertEquals(0, index.countAdults("29 15th St"));
+        assertFalse(index.isChild(person));
+    }
+
+    @Test
+    void rebuild_shouldCountUnreadableBirthdatesAsChildren() {
+        Person person = person("Tenley", "Boyd", "1509 Culver St");
+        when(personRepository.findAll()).thenReturn(List.of(person));
+        givenRecord("Tenley", "Boyd", "2012-02-18");
+
+        index.rebuild();
+
+        assertEquals(1, index.countChildren("1509 Culver St"));
+        verify(medicalRecordsRepository, times(1)).findByNameId(anyInt());
+    }
+
+    @Test
+    void householdSets_shouldFollowChildrenAndMedicalRecords() {
+        Person child = person("Tenley", "Boyd", "1509 Culver St");
+        Person noRecord = person("Roger", "Cadigan", "951 LoneTree Rd");
+        when(personRepository.findAll()).thenReturn(List.of(child, noRecord));
+        givenRecord("Tenley", "Boyd", "10/18/2007");
+        when(medicalRecordsRepository.findByNameId(ids.nameId("Roger", "Cadigan"))).thenReturn(Optional.empty());
+        index.rebuild();
+        int culver = ids.addressId("1509 CULVER ST");
+        int loneTree = ids.addressId("951 LoneTree Rd");
+
+        assertEquals(Set.of(culver, loneTree), ids(index.householdsWithChildren()));
+        assertEquals(Set.of(culver), ids(index.householdsWithMedicalRecord()));
+
+        setToday(LocalDate.of(2026, 10, 18));
+        assertEquals(Set.of(loneTree), ids(index.householdsWithChildren()));
+
+        index.personRemoved(child);
+        assertTrue(index.householdsWithMedicalRecord().isEmpty());
+    }
+
+    private static Set<Integer> ids(BitSet bits) {
+        return bits.stream().boxed().collect(Collectors.toSet());
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
@@ -20,6 +21,14 @@ class MedicalRecordsServiceTest {
 
     @Mock
     private MedicalRecordsRepository medicalRecordsRepository;
+    @Mock
+    private HouseholdAgeIndex householdAgeIndex;
+    @Mock
+    private StationCoverageViews stationViews;
+    @Mock
+    private MedicalTermIndex medicalTermIndex;
+    @Spy
+    private MutationPipeline mutations = new MutationPipeline();
     @InjectMocks
     private MedicalRecordsService medicalRecordsService;
 
@@ -94,6 +103,8 @@ class MedicalRecordsServiceTest {
 
         assertTrue(result);
         verify(medicalRecordsRepository, times(1)).updateMedicalRecord("John", "Doe", medicalrecord);
+        verify(householdAgeIndex, times(1)).medicalRecordChanged("John", "Doe");
+        verify(medicalTermIndex, times(1)).medicalRecordChanged("John", "Doe");
     }
 
     @Test
@@ -104,6 +115,7 @@ class MedicalRecordsServiceTest {
         boolean result = medicalRecordsService.updateMedicalRecord("John", "Doe", medicalrecord);
 
         assertFalse(result);
+        verify(householdAgeIndex, never()).medicalRecordChanged("John", "Doe");
         verify(medicalRecordsRepository, times(1)).updateMedicalRecord("John", "Doe", medicalrecord);
     }
 
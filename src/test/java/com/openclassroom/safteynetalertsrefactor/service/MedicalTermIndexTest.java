@@ -0,0 +1,79 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.NameKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MedicalTermIndexTest {
+
+    @Mock
+    private MedicalRecordsRepository medicalRecordsRepository;
+
+    private MedicalTermIndex index;
+
+    private final MedicalRecord john = new MedicalRecord("John", "Boyd", "03/06/1984",
+            List.of("aznol:350mg", "hydrapermazol:100mg"), List.of("nillacilan"));
+    private final MedicalRecord eric = new MedicalRecord("Eric", "Cadigan", "08/06/1945",
+            List.of("tradoxidine:400mg"), List.of());
+    private final MedicalRecord tenley = new MedicalRecord("Tenley", "Boyd", "02/18/2012",
+            List.of(), List.of("peanut"));
+
+    @BeforeEach
+    void setUp() {
+        when(medicalRecordsRepository.findAll()).thenReturn(List.of(john, eric, tenley));
+        index = new MedicalTermIndex(medicalRecordsRepository);
+        index.rebuild();
+    }
+
+    @Test
+    void withMedication_shouldMatchTheTermAsWritten_orWithoutItsDose() {
+        assertEquals(Set.of(new NameKey("John", "Boyd")), index.withMedication("aznol:350mg"));
+        assertEquals(Set.of(new NameKey("John", "Boyd")), index.withMedication("aznol"));
+        assertEquals(Set.of(new NameKey("Eric", "Cadigan")), index.withMedication(" TRADOXIDINE "));
+        assertTrue(index.withMedication("aznol:200mg").isEmpty());
+        assertTrue(index.withMedication(null).isEmpty());
+    }
+
+    @Test
+    void withAllergy_shouldMatchCaseInsensitively() {
+        assertEquals(Set.of(new NameKey("Tenley", "Boyd")), index.withAllergy("Peanut"));
+        assertEquals(Set.of(new NameKey("John", "Boyd")), index.withAllergy("nillacilan"));
+        assertTrue(index.withAllergy("shellfish").isEmpty());
+    }
+
+    @Test
+    void medicalRecordChanged_shouldReindexTheNameOnly() {
+        MedicalRecord updated = new MedicalRecord("John", "Boyd", "03/06/1984", List.of("tradoxidine:400mg"), List.of());
+        when(medicalRecordsRepository.findByName("John", "Boyd")).thenReturn(Optional.of(updated));
+
+        index.medicalRecordChanged("John", "Boyd");
+
+        assertTrue(index.withMedication("aznol").isEmpty());
+        assertTrue(index.withAllergy("nillacilan").isEmpty());
+        assertEquals(Set.of(new NameKey("John", "Boyd"), new NameKey("Eric", "Cadigan")), index.withMedication("tradoxidine"));
+        verify(medicalRecordsRepository, never()).findByName("Eric", "Cadigan");
+    }
+
+    @Test
+    void medicalRecordChanged_shouldUnindexADeletedRecord() {
+        when(medicalRecordsRepository.findByName("Tenley", "Boyd")).thenReturn(Optional.empty());
+
+        index.medicalRecordChanged("Tenley", "Boyd");
+
+        assertTrue(index.withAllergy("peanut").isEmpty());
+        assertEquals(Set.of(new NameKey("John", "Boyd")), index.withMedication("aznol"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.repository.StorageEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MutationPipelineTest {
+
+    @Mock
+    private StorageEngine storageEngine;
+
+    private MutationPipeline pipeline;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new MutationPipeline(true, 16, 8, storageEngine);
+        pipeline.start();
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void submit_shouldApplyOnTheWriterThreadInsideOneStorageBatch() {
+        String thread = pipeline.submit("name thread", () -> Thread.currentThread().getName());
+
+        assertEquals("mutation-writer", thread);
+        assertEquals(1, pipeline.getAppliedMutations());
+        verify(storageEngine, times(1)).beginBatch();
+        verify(storageEngine, times(1)).endBatch();
+        verify(storageEngine, never()).flush();
+    }
+
+    @Test
+    void submit_shouldRethrowTheMutationExceptionOnTheCaller() {
+        IllegalArgumentException failure = new IllegalArgumentException("boom");
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> pipeline.submit("failing", () -> {
+                    throw failure;
+                }));
+
+        assertSame(failure, thrown);
+        assertEquals("ok", pipeline.submit("after failure", () -> "ok"));
+    }
+
+    @Test
+    void submit_shouldBatchQueuedMutationsInSubmissionOrder() throws Exception {
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = callers.submit(() -> pipeline.submit("blocker", () -> {
+            writerBusy.countDown();
+            await(release);
+            return null;
+        }));
+        assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+
+        List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            int index = i;
+            results.add(callers.submit(() -> pipeline.submit("mutation " + index, () -> {
+                applied.add(index);
+                return index;
+            })));
+            // one caller at a time so the submission order is known
+            while (pipeline.getQueueDepth() < i + 1) {
+                Thread.onSpinWait();
+            }
+        }
+        assertEquals(6, pipeline.getQueueDepth());
+        assertTrue(pipeline.getMaxQueueDepth() >= 6);
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), applied);
+        assertEquals(0, pipeline.getQueueDepth());
+        assertEquals(7, pipeline.getAppliedMutations());
+        assertEquals(2, pipeline.getBatches());
+        verify(storageEngine, times(2)).endBatch();
+    }
+
+    @Test
+    void submit_shouldFailCallersWhenTheBatchWriteFails() {
+        RuntimeException diskFull = new RuntimeException("disk full");
+        doThrow(diskFull).when(storageEngine).endBatch();
+
+        assertSame(diskFull, assertThrows(RuntimeException.class, () -> pipeline.submit("unwritten", () -> 42)));
+        assertEquals(1, pipeline.getBatches());
+
+        doNothing().when(storageEngine).endBatch();
+        assertEquals(42, pipeline.submit("written", () -> 42));
+    }
+
+    @Test
+    void stop_shouldRejectLaterMutations() {
+        pipeline.submit("before stop", () -> null);
+        pipeline.stop();
+
+        assertThrows(IllegalStateException.class, () -> pipeline.submit("after stop", () -> null));
+        assertEquals(1, pipeline.getAppliedMutations());
+    }
+
+    @Test
+    void disabledPipeline_shouldRunOnTheCallingThread() {
+        MutationPipeline inline = new MutationPipeline(false, 16, 8, storageEngine);
+        inline.start();
+
+        String thread = inline.submit("inline", () -> Thread.currentThread().getName());
+
+        assertEquals(Thread.currentThread().getName(), thread);
+        assertEquals(16, inline.getQueueCapacity());
+        verifyNoInteractions(storageEngine);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,12 +2,14 @@ package com.openclassroom.safteynetalertsrefactor.service;
 
 import com.openclassroom.safteynetalertsrefactor.model.Person;
 import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.Replacement;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
@@ -15,6 +17,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,6 +25,12 @@ class PersonServiceTest {
 
     @Mock
     private PersonRepository personRepository;
+    @Mock
+    private HouseholdAgeIndex householdAgeIndex;
+    @Mock
+    private StationCoverageViews stationViews;
+    @Spy
+    private MutationPipeline mutations = new MutationPipeline();
     @InjectMocks
     private PersonService personService;
 
@@ -75,7 +84,7 @@ class PersonServiceTest {
     }
 
     @Test
-    void updatePerson_shouldUpdateExistingPersonAndPersist() {
+    void updatePerson_shouldReplaceExistingPersonAndNotifyIndexes() {
         Person existing = samplePerson();
         Person updated = new Person();
         updated.setAddress("456 New St");
@@ -83,77 +92,66 @@ class PersonServiceTest {
         updated.setZip("99999");
         updated.setPhone("999-888-7777");
         updated.setEmail("new.mail@example.com");
+        Person current = new Person("John", "Doe", "456 New St", "NewCity", "99999", "999-888-7777", "new.mail@example.com");
 
-        when(personRepository.findByName("John", "Doe"))
-                .thenReturn(Optional.of(existing));
+        when(personRepository.updatePerson("John", "Doe", updated))
+                .thenReturn(Optional.of(new Replacement<>(existing, current)));
 
         boolean ok = personService.updatePerson("John", "Doe", updated);
 
         assertTrue(ok);
-        assertEquals("456 New St", existing.getAddress());
-        assertEquals("NewCity", existing.getCity());
-        assertEquals("99999", existing.getZip());
-        assertEquals("999-888-7777", existing.getPhone());
-        assertEquals("new.mail@example.com", existing.getEmail());
-
-        verify(personRepository, times(1)).persist();
+        verify(personRepository, times(1)).updatePerson("John", "Doe", updated);
+        verify(householdAgeIndex, times(1)).personUpdated(existing, current);
+        verify(stationViews, times(1)).addressChanged("123 Main St", "456 New St");
     }
 
     @Test
     void updatePerson_shouldReturnFalseWhenPersonNotFound() {
-        when(personRepository.findByName("John", "Doe"))
+        when(personRepository.updatePerson(eq("John"), eq("Doe"), any()))
                 .thenReturn(Optional.empty());
 
         boolean ok = personService.updatePerson("John", "Doe", samplePerson());
 
         assertFalse(ok);
-        verify(personRepository, never()).persist();
-    }
-
-    @Test
-    void updatePerson_shouldPropagateExceptionWhenFindByNameThrows() {
-        when(personRepository.findByName("John", "Doe")).thenThrow(new RuntimeException("find fail"));
-
-        assertThrows(RuntimeException.class, () -> personService.updatePerson("John", "Doe", samplePerson()));
-        verify(personRepository, times(1)).findByName("John", "Doe");
+        verifyNoInteractions(householdAgeIndex, stationViews);
     }
 
     @Test
     void updatePerson_shouldPropagateExceptionWhenPersistThrows() {
-        Person existing = samplePerson();
-        when(personRepository.findByName("John", "Doe")).thenReturn(Optional.of(existing));
-        doThrow(new RuntimeException("persist fail")).when(personRepository).persist();
+        when(personRepository.updatePerson(eq("John"), eq("Doe"), any())).thenThrow(new RuntimeException("persist fail"));
 
         assertThrows(RuntimeException.class, () -> personService.updatePerson("John", "Doe", samplePerson()));
-        verify(personRepository, times(1)).persist();
+        verifyNoInteractions(householdAgeIndex, stationViews);
     }
 
     @Test
     void delete_shouldDelegateToRepository() {
-        when(personRepository.deletePerson("John", "Doe")).thenReturn(true);
+        Person existing = samplePerson();
+        when(personRepository.removePerson("John", "Doe")).thenReturn(Optional.of(existing));
 
         boolean deleted = personService.delete("John", "Doe");
 
         assertTrue(deleted);
         verify(personRepository, times(1))
-                .deletePerson("John", "Doe");
+                .removePerson("John", "Doe");
+        verify(householdAgeIndex, times(1)).personRemoved(existing);
     }
 
     @Test
     void delete_shouldReturnFalseWhenNotFound() {
-        when(personRepository.deletePerson("John", "Doe")).thenReturn(false);
+        when(personRepository.removePerson("John", "Doe")).thenReturn(Optional.empty());
 
         boolean deleted = personService.delete("John", "Doe");
 
         assertFalse(deleted);
-        verify(personRepository, times(1)).deletePerson("John", "Doe");
+        verify(personRepository, times(1)).removePerson("John", "Doe");
     }
 
     @Test
     void delete_shouldPropagateExceptionWhenRepositoryThrows() {
-        when(personRepository.deletePerson("John", "Doe")).thenThrow(new RuntimeException("delete fail"));
+        when(personRepository.removePerson("John", "Doe")).thenThrow(new RuntimeException("delete fail"));
 
         assertThrows(RuntimeException.class, () -> personService.delete("John", "Doe"));
-        verify(personRepository, times(1)).deletePerson("John", "Doe");
+        verify(personRepository, times(1)).removePerson("John", "Doe");
     }
 }
@@ -0,0 +1,172 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.model.MedicalRecord;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.repository.DenseIds;
+import com.openclassroom.safteynetalertsrefactor.repository.FireStationRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.MedicalRecordsRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.NameKey;
+import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResidentQueryEngineTest {
+
+    private final DenseIds ids = new DenseIds();
+
+    @Mock
+    private PersonRepository personRepository;
+    @Mock
+    private FireStationRepository fireStationRepository;
+    @Mock
+    private MedicalRecordsRepository medicalRecordRepository;
+
+    private ResidentQueryEngine engine;
+
+    private Person person(String first, String last, String address) {
+        Person p = new Person();
+        p.setFirstName(first);
+        p.setLastName(last);
+        p.setNameId(ids.nameId(first, last));
+        p.setAddress(address);
+        return p;
+    }
+
+    @BeforeEach
+    void setUp() {
+        engine = new ResidentQueryEngine(personRepository, fireStationRepository, medicalRecordRepository, ids);
+    }
+
+    @Test
+    void coveredBy_shouldProbeEachStationAddressOnce_andReportRowCounts() {
+        Person john = person("John", "Boyd", "1509 Culver St");
+        Person tenley = person("Tenley", "Boyd", "1509 Culver St");
+        when(fireStationRepository.findAddressesByStation(3)).thenReturn(Set.of("1509 Culver St"));
+        when(fireStationRepository.findAddressesByStation(4)).thenReturn(Set.of("1509 culver st"));
+        when(personRepository.findByAddressId(ids.addressId("1509 Culver St"))).thenReturn(List.of(john, tenley));
+
+        ResidentQueryEngine.QueryResult<String> result = engine.persons("test")
+                .coveredBy(List.of(3, 4))
+                .select(Person::getFirstName);
+
+        assertEquals(List.of("John", "Tenley"), result.rows());
+        assertEquals(new ResidentQueryEngine.QueryStats("test", 2, 2, 0), result.stats());
+        verify(personRepository, times(1)).findByAddressId(anyInt());
+        verify(personRepository, never()).findAll();
+    }
+
+    @Test
+    void withNames_shouldFilterBeforeTheMedicalRecordJoin() {
+        Person john = person("John", "Boyd", "1509 Culver St");
+        Person jacob = person("Jacob", "Boyd", "1509 Culver St");
+        when(personRepository.findByLastName("boyd")).thenReturn(List.of(john, jacob));
+        MedicalRecord record = new MedicalRecord("John", "Boyd", "03/06/1984", List.of("aznol:350mg"), List.of());
+        when(medicalRecordRepository.findByNameId(ids.nameId("John", "Boyd"))).thenReturn(Optional.of(record));
+
+        ResidentQueryEngine.QueryResult<List<String>> result = engine.persons("test")
+                .withLastName("boyd")
+                .withNames(List.of(new NameKey("John", "Boyd")))
+                .selectWithMedicalRecord((p, medicalRecord) -> medicalRecord.getMedications());
+
+        assertEquals(List.of(List.of("aznol:350mg")), result.rows());
+        assertEquals(new ResidentQueryEngine.QueryStats("test", 1, 1, 1), result.stats());
+        verify(medicalRecordRepository, never()).findByNameId(ids.nameId("Jacob", "Boyd"));
+    }
+
+    @Test
+    void selectWithMedicalRecord_shouldPassNullWhenThereIsNoRecord() {
+        Person roger = person("Roger", "Boyd", "1509 Culver St");
+        when(personRepository.findByAddressId(ids.addressId("1509 Culver St"))).thenReturn(List.of(roger));
+        when(medicalRecordRepository.findByNameId(ids.nameId("Roger", "Boyd"))).thenReturn(Optional.empty());
+
+        ResidentQueryEngine.QueryResult<Boolean> result = engine.persons("test")
+                .atAddresses(List.of("1509 Culver St"))
+                .withLastName("BOYD")
+                .selectWithMedicalRecord((p, medicalRecord) -> medicalRecord == null);
+
+        assertEquals(List.of(true), result.rows());
+        assertEquals(0, result.stats().joined());
+        verify(personRepository, never()).findByLastName(anyString());
+    }
+
+    @Test
+    void select_shouldScanAllPersonsWithoutIndexedConstraint() {
+        when(personRepository.findAll()).thenReturn(List.of(person("John", "Boyd", "A"), person("Eric", "Cadigan", "B")));
+
+        ResidentQueryEngine.QueryResult<String> result = engine.persons("test")
+                .select(Person::getFirstName);
+
+        assertEquals(List.of("John", "Eric"), result.rows());
+        assertEquals(new ResidentQueryEngine.QueryStats("test", 2, 2, 0), result.stats());
+    }
+
+    @Test
+    void withNames_shouldProbeEachLastNameOnce_andKeepOnlyTheNamesInEverySet() {
+        Person john = person("John", "Boyd", "1509 Culver St");
+        Person jacob = person("Jacob", "Boyd", "1509 Culver St");
+        Person eric = person("Eric", "Cadigan", "951 LoneTree Rd");
+        when(personRepository.findByLastName("boyd")).thenReturn(List.of(john, jacob));
+
+        ResidentQueryEngine.QueryResult<String> result = engine.persons("test")
+                .withNames(Set.of(new NameKey("John", "Boyd"), new NameKey("Jacob", "Boyd"), new NameKey("Eric", "Cadigan")))
+                .withNames(Set.of(new NameKey("John", "Boyd"), new NameKey("Jacob", "Boyd")))
+                .select(Person::getFirstName);
+
+        assertEquals(List.of("John", "Jacob"), result.rows());
+        assertEquals(new ResidentQueryEngine.QueryStats("test", 2, 2, 0), result.stats());
+        verify(personRepository, times(1)).findByLastName("boyd");
+        verify(personRepository, never()).findByLastName("cadigan");
+        verify(personRepository, never()).findAll();
+    }
+
+    @Test
+    void coveredBy_shouldKeepTheOrderInWhichTheStationsListTheirAddresses() {
+        Person john = person("John", "Boyd", "1509 Culver St");
+        Person eric = person("Eric", "Cadigan", "951 LoneTree Rd");
+        Person peter = person("Peter", "Duncan", "644 Gershwin Cir");
+        // ids handed out in another order than the stations list the addresses
+        when(personRepository.findByAddressId(ids.addressId("1509 Culver St"))).thenReturn(List.of(john));
+        when(personRepository.findByAddressId(ids.addressId("644 Gershwin Cir"))).thenReturn(List.of(peter));
+        when(personRepository.findByAddressId(ids.addressId("951 LoneTree Rd"))).thenReturn(List.of(eric));
+        when(fireStationRepository.findAddressesByStation(1))
+                .thenReturn(new LinkedHashSet<>(List.of("951 LoneTree Rd", "1509 Culver St")));
+        when(fireStationRepository.findAddressesByStation(2))
+                .thenReturn(new LinkedHashSet<>(List.of("644 Gershwin Cir", "951 LoneTree Rd")));
+
+        ResidentQueryEngine.QueryResult<String> result = engine.persons("test")
+                .coveredBy(List.of(1, 2))
+                .select(Person::getFirstName);
+
+        assertEquals(List.of("Eric", "John", "Peter"), result.rows());
+    }
+
+    @Test
+    void withNames_shouldFilterTheResidentsOfTheStationAddresses() {
+        Person john = person("John", "Boyd", "1509 Culver St");
+        Person tenley = person("Tenley", "Boyd", "1509 Culver St");
+        when(fireStationRepository.findAddressesByStation(3)).thenReturn(Set.of("1509 Culver St"));
+        when(personRepository.findByAddressId(ids.addressId("1509 Culver St"))).thenReturn(List.of(john, tenley));
+
+        ResidentQueryEngine.QueryResult<String> result = engine.persons("test")
+                .coveredBy(List.of(3))
+                .withNames(Set.of(new NameKey("Tenley", "Boyd")))
+                .select(Person::getFirstName);
+
+        assertEquals(List.of("Tenley"), result.rows());
+        verify(personRepository, never()).findByLastName(anyString());
+    }
+}
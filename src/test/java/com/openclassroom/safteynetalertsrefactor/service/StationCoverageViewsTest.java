@@ -0,0 +1,127 @@
+package com.openclassroom.safteynetalertsrefactor.service;
+
+import com.openclassroom.safteynetalertsrefactor.dto.FirstResponderDto;
+import com.openclassroom.safteynetalertsrefactor.model.Person;
+import com.openclassroom.safteynetalertsrefactor.model.SettableClock;
+import com.openclassroom.safteynetalertsrefactor.model.Today;
+import com.openclassroom.safteynetalertsrefactor.repository.FireStationRepository;
+import com.openclassroom.safteynetalertsrefactor.repository.PersonRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StationCoverageViewsTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Paris");
+
+    @Mock
+    private FireStationRepository fireStationRepository;
+    @Mock
+    private PersonRepository personRepository;
+
+    private final SettableClock clock = new SettableClock(ZONE);
+    private StationCoverageViews views;
+    private final AtomicInteger builds = new AtomicInteger();
+
+    private void setToday(LocalDate date) {
+        clock.set(date, 12, 0);
+    }
+
+    private FirstResponderDto build() {
+        builds.incrementAndGet();
+        return new FirstResponderDto(List.of(), 1, 0);
+    }
+
+    private List<String> phones() {
+        builds.incrementAndGet();
+        return new ArrayList<>(List.of("841-874-6512"));
+    }
+
+    @BeforeEach
+    void setUp() {
+        setToday(LocalDate.of(2026, 10, 17));
+        views = new StationCoverageViews(fireStationRepository, personRepository, new Today(clock));
+        lenient().when(fireStationRepository.findAddressesByStation(3)).thenReturn(Set.of("1509 Culver St"));
+        lenient().when(fireStationRepository.findAddressesByStation(2)).thenReturn(Set.of("29 15th St"));
+    }
+
+    @Test
+    void views_shouldNotBeKeptForAStationWithoutAddresses() {
+        when(fireStationRepository.findAddressesByStation(99)).thenReturn(Set.of());
+
+        views.coverage(99, this::build);
+        views.coverage(99, this::build);
+        views.phones(99, this::phones);
+        views.phones(99, this::phones);
+
+        assertEquals(4, builds.get());
+    }
+
+    @Test
+    void coverage_shouldBuildOnce_untilItsAddressChanges() {
+        FirstResponderDto first = views.coverage(3, this::build);
+        assertSame(first, views.coverage(3, this::build));
+        assertEquals(1, builds.get());
+
+        views.addressChanged("29 15th St");
+        assertSame(first, views.coverage(3, this::build));
+
+        views.addressChanged(null, " 1509 culver st");
+        assertNotSame(first, views.coverage(3, this::build));
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    void coverage_shouldExpireWithTheDay() {
+        views.coverage(3, this::build);
+        setToday(LocalDate.of(2026, 10, 18));
+
+        views.coverage(3, this::build);
+
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    void phones_shouldBeUnmodifiable_andDroppedWhenTheStationChanges() {
+        List<String> phones = views.phones(3, this::phones);
+        assertThrows(UnsupportedOperationException.class, () -> phones.add("x"));
+        assertSame(phones, views.phones(3, this::phones));
+
+        views.stationChanged(3);
+        views.phones(3, this::phones);
+
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    void medicalRecordChanged_shouldOnlyDropCoverageOfThePersonsAddress() {
+        Person john = new Person();
+        john.setFirstName("John");
+        john.setLastName("Boyd");
+        john.setAddress("1509 Culver St");
+        when(personRepository.findByLastName("Boyd")).thenReturn(List.of(john));
+        views.coverage(3, this::build);
+        views.coverage(2, this::build);
+        views.phones(3, this::phones);
+
+        views.medicalRecordChanged("John", "Boyd");
+        views.coverage(3, this::build);
+        views.coverage(2, this::build);
+        views.phones(3, this::phones);
+
+        assertEquals(4, builds.get());
+    }
+}